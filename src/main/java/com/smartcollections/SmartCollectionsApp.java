@@ -16,10 +16,10 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -29,6 +29,9 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.rendering.ImageType;
@@ -48,9 +51,15 @@ import org.apache.poi.xwpf.usermodel.XWPFParagraph;
 import com.smartcollections.model.Category;
 import com.smartcollections.model.Item;
 import com.smartcollections.model.Task;
+import com.smartcollections.service.CancellationToken;
+import com.smartcollections.service.ContentIndexService;
 import com.smartcollections.service.FileImportService;
 import com.smartcollections.service.LibraryService;
 import com.smartcollections.service.PersistenceService;
+import com.smartcollections.service.SearchFacets;
+import com.smartcollections.service.SearchPage;
+import com.smartcollections.service.SearchRequest;
+import com.smartcollections.service.SearchSession;
 import com.smartcollections.util.AnimationUtils;
 
 import javafx.application.Application;
@@ -62,12 +71,16 @@ import javafx.embed.swing.SwingFXUtils;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
+import javafx.geometry.Side;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckMenuItem;
+import javafx.scene.control.ChoiceDialog;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.DatePicker;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Label;
@@ -79,6 +92,7 @@ import javafx.scene.control.MenuItem;
 import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.RadioMenuItem;
 import javafx.scene.control.ScrollPane;
+import javafx.scene.control.SelectionMode;
 import javafx.scene.control.Separator;
 import javafx.scene.control.SeparatorMenuItem;
 import javafx.scene.control.Slider;
@@ -88,6 +102,7 @@ import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.control.ToggleGroup;
 import javafx.scene.control.ToolBar;
 import javafx.scene.control.cell.PropertyValueFactory;
@@ -111,6 +126,16 @@ public class SmartCollectionsApp extends Application {
     private LibraryService libraryService;
     private PersistenceService persistenceService;
     private FileImportService fileImportService;
+    private ContentIndexService contentIndexService;
+    private SearchSession searchSession;
+    private boolean fuzzySearch;
+    // Finishes searches that ran out of their keystroke budget; one at a time, newest wins.
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "search-refine");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile long searchSequence;
     
     private TableView<Item> itemTable;
     private ObservableList<Item> itemList;
@@ -123,6 +148,9 @@ public class SmartCollectionsApp extends Application {
     private MediaPlayer currentMediaPlayer;
     private ComboBox<Category> categoryFilterCombo;
     private ComboBox<String> tagFilterCombo;
+    private SearchFacets facetCounts;
+    // Stops the facet count of the previous keystroke; FX thread only.
+    private CancellationToken facetCancellation;
     private Label nextTaskLabel;
     private Button backButton;
     private Item activeItem;
@@ -149,6 +177,8 @@ public class SmartCollectionsApp extends Application {
     private static final long MAX_STREAM_DOWNLOAD_BYTES = 30L * 1024 * 1024; // 30 MB cap for inline playback
     private static final int PDF_PREVIEW_PAGE_LIMIT = 5;
     private static final float PDF_PREVIEW_DPI = 140f;
+    private static final int SUGGESTION_LIMIT = 8;
+    private static final Duration SEARCH_BUDGET = Duration.ofMillis(15);
     private final Map<String, Path> remoteMediaCache = new LinkedHashMap<>(8, 0.75f, true) {
         @Override
         protected boolean removeEldestEntry(Map.Entry<String, Path> eldest) {
@@ -166,6 +196,7 @@ public class SmartCollectionsApp extends Application {
         libraryService = new LibraryService();
         persistenceService = new PersistenceService(libraryService);
         fileImportService = new FileImportService(libraryService);
+        searchSession = libraryService.openSearchSession();
         
         try {
             persistenceService.load();
@@ -174,6 +205,11 @@ public class SmartCollectionsApp extends Application {
         } catch (ClassNotFoundException e) {
             showAlert("Data Error", "Library data format not recognized: " + e.getMessage(), Alert.AlertType.WARNING);
         }
+
+        // Document text is extracted and indexed off the FX thread; only the refresh comes back to it.
+        contentIndexService =
+            new ContentIndexService(libraryService, Platform::runLater, this::refreshAfterContentIndexed);
+        contentIndexService.scheduleAll(libraryService.getAllItems());
         
         BorderPane root = new BorderPane();
         root.setTop(createMenuBar());
@@ -213,8 +249,10 @@ public class SmartCollectionsApp extends Application {
         undoItem.setOnAction(e -> handleUndo());
         MenuItem addItemMenu = new MenuItem("Add Item...");
         addItemMenu.setOnAction(e -> showAddItemDialog());
+        MenuItem renameTagItem = new MenuItem("Rename Tag...");
+        renameTagItem.setOnAction(e -> handleRenameTag());
         
-        editMenu.getItems().addAll(undoItem, new SeparatorMenuItem(), addItemMenu);
+        editMenu.getItems().addAll(undoItem, new SeparatorMenuItem(), addItemMenu, renameTagItem);
         
     // View menu configuration
         Menu viewMenu = new Menu("View");
@@ -240,9 +278,16 @@ public class SmartCollectionsApp extends Application {
     // Statistics dialogue
         MenuItem statsItem = new MenuItem("Show Statistics");
         statsItem.setOnAction(e -> showStatisticsDialog());
+
+    // Typo-tolerant search toggle
+        CheckMenuItem fuzzySearchItem = new CheckMenuItem("Typo-Tolerant Search");
+        fuzzySearchItem.setOnAction(e -> {
+            fuzzySearch = fuzzySearchItem.isSelected();
+            applyFilters();
+        });
         
         viewMenu.getItems().addAll(themeMenu, new SeparatorMenuItem(), 
-                                    refreshItem, statsItem);
+                                    refreshItem, statsItem, new SeparatorMenuItem(), fuzzySearchItem);
         
         Menu helpMenu = new Menu("Help");
         MenuItem aboutItem = new MenuItem("About");
@@ -278,6 +323,7 @@ public class SmartCollectionsApp extends Application {
         searchField = new TextField();
         searchField.setPromptText("Search items...");
     searchField.textProperty().addListener((obs, old, newVal) -> handleSearch());
+        attachSuggestions(searchField, libraryService::suggest);
         
         categoryFilterCombo = new ComboBox<>();
         categoryFilterCombo.setPromptText("All categories");
@@ -325,6 +371,8 @@ public class SmartCollectionsApp extends Application {
     itemTable.getColumns().add(typeCol);
     itemTable.getColumns().add(categoryCol);
     itemTable.getColumns().add(ratingCol);
+        // Several rows can be picked for bulk changes; the detail pane follows the last one picked.
+        itemTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         itemTable.getSelectionModel().selectedItemProperty().addListener((obs, old, selected) -> {
             if (selected != null) {
                 handleItemSelection(selected);
@@ -332,6 +380,7 @@ public class SmartCollectionsApp extends Application {
                 clearDetailPane();
             }
         });
+        itemTable.setContextMenu(createBulkMenu());
         
         Button addButton = new Button("Add Item");
         addButton.setOnAction(e -> showAddItemDialog());
@@ -350,6 +399,18 @@ public class SmartCollectionsApp extends Application {
         return panel;
     }
     
+    private ContextMenu createBulkMenu() {
+        MenuItem addTagItem = new MenuItem("Add Tag...");
+        addTagItem.setOnAction(e -> handleBulkTag(true));
+        MenuItem removeTagItem = new MenuItem("Remove Tag...");
+        removeTagItem.setOnAction(e -> handleBulkTag(false));
+        MenuItem categoryItem = new MenuItem("Set Category...");
+        categoryItem.setOnAction(e -> handleBulkCategory());
+        MenuItem deleteItem = new MenuItem("Delete");
+        deleteItem.setOnAction(e -> handleDeleteItem());
+        return new ContextMenu(addTagItem, removeTagItem, categoryItem, new SeparatorMenuItem(), deleteItem);
+    }
+    
     private VBox createCenterPanel() {
         detailTags = FXCollections.observableArrayList();
 
@@ -384,6 +445,7 @@ public class SmartCollectionsApp extends Application {
         newTagField = new TextField();
         newTagField.setPromptText("New tag");
         newTagField.setOnAction(e -> addTagFromField());
+        attachSuggestions(newTagField, libraryService::suggestTags);
 
         Button addTagButton = new Button("Add");
         addTagButton.setOnAction(e -> addTagFromField());
@@ -519,6 +581,49 @@ public class SmartCollectionsApp extends Application {
         newTagField.clear();
     }
 
+    /**
+     * Offers completions for the word being typed at the end of {@code field}.
+     * Picking one replaces that word; the service answers from its prefix trie,
+     * so asking on every keystroke is cheap.
+     */
+    private void attachSuggestions(TextField field, BiFunction<String, Integer, List<String>> suggestions) {
+        ContextMenu popup = new ContextMenu();
+        field.textProperty().addListener((obs, old, text) -> {
+            if (!field.isFocused() || text == null || text.isEmpty()
+                || Character.isWhitespace(text.charAt(text.length() - 1))) {
+                popup.hide();
+                return;
+            }
+            int wordStart = text.lastIndexOf(' ') + 1;
+            String word = text.substring(wordStart);
+            List<MenuItem> entries = new ArrayList<>();
+            for (String suggestion : suggestions.apply(word, SUGGESTION_LIMIT)) {
+                if (suggestion.equals(word)) {
+                    continue;
+                }
+                MenuItem entry = new MenuItem(suggestion);
+                entry.setOnAction(e -> {
+                    field.setText(text.substring(0, wordStart) + suggestion);
+                    field.positionCaret(field.getText().length());
+                });
+                entries.add(entry);
+            }
+            if (entries.isEmpty()) {
+                popup.hide();
+                return;
+            }
+            popup.getItems().setAll(entries);
+            if (!popup.isShowing()) {
+                popup.show(field, Side.BOTTOM, 0, 0);
+            }
+        });
+        field.focusedProperty().addListener((obs, old, focused) -> {
+            if (!focused) {
+                popup.hide();
+            }
+        });
+    }
+
     private void removeSelectedTag() {
         String selected = detailTagsList.getSelectionModel().getSelectedItem();
         if (selected != null) {
@@ -585,7 +690,8 @@ public class SmartCollectionsApp extends Application {
                 updated.setRating((int) detailRatingSlider.getValue());
                 updated.setFilePath(detailFilePathField.getText().isBlank() ? null : detailFilePathField.getText().trim());
                 updated.setMediaUrl(detailMediaUrlField.getText().isBlank() ? null : detailMediaUrlField.getText().trim());
-            });
+            }, true);
+            contentIndexService.schedule(activeItem);
             detailDirty = false;
             detailSaveButton.setDisable(true);
             detailResetButton.setDisable(true);
@@ -642,21 +748,99 @@ public class SmartCollectionsApp extends Application {
             return;
         }
         String query = searchField != null ? searchField.getText() : "";
-        List<Item> filtered = new ArrayList<>(libraryService.search(query));
+        // The combo filters become query clauses, so the index filters before ranking.
+        StringBuilder structured = new StringBuilder(query);
         Category selectedCategory = categoryFilterCombo != null ? categoryFilterCombo.getValue() : null;
         if (selectedCategory != null) {
-            filtered.removeIf(item -> item.getCategory() != selectedCategory);
+            structured.append(" category:").append(selectedCategory.name());
         }
         String selectedTag = tagFilterCombo != null ? tagFilterCombo.getSelectionModel().getSelectedItem() : null;
         if (selectedTag != null && !selectedTag.isBlank()) {
-            String tag = selectedTag.toLowerCase(Locale.ROOT);
-            filtered.removeIf(item -> !item.getTags().contains(tag));
+            structured.append(" tag:\"").append(selectedTag.replace("\"", "")).append('"');
+        }
+        // Show whatever the budget allows at once; a cut-short search is finished in the background.
+        SearchRequest request = SearchRequest.of(structured.toString()).fuzzy(fuzzySearch);
+        long sequence = ++searchSequence;
+        SearchPage quick = searchSession.refine(request.timeBudget(SEARCH_BUDGET));
+        showSearchResults(quick.items());
+        if (quick.incomplete()) {
+            searchExecutor.execute(() -> {
+                if (sequence != searchSequence) {
+                    return;
+                }
+                // A newer keystroke's refine cancels this one, and its incomplete page is dropped.
+                SearchPage full = searchSession.refine(request);
+                if (!full.incomplete()) {
+                    Platform.runLater(() -> {
+                        if (sequence == searchSequence) {
+                            showSearchResults(full.items());
+                        }
+                    });
+                }
+            });
         }
-        filtered.sort(Comparator.comparing(Item::getTitle, String.CASE_INSENSITIVE_ORDER));
-        itemList.setAll(filtered);
+        refreshFacetCounts(query);
+    }
+
+    // New document text only changes what a typed query finds.
+    private void refreshAfterContentIndexed() {
+        if (searchField != null && !searchField.getText().isBlank()) {
+            applyFilters();
+        }
+    }
+
+    private void showSearchResults(List<Item> results) {
+        itemList.setAll(libraryService.sortByTitle(results));
         AnimationUtils.fadeTransition(itemTable, true);
     }
 
+    // Counts are for the typed query alone, i.e. what each filter value would leave.
+    private void refreshFacetCounts(String query) {
+        if (categoryFilterCombo == null || tagFilterCombo == null) {
+            return;
+        }
+        // Counted off the FX thread; the next keystroke cancels a count still running and drops its result.
+        if (facetCancellation != null) {
+            facetCancellation.cancel();
+        }
+        CancellationToken cancellation = new CancellationToken();
+        facetCancellation = cancellation;
+        SearchRequest request = SearchRequest.of(query).fuzzy(fuzzySearch).cancellation(cancellation);
+        searchExecutor.execute(() -> {
+            if (cancellation.isCancelled()) {
+                return;
+            }
+            SearchFacets counts = libraryService.facets(request);
+            if (!counts.incomplete()) {
+                Platform.runLater(() -> {
+                    if (facetCancellation == cancellation) {
+                        showFacetCounts(counts);
+                    }
+                });
+            }
+        });
+    }
+
+    private void showFacetCounts(SearchFacets counts) {
+        facetCounts = counts;
+        // Re-installing the factories makes the popups rebuild their cells with the new counts.
+        categoryFilterCombo.setCellFactory(lv -> new ListCell<Category>() {
+            @Override
+            protected void updateItem(Category category, boolean empty) {
+                super.updateItem(category, empty);
+                setText(empty || category == null ? null
+                    : category + " (" + facetCounts.categoryCount(category) + ")");
+            }
+        });
+        tagFilterCombo.setCellFactory(lv -> new ListCell<String>() {
+            @Override
+            protected void updateItem(String tag, boolean empty) {
+                super.updateItem(tag, empty);
+                setText(empty || tag == null ? null : tag + " (" + facetCounts.tagCount(tag) + ")");
+            }
+        });
+    }
+
     private void refreshTagFilters() {
         if (tagFilterCombo == null) return;
         String selection = tagFilterCombo.getSelectionModel().getSelectedItem();
@@ -765,11 +949,31 @@ public class SmartCollectionsApp extends Application {
         File folder = chooser.showDialog(itemTable.getScene().getWindow());
         
         if (folder != null) {
-            FileImportService.ImportResult result = fileImportService.importFromDirectory(folder.toPath());
-            statusLabel.setText(result.toString());
-            refreshItemTable();
-            refreshTagFilters();
-            showAlert("Import Complete", result.toString(), Alert.AlertType.INFORMATION);
+            // The library is safe to write off the FX thread, so walking a large folder no longer freezes the UI.
+            javafx.concurrent.Task<FileImportService.ImportResult> importTask = new javafx.concurrent.Task<>() {
+                @Override
+                protected FileImportService.ImportResult call() {
+                    return fileImportService.importFromDirectory(folder.toPath());
+                }
+            };
+            importTask.setOnSucceeded(evt -> {
+                FileImportService.ImportResult result = importTask.getValue();
+                contentIndexService.scheduleAll(result.importedItems);
+                statusLabel.setText(result.toString());
+                refreshItemTable();
+                refreshTagFilters();
+                showAlert("Import Complete", result.toString(), Alert.AlertType.INFORMATION);
+            });
+            importTask.setOnFailed(evt -> {
+                Throwable ex = importTask.getException();
+                statusLabel.setText("Import failed");
+                showAlert("Import Failed", ex != null ? ex.getMessage() : "Unknown error", Alert.AlertType.ERROR);
+            });
+
+            statusLabel.setText("Importing " + folder.getName() + "...");
+            Thread importer = new Thread(importTask, "folder-import");
+            importer.setDaemon(true);
+            importer.start();
         }
     }
     
@@ -791,8 +995,9 @@ public class SmartCollectionsApp extends Application {
         
         File file = chooser.showOpenDialog(itemTable.getScene().getWindow());
         if (file != null) {
-            boolean success = fileImportService.importFile(file.toPath());
-            if (success) {
+            Optional<Item> imported = fileImportService.importItem(file.toPath());
+            if (imported.isPresent()) {
+                contentIndexService.schedule(imported.get());
                 statusLabel.setText("Imported: " + file.getName());
                 refreshItemTable();
                 refreshTagFilters();
@@ -833,12 +1038,19 @@ public class SmartCollectionsApp extends Application {
         remoteMediaCache.values().forEach(this::tryDeleteTemp);
         remoteMediaCache.clear();
         activeDownloads.clear();
+        if (contentIndexService != null) {
+            contentIndexService.close();
+        }
+        searchSession.cancel();
+        searchExecutor.shutdownNow();
         
         Platform.exit();
     }
     
     private void handleUndo() {
-        if (libraryService.undo()) {
+        List<Item> restored = new ArrayList<>();
+        if (libraryService.undo(restored::add)) {
+            contentIndexService.scheduleAll(restored);
             refreshItemTable();
             refreshTaskList();
              refreshTagFilters();
@@ -2461,6 +2673,7 @@ public class SmartCollectionsApp extends Application {
         
         dialog.showAndWait().ifPresent(item -> {
             if (libraryService.addItem(item)) {
+                contentIndexService.schedule(item);
                 refreshItemTable();
                 refreshTagFilters();
                 itemTable.getSelectionModel().select(item);
@@ -2540,6 +2753,11 @@ public class SmartCollectionsApp extends Application {
     }
     
     private void handleDeleteItem() {
+        List<Item> selected = selectedItems();
+        if (selected.size() > 1) {
+            handleBulkDelete(selected);
+            return;
+        }
         Item item = itemTable.getSelectionModel().getSelectedItem();
         if (item == null) {
             showAlert("No Selection", "Please select an item to delete", Alert.AlertType.WARNING);
@@ -2567,6 +2785,111 @@ public class SmartCollectionsApp extends Application {
         });
     }
     
+    private void handleBulkDelete(List<Item> selected) {
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION);
+        confirm.setTitle("Confirm Delete");
+        confirm.setHeaderText("Delete " + selected.size() + " items?");
+        confirm.setContentText("A single Undo brings all of them back.");
+        
+        confirm.showAndWait().ifPresent(response -> {
+            if (response == ButtonType.OK) {
+                int deleted = libraryService.deleteItems(selected);
+                refreshItemTable();
+                refreshTaskList();
+                refreshTagFilters();
+                if (selected.contains(activeItem)) {
+                    clearDetailPane();
+                    mediaPane.getChildren().clear();
+                    mediaPreview.clear();
+                    mediaPreview.setVisible(false);
+                }
+                statusLabel.setText(deleted + " items deleted (undo available)");
+            }
+        });
+    }
+    
+    private void handleBulkTag(boolean add) {
+        List<Item> selected = selectedItems();
+        if (selected.isEmpty()) {
+            showAlert("No Selection", "Please select the items to change", Alert.AlertType.WARNING);
+            return;
+        }
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle(add ? "Add Tag" : "Remove Tag");
+        dialog.setHeaderText((add ? "Add a tag to " : "Remove a tag from ") + selected.size() + " items");
+        dialog.setContentText("Tag:");
+        attachSuggestions(dialog.getEditor(), libraryService::suggestTags);
+        dialog.showAndWait().map(String::trim).filter(tag -> !tag.isEmpty()).ifPresent(tag -> {
+            int changed = add ? libraryService.addTag(selected, tag) : libraryService.removeTag(selected, tag);
+            afterBulkEdit((add ? "Tagged " : "Untagged ") + changed + " items");
+        });
+    }
+    
+    private void handleBulkCategory() {
+        List<Item> selected = selectedItems();
+        if (selected.isEmpty()) {
+            showAlert("No Selection", "Please select the items to change", Alert.AlertType.WARNING);
+            return;
+        }
+        ChoiceDialog<Category> dialog = new ChoiceDialog<>(selected.get(0).getCategory(), Category.values());
+        dialog.setTitle("Set Category");
+        dialog.setHeaderText("Move " + selected.size() + " items to another category");
+        dialog.setContentText("Category:");
+        dialog.showAndWait().ifPresent(category -> {
+            int changed = libraryService.recategorise(selected, category);
+            afterBulkEdit("Moved " + changed + " items to " + category);
+        });
+    }
+    
+    private void handleRenameTag() {
+        Dialog<String[]> dialog = new Dialog<>();
+        dialog.setTitle("Rename Tag");
+        dialog.setHeaderText("Rename a tag on every item that has it");
+        
+        TextField fromField = new TextField();
+        fromField.setPromptText("Current tag");
+        attachSuggestions(fromField, libraryService::suggestTags);
+        TextField toField = new TextField();
+        toField.setPromptText("New name");
+        
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20));
+        grid.add(new Label("Tag:"), 0, 0);
+        grid.add(fromField, 1, 0);
+        grid.add(new Label("Rename to:"), 0, 1);
+        grid.add(toField, 1, 1);
+        
+        dialog.getDialogPane().setContent(grid);
+        dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+        dialog.setResultConverter(button -> button == ButtonType.OK
+            ? new String[] {fromField.getText().trim(), toField.getText().trim()} : null);
+        
+        dialog.showAndWait().ifPresent(names -> {
+            if (names[0].isEmpty() || names[1].isEmpty()) {
+                showAlert("Rename Tag", "Both the tag and its new name are required.", Alert.AlertType.WARNING);
+                return;
+            }
+            int changed = libraryService.renameTag(names[0], names[1]);
+            afterBulkEdit("Renamed tag on " + changed + " items");
+        });
+    }
+    
+    private void afterBulkEdit(String status) {
+        if (activeItem != null) {
+            populateDetail(activeItem);
+        }
+        applyFilters();
+        refreshTagFilters();
+        statusLabel.setText(status);
+    }
+    
+    private List<Item> selectedItems() {
+        // Copied, since the selection changes as the table refreshes.
+        return new ArrayList<>(itemTable.getSelectionModel().getSelectedItems());
+    }
+    
     private void showAddTaskDialog() {
         Item item = itemTable.getSelectionModel().getSelectedItem();
         if (item == null) {
@@ -4,8 +4,10 @@ import java.io.Serializable;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
@@ -13,6 +15,8 @@ import java.util.UUID;
 
 public class Item implements Serializable {
     private static final long serialVersionUID = 1L;
+    // Every title and file name is tokenised on each (re)index, so each thread keeps one scanner and its buffer.
+    private static final ThreadLocal<Tokenizer> TOKENIZER = ThreadLocal.withInitial(Tokenizer::new);
     
     private final String id;
     private String title;
@@ -108,20 +112,31 @@ public class Item implements Serializable {
     }
 
     public Set<String> keywordTokens() {
-        Set<String> tokens = new LinkedHashSet<>();
-        if (title != null) {
-            tokens.addAll(tokenise(title));
-        }
+        Set<String> tokens = new LinkedHashSet<>(titleTokens());
         if (tags != null) {
             tokens.addAll(tags);
         }
-        if (filePath != null) {
-            Path file = Paths.get(filePath);
-            tokens.addAll(tokenise(file.getFileName().toString()));
-        }
+        tokens.addAll(fileNameTokens());
         return tokens;
     }
 
+    public Set<String> titleTokens() {
+        return title != null ? tokenise(title) : new LinkedHashSet<>();
+    }
+
+    public Set<String> fileNameTokens() {
+        String fileName = fileName();
+        return fileName != null ? tokenise(fileName) : new LinkedHashSet<>();
+    }
+
+    public String fileName() {
+        if (filePath == null) {
+            return null;
+        }
+        Path file = Paths.get(filePath).getFileName();
+        return file != null ? file.toString() : null;
+    }
+
     public Set<String> keywordTokensForSearch() {
         return Collections.unmodifiableSet(keywordTokens());
     }
@@ -131,15 +146,19 @@ public class Item implements Serializable {
     }
     
     public void restoreFromMemento(Memento memento) {
-        if (memento != null && memento.getItemId().equals(this.id)) {
-            this.title = memento.getTitle();
-            this.category = memento.getCategory();
-            this.tags = new LinkedHashSet<>(memento.getTags());
-            this.rating = clampRating(memento.getRating());
+        if (memento == null || !memento.getItemId().equals(this.id)) {
+            return;
+        }
+        // Delta mementos only hold the fields the edit changed; the rest stay as they are.
+        if (memento.captures(Memento.Field.TITLE)) this.title = memento.getTitle();
+        if (memento.captures(Memento.Field.CATEGORY)) this.category = memento.getCategory();
+        if (memento.captures(Memento.Field.TAGS)) this.tags = new LinkedHashSet<>(memento.getTags());
+        if (memento.captures(Memento.Field.RATING)) this.rating = clampRating(memento.getRating());
+        if (memento.captures(Memento.Field.FILE_PATH)) {
             this.filePath = memento.getFilePath();
-            this.mediaUrl = memento.getMediaUrl();
             this.fileType = determineFileType(filePath);
         }
+        if (memento.captures(Memento.Field.MEDIA_URL)) this.mediaUrl = memento.getMediaUrl();
     }
     
     @Override
@@ -167,17 +186,39 @@ public class Item implements Serializable {
         return tag.toLowerCase(Locale.ROOT).trim();
     }
 
-    private Set<String> tokenise(String value) {
+    public static Set<String> tokenise(String value) {
         Set<String> tokens = new LinkedHashSet<>();
-        String[] parts = value.toLowerCase(Locale.ROOT).split("[^a-z0-9]+");
-        for (String part : parts) {
-            if (part.length() > 2) {
-                tokens.add(part);
+        Tokenizer tokenizer = TOKENIZER.get().reset(value);
+        while (tokenizer.next()) {
+            // Short words are skipped before a string is ever made for them.
+            if (tokenizer.indexable()) {
+                tokens.add(tokenizer.token());
             }
         }
         return tokens;
     }
 
+    /**
+     * Lower-cased words of {@code value} in order, including the short ones that
+     * {@link #tokenise(String)} drops, so callers can recover token positions.
+     */
+    public static String[] words(String value) {
+        List<String> words = new ArrayList<>();
+        Tokenizer tokenizer = TOKENIZER.get().reset(value);
+        while (tokenizer.next()) {
+            words.add(tokenizer.token());
+        }
+        return words.toArray(String[]::new);
+    }
+
+    /**
+     * Whether a word from {@link #words(String)} is long enough to be indexed.
+     * Two Han characters already make a word, so those count from two.
+     */
+    public static boolean isIndexable(String word) {
+        return word.length() > 2 || word.length() == 2 && Character.isIdeographic(word.codePointAt(0));
+    }
+
     private boolean endsWithAny(String value, String... suffixes) {
         for (String suffix : suffixes) {
             if (value.endsWith(suffix)) {
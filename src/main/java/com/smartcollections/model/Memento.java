@@ -2,12 +2,16 @@ package com.smartcollections.model;
 
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Objects;
 import java.util.Set;
 
 public class Memento implements Serializable {
     private static final long serialVersionUID = 1L;
-    
+
     private final String itemId;
     private final String title;
     private final Category category;
@@ -18,61 +22,150 @@ public class Memento implements Serializable {
     private final LocalDateTime timestamp;
     private final OperationType operationType;
     private final Object operationData;
-    
+    // Fields this memento restores; null in mementos saved before deltas, which captured everything.
+    private final EnumSet<Field> capturedFields;
+
     public enum OperationType {
-        ADD, EDIT, DELETE, TASK_DELETE, TASK_EDIT
+        ADD, EDIT, DELETE, TASK_DELETE, TASK_EDIT, BATCH
+    }
+
+    public enum Field {
+        TITLE, CATEGORY, TAGS, RATING, FILE_PATH, MEDIA_URL
     }
-    
+
     public Memento(Item item) {
-        this.itemId = item.getId();
-        this.title = item.getTitle();
-        this.category = item.getCategory();
-        this.tags = new HashSet<>(item.getTags());
-        this.rating = item.getRating();
-        this.filePath = item.getFilePath();
-        this.mediaUrl = item.getMediaUrl();
-        this.timestamp = LocalDateTime.now();
-        this.operationType = OperationType.EDIT;
-        this.operationData = null;
+        this(item, OperationType.EDIT, null);
     }
-    
+
     public Memento(Item item, OperationType operationType, Object operationData) {
-        this.itemId = item.getId();
-        this.title = item.getTitle();
-        this.category = item.getCategory();
-        this.tags = new HashSet<>(item.getTags());
-        this.rating = item.getRating();
-        this.filePath = item.getFilePath();
-        this.mediaUrl = item.getMediaUrl();
-        this.timestamp = LocalDateTime.now();
-        this.operationType = operationType;
-        this.operationData = operationData;
+        this(item, EnumSet.allOf(Field.class), operationType, operationData, LocalDateTime.now());
     }
-    
+
     public Memento(Task task, OperationType operationType) {
-        this.itemId = task.getId();
-        this.title = task.getDescription();
+        this(task.getId(), task.getDescription(), operationType, task);
+    }
+
+    // A memento whose payload holds everything needed to undo it; no item fields are captured.
+    private Memento(String itemId, String title, OperationType operationType, Object operationData) {
+        this.itemId = itemId;
+        this.title = title;
         this.category = null;
-        this.tags = new HashSet<>();
+        this.tags = null;
         this.rating = 0;
         this.filePath = null;
         this.mediaUrl = null;
         this.timestamp = LocalDateTime.now();
         this.operationType = operationType;
-        this.operationData = task;
+        this.operationData = operationData;
+        this.capturedFields = EnumSet.noneOf(Field.class);
+    }
+
+    private Memento(Item item, EnumSet<Field> fields, OperationType operationType,
+                    Object operationData, LocalDateTime timestamp) {
+        this.itemId = item.getId();
+        // The title is kept as a label even when it is not restored; it is shared with the item, not copied.
+        this.title = item.getTitle();
+        this.category = fields.contains(Field.CATEGORY) ? item.getCategory() : null;
+        this.tags = fields.contains(Field.TAGS) ? item.getTags() : null;
+        this.rating = fields.contains(Field.RATING) ? item.getRating() : 0;
+        this.filePath = fields.contains(Field.FILE_PATH) ? item.getFilePath() : null;
+        this.mediaUrl = fields.contains(Field.MEDIA_URL) ? item.getMediaUrl() : null;
+        this.timestamp = timestamp;
+        this.operationType = operationType;
+        this.operationData = operationData;
+        this.capturedFields = fields;
+    }
+
+    private Memento(Memento earlier, Memento later) {
+        this.itemId = earlier.itemId;
+        this.title = earlier.title;
+        this.category = pick(Field.CATEGORY, earlier, earlier.category, later.category);
+        this.tags = pick(Field.TAGS, earlier, earlier.tags, later.tags);
+        this.rating = earlier.captures(Field.RATING) ? earlier.rating : later.rating;
+        this.filePath = pick(Field.FILE_PATH, earlier, earlier.filePath, later.filePath);
+        this.mediaUrl = pick(Field.MEDIA_URL, earlier, earlier.mediaUrl, later.mediaUrl);
+        this.timestamp = later.timestamp;
+        this.operationType = OperationType.EDIT;
+        this.operationData = null;
+        this.capturedFields = EnumSet.noneOf(Field.class);
+        this.capturedFields.addAll(earlier.getCapturedFields());
+        this.capturedFields.addAll(later.getCapturedFields());
+    }
+
+    /** Undoing an add only needs to know which item to remove. */
+    public static Memento added(Item item) {
+        return new Memento(item, EnumSet.noneOf(Field.class), OperationType.ADD, null, LocalDateTime.now());
+    }
+
+    /** Undoing a delete re-adds the item held by {@code snapshot}, so none of its fields are copied here. */
+    public static Memento deleted(Item item, Object snapshot) {
+        return new Memento(item, EnumSet.noneOf(Field.class), OperationType.DELETE, snapshot, LocalDateTime.now());
+    }
+
+    /**
+     * One undo step for a whole batch of changes, described by {@code summary};
+     * {@code changes} holds what is needed to revert them. It belongs to no
+     * single item, so {@link #getItemId()} is null.
+     */
+    public static Memento batch(String summary, Object changes) {
+        return new Memento(null, summary, OperationType.BATCH, changes);
     }
-    
+
+    /**
+     * An edit memento holding only the fields that differ between {@code before}
+     * and {@code after}, with their values from {@code before}; null when the
+     * edit changed nothing.
+     */
+    public static Memento edited(Item before, Item after) {
+        EnumSet<Field> changed = EnumSet.noneOf(Field.class);
+        if (!Objects.equals(before.getTitle(), after.getTitle())) changed.add(Field.TITLE);
+        if (before.getCategory() != after.getCategory()) changed.add(Field.CATEGORY);
+        if (!before.getTags().equals(after.getTags())) changed.add(Field.TAGS);
+        if (before.getRating() != after.getRating()) changed.add(Field.RATING);
+        if (!Objects.equals(before.getFilePath(), after.getFilePath())) changed.add(Field.FILE_PATH);
+        if (!Objects.equals(before.getMediaUrl(), after.getMediaUrl())) changed.add(Field.MEDIA_URL);
+        if (changed.isEmpty()) {
+            return null;
+        }
+        return new Memento(before, changed, OperationType.EDIT, null, LocalDateTime.now());
+    }
+
+    /**
+     * Folds {@code later}, an edit of the same item made after this one, into a
+     * single edit that undoes both: fields this memento captured keep their
+     * older values and fields only the later edit touched are added.
+     */
+    public Memento coalesce(Memento later) {
+        if (operationType != OperationType.EDIT || later.operationType != OperationType.EDIT
+                || !itemId.equals(later.itemId)) {
+            throw new IllegalArgumentException("Only edits of the same item can be coalesced.");
+        }
+        return new Memento(this, later);
+    }
+
+    private static <T> T pick(Field field, Memento earlier, T earlierValue, T laterValue) {
+        return earlier.captures(field) ? earlierValue : laterValue;
+    }
+
+    public boolean captures(Field field) {
+        return capturedFields == null || capturedFields.contains(field);
+    }
+
+    public Set<Field> getCapturedFields() {
+        return Collections.unmodifiableSet(capturedFields == null ? EnumSet.allOf(Field.class) : capturedFields);
+    }
+
     public String getItemId() { return itemId; }
     public String getTitle() { return title; }
     public Category getCategory() { return category; }
-    public Set<String> getTags() { return new HashSet<>(tags); }
+    public Set<String> getTags() { return tags == null ? new HashSet<>() : new LinkedHashSet<>(tags); }
     public int getRating() { return rating; }
     public String getFilePath() { return filePath; }
     public String getMediaUrl() { return mediaUrl; }
     public LocalDateTime getTimestamp() { return timestamp; }
     public OperationType getOperationType() { return operationType; }
     public Object getOperationData() { return operationData; }
-    
+
     @Override
     public String toString() {
         return operationType + ": " + title + " at " + timestamp;
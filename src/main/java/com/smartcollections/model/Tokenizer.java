@@ -0,0 +1,102 @@
+package com.smartcollections.model;
+
+/**
+ * Splits text into lower-cased words by scanning it one code point at a time,
+ * without a regex or any intermediate strings. A word is a run of Unicode
+ * letters and digits together with the combining marks inside it, so accented
+ * Latin, Arabic and runs of Han characters all survive; anything else
+ * separates words. Case is folded per code point with
+ * {@link Character#toLowerCase(int)} into a buffer that is reused for every
+ * word, and a {@link String} is only made when {@link #token()} asks for one.
+ * <p>
+ * An instance can be {@link #reset(CharSequence) reset} and reused, but is not
+ * safe to share between threads. It lets go of the text once the text is used
+ * up, so a reused instance does not keep a long document reachable.
+ */
+public final class Tokenizer {
+    private CharSequence text = "";
+    private int offset;
+    private int position = -1;
+    private char[] buffer = new char[32];
+    private int length;
+
+    public Tokenizer reset(CharSequence text) {
+        this.text = text;
+        offset = 0;
+        position = -1;
+        length = 0;
+        return this;
+    }
+
+    /** Moves to the next word, returning false once the text is used up. */
+    public boolean next() {
+        int end = text.length();
+        int i = offset;
+        while (i < end) {
+            int codePoint = Character.codePointAt(text, i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                break;
+            }
+            i += Character.charCount(codePoint);
+        }
+        length = 0;
+        if (i >= end) {
+            text = "";
+            offset = 0;
+            return false;
+        }
+        while (i < end) {
+            int codePoint = Character.codePointAt(text, i);
+            if (!isWordPart(codePoint)) {
+                break;
+            }
+            append(Character.toLowerCase(codePoint));
+            i += Character.charCount(codePoint);
+        }
+        offset = i;
+        position++;
+        return true;
+    }
+
+    /** The current word's folded chars; only the first {@link #length()} are valid. */
+    public char[] buffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /** Index of the current word among all words of the text, counting from zero. */
+    public int position() {
+        return position;
+    }
+
+    public String token() {
+        return new String(buffer, 0, length);
+    }
+
+    /** Same rule as {@link Item#isIndexable(String)}, checked without making the string. */
+    public boolean indexable() {
+        return length > 2 || length == 2 && Character.isIdeographic(Character.codePointAt(buffer, 0, length));
+    }
+
+    private void append(int codePoint) {
+        if (length + 2 > buffer.length) {
+            char[] grown = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+        length += Character.toChars(codePoint, buffer, length);
+    }
+
+    private static boolean isWordPart(int codePoint) {
+        if (Character.isLetterOrDigit(codePoint)) {
+            return true;
+        }
+        int type = Character.getType(codePoint);
+        return type == Character.NON_SPACING_MARK
+            || type == Character.COMBINING_SPACING_MARK
+            || type == Character.ENCLOSING_MARK;
+    }
+}
@@ -0,0 +1,252 @@
+package com.smartcollections.service;
+
+import java.text.Normalizer;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import com.smartcollections.model.Tokenizer;
+
+/**
+ * Turns field text into index terms: {@link Tokenizer} words, already lower
+ * case, then an optional stop-word filter, an optional light English stemmer
+ * and optional ASCII folding, in that order. Every step works on one reused
+ * char buffer, so a string is only made for a word that is kept. Each
+ * {@link SearchField} except tags has its own analyzer; queries are analysed
+ * with the title's, so a search for "lectures" finds "Lecture".
+ * <p>
+ * Start from {@link #standard()} or {@link #simple()} and adjust it with the
+ * {@code with}-style methods; the record itself is immutable.
+ */
+public record Analyzer(Set<String> stopWords, boolean stemming, boolean asciiFolding) {
+    public static final Set<String> ENGLISH_STOP_WORDS = Set.of(
+        "a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "from", "if", "in", "into", "is", "it",
+        "no", "not", "of", "on", "or", "such", "that", "the", "their", "then", "there", "these", "they",
+        "this", "to", "was", "will", "with");
+
+    // Base letter of each char from U+00C0 to U+017F, or 0 when it has none, as for U+00E6 or U+00DF.
+    private static final char FOLD_FIRST = '\u00C0';
+    private static final char[] FOLDED = foldTable('\u017F');
+    // Every field of every item is analysed on each (re)index, so each thread reuses one stream and its buffers.
+    private static final ThreadLocal<TokenStream> STREAMS = ThreadLocal.withInitial(TokenStream::new);
+
+    public Analyzer {
+        stopWords = Set.copyOf(stopWords);
+    }
+
+    /** Stop words and stemming, no folding. The default for titles, file names and content. */
+    public static Analyzer standard() {
+        return new Analyzer(ENGLISH_STOP_WORDS, true, false);
+    }
+
+    /** Lower case only, which is how every field was indexed before analyzers existed. */
+    public static Analyzer simple() {
+        return new Analyzer(Set.of(), false, false);
+    }
+
+    public Analyzer stopWords(Set<String> stopWords) {
+        return new Analyzer(stopWords, stemming, asciiFolding);
+    }
+
+    public Analyzer stemming(boolean stemming) {
+        return new Analyzer(stopWords, stemming, asciiFolding);
+    }
+
+    /** Also strip accents from Latin letters, so "cafe" with or without its accent is the same term. */
+    public Analyzer asciiFolding(boolean asciiFolding) {
+        return new Analyzer(stopWords, stemming, asciiFolding);
+    }
+
+    /** The distinct terms of {@code text}, in order of first occurrence. */
+    Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text != null) {
+            TokenStream stream = stream(text);
+            while (stream.next()) {
+                if (stream.kept()) {
+                    terms.add(stream.term());
+                }
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * The calling thread's stream, reset to {@code text}. It stays valid until
+     * the thread asks for another, so a stream is read to the end (or dropped)
+     * before the next one is started.
+     */
+    TokenStream stream(CharSequence text) {
+        return STREAMS.get().reset(this, text);
+    }
+
+    /**
+     * A query token as a substring probe against the vocabulary: folded and
+     * stemmed like indexed terms, but never dropped, since a short or common
+     * token is usually the start of a longer word still being typed.
+     */
+    String probe(String token) {
+        if (!stemming && !asciiFolding) {
+            return token;
+        }
+        char[] chars = token.toCharArray();
+        int length = chars.length;
+        if (stemming) {
+            length = stem(chars, length);
+        }
+        if (asciiFolding) {
+            length = fold(chars, length);
+        }
+        return length == token.length() && !asciiFolding ? token : new String(chars, 0, length);
+    }
+
+    /**
+     * A partly typed word as a prefix of vocabulary terms: lower case and folded
+     * like indexed terms, but never stemmed, since its ending is still to come.
+     */
+    String prefix(String word) {
+        String lower = word.toLowerCase(Locale.ROOT);
+        if (!asciiFolding) {
+            return lower;
+        }
+        char[] chars = lower.toCharArray();
+        return new String(chars, 0, fold(chars, chars.length));
+    }
+
+    boolean isStopWord(String token) {
+        return stopWords.contains(token);
+    }
+
+    /**
+     * Analysed words of one text. {@link #position()} counts every word, dropped
+     * ones included, so positions line up with the text whatever was filtered.
+     */
+    static final class TokenStream {
+        private final Tokenizer tokenizer = new Tokenizer();
+        private Analyzer analyzer;
+        private int longestStopWord;
+        private char[] chars = new char[32];
+        private int length;
+        private boolean kept;
+
+        private TokenStream reset(Analyzer analyzer, CharSequence text) {
+            if (this.analyzer != analyzer) {
+                this.analyzer = analyzer;
+                int longest = 0;
+                for (String word : analyzer.stopWords()) {
+                    longest = Math.max(longest, word.length());
+                }
+                longestStopWord = longest;
+            }
+            tokenizer.reset(text);
+            kept = false;
+            length = 0;
+            return this;
+        }
+
+        boolean next() {
+            if (!tokenizer.next()) {
+                return false;
+            }
+            kept = tokenizer.indexable();
+            if (!kept) {
+                return true;
+            }
+            length = tokenizer.length();
+            if (chars.length < length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+            System.arraycopy(tokenizer.buffer(), 0, chars, 0, length);
+            // Stop words are short, so longer words never pay for a lookup string.
+            if (length <= longestStopWord && analyzer.stopWords().contains(new String(chars, 0, length))) {
+                kept = false;
+                return true;
+            }
+            if (analyzer.stemming()) {
+                length = stem(chars, length);
+            }
+            if (analyzer.asciiFolding()) {
+                length = fold(chars, length);
+            }
+            return true;
+        }
+
+        /** Whether the current word survived the filters and is worth indexing. */
+        boolean kept() {
+            return kept;
+        }
+
+        String term() {
+            return new String(chars, 0, length);
+        }
+
+        int position() {
+            return tokenizer.position();
+        }
+    }
+
+    /**
+     * Light plural stemmer: "studies" to "study", "classes" to "class",
+     * "matches" to "match", "lectures" to "lecture". Words ending in "ss", "us"
+     * or "is" are left alone, and applying it twice changes nothing more.
+     */
+    static int stem(char[] word, int length) {
+        if (length <= 3 || word[length - 1] != 's') {
+            return length;
+        }
+        if (endsWith(word, length, "ies") && length > 4
+            && !endsWith(word, length, "eies") && !endsWith(word, length, "aies")) {
+            word[length - 3] = 'y';
+            return length - 2;
+        }
+        if (endsWith(word, length, "sses") || endsWith(word, length, "xes") || endsWith(word, length, "zzes")
+            || endsWith(word, length, "ches") || endsWith(word, length, "shes")) {
+            return length - 2;
+        }
+        if (endsWith(word, length, "ss") || endsWith(word, length, "us") || endsWith(word, length, "is")) {
+            return length;
+        }
+        return length - 1;
+    }
+
+    private static boolean endsWith(char[] word, int length, String suffix) {
+        int start = length - suffix.length();
+        if (start < 0) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length(); i++) {
+            if (word[start + i] != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Replaces accented Latin letters by their base letter and drops combining accents, in place.
+    static int fold(char[] word, int length) {
+        int out = 0;
+        for (int i = 0; i < length; i++) {
+            char c = word[i];
+            if (c >= '\u0300' && c <= '\u036F') {
+                continue;
+            }
+            if (c >= FOLD_FIRST && c - FOLD_FIRST < FOLDED.length && FOLDED[c - FOLD_FIRST] != 0) {
+                c = FOLDED[c - FOLD_FIRST];
+            }
+            word[out++] = c;
+        }
+        return out;
+    }
+
+    private static char[] foldTable(char last) {
+        char[] table = new char[last - FOLD_FIRST + 1];
+        for (char c = FOLD_FIRST; c <= last; c++) {
+            String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+            char base = decomposed.charAt(0);
+            if (decomposed.length() > 1 && base < 0x80 && Character.isLetter(base)) {
+                table[c - FOLD_FIRST] = base;
+            }
+        }
+        return table;
+    }
+}
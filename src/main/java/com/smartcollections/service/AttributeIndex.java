@@ -0,0 +1,170 @@
+package com.smartcollections.service;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+
+/**
+ * Doc bitmaps per tag, category, file type and rating, plus one for every live
+ * doc. Structured filters combine these word by word instead of touching the
+ * items. The attributes a doc was indexed with are remembered so it can be
+ * removed even after the item itself has been edited.
+ * <p>
+ * Bitmaps are {@link PersistentBitmap}s and the per-tag and per-doc tables are
+ * persistent too, so a {@link #snapshot()} shares them all with the writer and
+ * indexing a doc afterwards copies a few blocks rather than every bitmap.
+ */
+final class AttributeIndex {
+    static final int MIN_RATING = 1;
+    static final int MAX_RATING = 5;
+
+    // Structures made under this token may be changed in place; null in a snapshot, which is never written.
+    private Object edit;
+    private PersistentBitmap live;
+    private PersistentMap<String, PersistentBitmap> byTag;
+    // A handful of entries each, so a snapshot copies these small maps outright.
+    private final Map<Category, PersistentBitmap> byCategory;
+    private final Map<Item.FileType, PersistentBitmap> byFileType;
+    private final PersistentBitmap[] byRating;
+    private PersistentVector<Attributes> indexed;
+
+    AttributeIndex() {
+        edit = new Object();
+        byCategory = new EnumMap<>(Category.class);
+        byFileType = new EnumMap<>(Item.FileType.class);
+        byRating = new PersistentBitmap[MAX_RATING + 1];
+        clear();
+    }
+
+    private AttributeIndex(AttributeIndex source) {
+        edit = null;
+        live = source.live;
+        byTag = source.byTag;
+        byCategory = new EnumMap<>(source.byCategory);
+        byFileType = new EnumMap<>(source.byFileType);
+        byRating = source.byRating.clone();
+        indexed = source.indexed;
+    }
+
+    void add(int doc, Item item, String[] tags) {
+        remove(doc);
+        Attributes attributes = new Attributes(item.getCategory(), item.getFileType(),
+            Math.max(MIN_RATING, Math.min(MAX_RATING, item.getRating())), tags);
+        while (indexed.size() <= doc) {
+            indexed = indexed.add(null, edit);
+        }
+        indexed = indexed.set(doc, attributes, edit);
+
+        live = live.set(doc, edit);
+        for (String tag : tags) {
+            byTag = byTag.put(tag, orEmpty(byTag.get(tag)).set(doc, edit), edit);
+        }
+        if (attributes.category() != null) {
+            byCategory.put(attributes.category(), orEmpty(byCategory.get(attributes.category())).set(doc, edit));
+        }
+        if (attributes.fileType() != null) {
+            byFileType.put(attributes.fileType(), orEmpty(byFileType.get(attributes.fileType())).set(doc, edit));
+        }
+        byRating[attributes.rating()] = byRating[attributes.rating()].set(doc, edit);
+    }
+
+    void remove(int doc) {
+        Attributes attributes = doc < indexed.size() ? indexed.get(doc) : null;
+        if (attributes == null) {
+            return;
+        }
+        indexed = indexed.set(doc, null, edit);
+        live = live.clear(doc, edit);
+        for (String tag : attributes.tags()) {
+            PersistentBitmap tagged = byTag.get(tag);
+            if (tagged != null) {
+                tagged = tagged.clear(doc, edit);
+                byTag = tagged.isEmpty() ? byTag.remove(tag, edit) : byTag.put(tag, tagged, edit);
+            }
+        }
+        if (attributes.category() != null) {
+            byCategory.computeIfPresent(attributes.category(), (category, docs) -> docs.clear(doc, edit));
+        }
+        if (attributes.fileType() != null) {
+            byFileType.computeIfPresent(attributes.fileType(), (fileType, docs) -> docs.clear(doc, edit));
+        }
+        byRating[attributes.rating()] = byRating[attributes.rating()].clear(doc, edit);
+    }
+
+    void clear() {
+        live = PersistentBitmap.empty();
+        byTag = PersistentMap.empty();
+        byCategory.clear();
+        byFileType.clear();
+        for (int rating = 0; rating <= MAX_RATING; rating++) {
+            byRating[rating] = PersistentBitmap.empty();
+        }
+        indexed = PersistentVector.empty();
+    }
+
+    /**
+     * A read-only index sharing this one's bitmaps. This index moves to a new
+     * edit token, so nothing the snapshot can reach is changed afterwards.
+     */
+    AttributeIndex snapshot() {
+        AttributeIndex snapshot = new AttributeIndex(this);
+        edit = new Object();
+        return snapshot;
+    }
+
+    // Each lookup returns a fresh bitmap the caller is free to combine in place.
+
+    DocBitmap live() {
+        return live.toDocBitmap();
+    }
+
+    DocBitmap tagged(String tag) {
+        return orEmpty(byTag.get(tag)).toDocBitmap();
+    }
+
+    DocBitmap inCategory(Category category) {
+        return orEmpty(byCategory.get(category)).toDocBitmap();
+    }
+
+    DocBitmap ofFileType(Item.FileType fileType) {
+        return orEmpty(byFileType.get(fileType)).toDocBitmap();
+    }
+
+    DocBitmap ratedBetween(int min, int max) {
+        DocBitmap rated = new DocBitmap(0);
+        for (int rating = Math.max(MIN_RATING, min); rating <= Math.min(MAX_RATING, max); rating++) {
+            rated.or(byRating[rating].toDocBitmap());
+        }
+        return rated;
+    }
+
+    /**
+     * Counts {@code results} per category, tag and file type as the cardinality
+     * of each attribute bitmap intersected with them; no item is visited.
+     */
+    SearchFacets facets(DocBitmap results) {
+        Map<Category, Integer> categories = new EnumMap<>(Category.class);
+        byCategory.forEach((category, docs) -> putCount(categories, category, docs.andCardinality(results)));
+        Map<Item.FileType, Integer> fileTypes = new EnumMap<>(Item.FileType.class);
+        byFileType.forEach((fileType, docs) -> putCount(fileTypes, fileType, docs.andCardinality(results)));
+        Map<String, Integer> tags = new HashMap<>();
+        byTag.forEach((tag, docs) -> putCount(tags, tag, docs.andCardinality(results)));
+        return new SearchFacets(results.cardinality(), categories, tags, fileTypes);
+    }
+
+    private static <K> void putCount(Map<K, Integer> counts, K key, int count) {
+        if (count > 0) {
+            counts.put(key, count);
+        }
+    }
+
+    private static PersistentBitmap orEmpty(PersistentBitmap bitmap) {
+        return bitmap != null ? bitmap : PersistentBitmap.empty();
+    }
+
+    private record Attributes(Category category, Item.FileType fileType, int rating, String[] tags) {
+    }
+}
@@ -0,0 +1,79 @@
+package com.smartcollections.service;
+
+import com.smartcollections.model.Item;
+
+/**
+ * BM25F over the title, tag, file name and extracted content fields. Field lengths are kept by the
+ * index as items are added, so preparing a query only derives the per-field
+ * length normalisation and each posting costs a few multiply-adds.
+ */
+public class Bm25fRanker implements Ranker {
+    private static final double K1 = 1.2;
+    private static final double SUBSTRING_MATCH_WEIGHT = 0.6;
+    private static final double TITLE_MATCH_BONUS = 2.0;
+    private static final double RATING_WEIGHT = 0.1;
+
+    private final double[] fieldWeights = new double[SearchField.values().length];
+    private final double[] lengthBias = new double[SearchField.values().length];
+
+    public Bm25fRanker() {
+        setField(SearchField.TITLE, 3.0, 0.75);
+        setField(SearchField.TAGS, 2.0, 0.3);
+        setField(SearchField.FILE_NAME, 1.0, 0.75);
+        setField(SearchField.CONTENT, 0.5, 0.75);
+    }
+
+    /**
+     * @param weight how much a hit in this field counts relative to the others
+     * @param bias BM25 {@code b}: 0 ignores field length, 1 fully normalises by it
+     */
+    public Bm25fRanker setField(SearchField field, double weight, double bias) {
+        if (weight < 0 || bias < 0 || bias > 1) {
+            throw new IllegalArgumentException("Field weight must be >= 0 and bias within [0, 1].");
+        }
+        fieldWeights[field.ordinal()] = weight;
+        lengthBias[field.ordinal()] = bias;
+        return this;
+    }
+
+    @Override
+    public Scorer prepare(IndexStatistics statistics) {
+        SearchField[] fields = SearchField.values();
+        double[] weights = fieldWeights.clone();
+        double[] constant = new double[fields.length];
+        double[] perLength = new double[fields.length];
+        for (SearchField field : fields) {
+            int f = field.ordinal();
+            double average = statistics.averageFieldLength(field);
+            constant[f] = 1 - lengthBias[f];
+            perLength[f] = average > 0 ? lengthBias[f] / average : 0;
+        }
+        int documents = statistics.documentCount();
+
+        return new Scorer() {
+            @Override
+            public double termWeight(String keyword, int documentFrequency, boolean exact) {
+                double idf = Math.log(1 + (documents - documentFrequency + 0.5) / (documentFrequency + 0.5));
+                return exact ? idf : idf * SUBSTRING_MATCH_WEIGHT;
+            }
+
+            @Override
+            public double score(double termWeight, int doc, int fieldMask) {
+                double frequency = 0;
+                for (SearchField field : fields) {
+                    if ((fieldMask & field.mask()) != 0) {
+                        int f = field.ordinal();
+                        frequency += weights[f] / (constant[f] + perLength[f] * statistics.fieldLength(field, doc));
+                    }
+                }
+                return termWeight * frequency / (K1 + frequency);
+            }
+
+            @Override
+            public double finalScore(double accumulated, boolean titleMatch, Item item) {
+                double titleBonus = titleMatch ? TITLE_MATCH_BONUS : 0;
+                return accumulated + titleBonus + item.getRating() * RATING_WEIGHT;
+            }
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package com.smartcollections.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * AND, OR or NOT over other clauses, evaluated as in-place bitmap
+ * intersection, union and difference. NOT is taken relative to the live docs.
+ */
+record BooleanClause(Operator operator, List<QueryClause> operands) implements QueryClause {
+    enum Operator {
+        AND,
+        OR,
+        NOT
+    }
+
+    static BooleanClause not(QueryClause operand) {
+        return new BooleanClause(Operator.NOT, List.of(operand));
+    }
+
+    @Override
+    public DocBitmap matches(Context context) {
+        if (operator == Operator.NOT) {
+            return context.attributes().live().andNot(operands.get(0).matches(context));
+        }
+        DocBitmap result = operands.get(0).matches(context);
+        for (int i = 1; i < operands.size(); i++) {
+            DocBitmap next = operands.get(i).matches(context);
+            if (operator == Operator.AND) {
+                result.and(next);
+            } else {
+                result.or(next);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> terms() {
+        if (operator == Operator.NOT) {
+            // Excluded words must not pull anything into the ranking.
+            return List.of();
+        }
+        Set<String> terms = new LinkedHashSet<>();
+        for (QueryClause operand : operands) {
+            terms.addAll(operand.terms());
+        }
+        return new ArrayList<>(terms);
+    }
+}
@@ -0,0 +1,19 @@
+package com.smartcollections.service;
+
+/**
+ * Lets one thread stop a search another thread is running. A search checks
+ * its token between keywords and every few thousand postings, so it stops
+ * shortly after {@link #cancel()} and returns what it had scored so far as an
+ * incomplete {@link SearchPage}. A token cannot be reset; use a new one per search.
+ */
+public final class CancellationToken {
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
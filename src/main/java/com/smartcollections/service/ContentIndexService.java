@@ -0,0 +1,140 @@
+package com.smartcollections.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.smartcollections.model.Item;
+
+/**
+ * Feeds extracted document text into the CONTENT field of the library index.
+ * Files are stat'ed and extracted on a small pool of daemon threads, which
+ * also apply the results: whatever has piled up is written in one
+ * {@link LibraryService#runBatch(Runnable) batch}, so a burst of documents
+ * publishes the index once. Afterwards {@code onIndexed} is posted to
+ * {@code notifyExecutor} (the FX thread in the app) so the UI can refresh;
+ * the caller never waits on disk, on a parser or on the index. A file is
+ * re-extracted only when its path, modification time or size differs from
+ * what was last indexed.
+ */
+public class ContentIndexService implements AutoCloseable {
+    // Phrase and proximity queries only see this many leading words of a document.
+    static final int MAX_CONTENT_POSITIONS = 50_000;
+
+    private final LibraryService libraryService;
+    private final DocumentTextExtractor extractor;
+    private final Executor notifyExecutor;
+    private final Runnable onIndexed;
+    private final ExecutorService workers;
+    // Extracted text waiting to be written; whichever worker finds no drain running writes it all.
+    private final Queue<ContentUpdate> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    public ContentIndexService(LibraryService libraryService, Executor notifyExecutor, Runnable onIndexed) {
+        this(libraryService, new DocumentTextExtractor(), notifyExecutor, onIndexed,
+            Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1)));
+    }
+
+    public ContentIndexService(LibraryService libraryService, DocumentTextExtractor extractor,
+                               Executor notifyExecutor, Runnable onIndexed, int threads) {
+        this.libraryService = Objects.requireNonNull(libraryService, "libraryService");
+        this.extractor = Objects.requireNonNull(extractor, "extractor");
+        this.notifyExecutor = Objects.requireNonNull(notifyExecutor, "notifyExecutor");
+        this.onIndexed = Objects.requireNonNull(onIndexed, "onIndexed");
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "content-indexer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    public void schedule(Item item) {
+        if (item == null || item.getFilePath() == null || item.getFilePath().isBlank()) {
+            return;
+        }
+        String itemId = item.getId();
+        String path = item.getFilePath();
+        LibraryService.ContentStamp indexed = libraryService.contentStamp(item);
+        try {
+            workers.execute(() -> extract(itemId, path, indexed));
+        } catch (RejectedExecutionException ignored) {
+            // Shut down; nothing left to index into.
+        }
+    }
+
+    public void scheduleAll(Collection<Item> items) {
+        items.forEach(this::schedule);
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    private void extract(String itemId, String path, LibraryService.ContentStamp indexed) {
+        try {
+            Path file = Paths.get(path);
+            if (!Files.isRegularFile(file)) {
+                return;
+            }
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            LibraryService.ContentStamp current = new LibraryService.ContentStamp(
+                path, attributes.lastModifiedTime().toMillis(), attributes.size());
+            if (current.equals(indexed)) {
+                return;
+            }
+
+            Optional<String> text = extractor.extract(file);
+            if (text.isEmpty()) {
+                return;
+            }
+            Analyzer analyzer = libraryService.getAnalyzer(SearchField.CONTENT);
+            Set<String> tokens = analyzer.terms(text.get());
+            TermPositions positions = TermPositions.of(text.get(), MAX_CONTENT_POSITIONS, analyzer);
+            pending.add(new ContentUpdate(itemId, current, tokens, positions));
+            drain();
+        } catch (IOException | RuntimeException ignored) {
+            // Unreadable or malformed documents simply stay unindexed.
+        }
+    }
+
+    // Loops because an update queued just as the previous drain finished would otherwise wait for the next one.
+    private void drain() {
+        while (!pending.isEmpty() && draining.compareAndSet(false, true)) {
+            boolean[] changed = new boolean[1];
+            try {
+                libraryService.runBatch(() -> {
+                    for (ContentUpdate update; (update = pending.poll()) != null; ) {
+                        changed[0] |= libraryService.updateContent(update.itemId(), update.stamp(), update.tokens(),
+                            update.positions());
+                    }
+                });
+            } finally {
+                draining.set(false);
+            }
+            if (changed[0]) {
+                notifyExecutor.execute(onIndexed);
+            }
+        }
+    }
+
+    private record ContentUpdate(String itemId, LibraryService.ContentStamp stamp, Set<String> tokens,
+                                 TermPositions positions) {
+    }
+}
@@ -0,0 +1,142 @@
+package com.smartcollections.service;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-universe bit set over doc ids. Query filters are combined word by word,
+ * 64 docs per operation, instead of through hash set lookups.
+ */
+final class DocBitmap {
+    private long[] words;
+
+    DocBitmap(int capacity) {
+        words = new long[Math.max(1, (capacity + 63) >>> 6)];
+    }
+
+    static DocBitmap of(PostingList postings, int capacity) {
+        DocBitmap bitmap = new DocBitmap(capacity);
+        for (int i = 0; i < postings.size(); i++) {
+            bitmap.set(postings.docAt(i));
+        }
+        return bitmap;
+    }
+
+    void set(int doc) {
+        int word = doc >>> 6;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+        }
+        words[word] |= 1L << doc;
+    }
+
+    void clear(int doc) {
+        int word = doc >>> 6;
+        if (word < words.length) {
+            words[word] &= ~(1L << doc);
+        }
+    }
+
+    boolean get(int doc) {
+        int word = doc >>> 6;
+        return word < words.length && (words[word] & (1L << doc)) != 0;
+    }
+
+    DocBitmap and(DocBitmap other) {
+        int shared = Math.min(words.length, other.words.length);
+        for (int i = 0; i < shared; i++) {
+            words[i] &= other.words[i];
+        }
+        Arrays.fill(words, shared, words.length, 0L);
+        return this;
+    }
+
+    DocBitmap or(DocBitmap other) {
+        if (other.words.length > words.length) {
+            words = Arrays.copyOf(words, other.words.length);
+        }
+        for (int i = 0; i < other.words.length; i++) {
+            words[i] |= other.words[i];
+        }
+        return this;
+    }
+
+    /** Sets every bit of {@code other}, a run of words that starts at word {@code offset} of this bitmap. */
+    DocBitmap or(long[] other, int offset) {
+        if (offset + other.length > words.length) {
+            words = Arrays.copyOf(words, Math.max(offset + other.length, words.length * 2));
+        }
+        for (int i = 0; i < other.length; i++) {
+            words[offset + i] |= other[i];
+        }
+        return this;
+    }
+
+    DocBitmap andNot(DocBitmap other) {
+        int shared = Math.min(words.length, other.words.length);
+        for (int i = 0; i < shared; i++) {
+            words[i] &= ~other.words[i];
+        }
+        return this;
+    }
+
+    int cardinality() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /** Size of the intersection with {@code other}, without materialising it. */
+    int andCardinality(DocBitmap other) {
+        int shared = Math.min(words.length, other.words.length);
+        int count = 0;
+        for (int i = 0; i < shared; i++) {
+            count += Long.bitCount(words[i] & other.words[i]);
+        }
+        return count;
+    }
+
+    /** Size of the intersection with {@code other}, a run of words starting at word {@code offset}. */
+    int andCardinality(long[] other, int offset) {
+        int shared = Math.min(other.length, words.length - offset);
+        int count = 0;
+        for (int i = 0; i < shared; i++) {
+            count += Long.bitCount(words[offset + i] & other[i]);
+        }
+        return count;
+    }
+
+    boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the first set doc at or after {@code from}, or -1 when there is none. */
+    int nextSetBit(int from) {
+        int word = from >>> 6;
+        if (word >= words.length) {
+            return -1;
+        }
+        long bits = words[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == words.length) {
+                return -1;
+            }
+            bits = words[word];
+        }
+    }
+
+    DocBitmap copy() {
+        DocBitmap copy = new DocBitmap(0);
+        copy.words = words.clone();
+        return copy;
+    }
+}
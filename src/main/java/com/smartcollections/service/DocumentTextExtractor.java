@@ -0,0 +1,139 @@
+package com.smartcollections.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Optional;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.poi.hwpf.HWPFDocument;
+import org.apache.poi.hwpf.extractor.WordExtractor;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+
+/**
+ * Plain-text extraction for indexing. Unlike the preview pane this keeps no
+ * truncation notices or error banners, only the document's own text, capped so
+ * a single huge file can't dominate memory or the index.
+ */
+public class DocumentTextExtractor {
+    private static final int MAX_CHARACTERS = 1_000_000;
+    private static final int MAX_PDF_PAGES = 100;
+    private static final int MAX_SHEETS = 10;
+    private static final int MAX_ROWS_PER_SHEET = 1000;
+
+    /** Returns the document text, or empty when the file type carries no extractable text. */
+    public Optional<String> extract(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".txt") || name.endsWith(".md") || name.endsWith(".rtf") || name.endsWith(".csv")) {
+            return Optional.of(readPlainText(file));
+        }
+        if (name.endsWith(".pdf")) {
+            return Optional.of(extractPdf(file.toFile()));
+        }
+        if (name.endsWith(".docx")) {
+            return Optional.of(extractDocx(file));
+        }
+        if (name.endsWith(".doc")) {
+            return Optional.of(extractDoc(file));
+        }
+        if (name.endsWith(".xlsx") || name.endsWith(".xls")) {
+            return Optional.of(extractSpreadsheet(file.toFile()));
+        }
+        return Optional.empty();
+    }
+
+    // Decodes before capping, so the cap counts characters and never splits a multi-byte one;
+    // malformed bytes become replacement characters rather than failing the file.
+    private String readPlainText(Path file) throws IOException {
+        try (Reader in = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[8192];
+            StringBuilder text = new StringBuilder();
+            int read;
+            // One character past the cap tells cap() whether the last one kept starts a surrogate pair.
+            while (text.length() <= MAX_CHARACTERS
+                   && (read = in.read(buffer, 0, Math.min(buffer.length, MAX_CHARACTERS + 1 - text.length()))) >= 0) {
+                text.append(buffer, 0, read);
+            }
+            return cap(text.toString());
+        }
+    }
+
+    private String extractPdf(File file) throws IOException {
+        try (PDDocument document = PDDocument.load(file)) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setEndPage(Math.min(document.getNumberOfPages(), MAX_PDF_PAGES));
+            return cap(stripper.getText(document));
+        }
+    }
+
+    private String extractDocx(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file);
+             XWPFDocument document = new XWPFDocument(in)) {
+            StringBuilder text = new StringBuilder();
+            for (XWPFParagraph paragraph : document.getParagraphs()) {
+                text.append(paragraph.getText()).append('\n');
+                if (text.length() >= MAX_CHARACTERS) {
+                    break;
+                }
+            }
+            return cap(text.toString());
+        }
+    }
+
+    private String extractDoc(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file);
+             HWPFDocument document = new HWPFDocument(in);
+             WordExtractor extractor = new WordExtractor(document)) {
+            return cap(extractor.getText());
+        }
+    }
+
+    private String extractSpreadsheet(File file) throws IOException {
+        DataFormatter formatter = new DataFormatter();
+        try (Workbook workbook = WorkbookFactory.create(file)) {
+            StringBuilder text = new StringBuilder();
+            int sheets = Math.min(workbook.getNumberOfSheets(), MAX_SHEETS);
+            for (int i = 0; i < sheets; i++) {
+                Sheet sheet = workbook.getSheetAt(i);
+                text.append(sheet.getSheetName()).append('\n');
+                int rows = 0;
+                for (Row row : sheet) {
+                    if (rows++ >= MAX_ROWS_PER_SHEET || text.length() >= MAX_CHARACTERS) {
+                        break;
+                    }
+                    for (Cell cell : row) {
+                        text.append(formatter.formatCellValue(cell)).append('\t');
+                    }
+                    text.append('\n');
+                }
+            }
+            return cap(text.toString());
+        }
+    }
+
+    private static String cap(String text) {
+        if (text == null) {
+            return "";
+        }
+        if (text.length() <= MAX_CHARACTERS) {
+            return text;
+        }
+        // Keep a surrogate pair whole rather than end on half of it.
+        int end = Character.isHighSurrogate(text.charAt(MAX_CHARACTERS - 1)) ? MAX_CHARACTERS - 1 : MAX_CHARACTERS;
+        return text.substring(0, end);
+    }
+}
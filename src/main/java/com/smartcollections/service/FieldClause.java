@@ -0,0 +1,40 @@
+package com.smartcollections.service;
+
+import java.util.List;
+import java.util.function.Function;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+
+/**
+ * Filter on an indexed attribute: {@code tag:exam}, {@code category:paper},
+ * {@code type:pdf} or a rating range. Each resolves to one bitmap lookup (or a
+ * union of at most five for ratings) in the {@link AttributeIndex}.
+ */
+record FieldClause(String description, Function<AttributeIndex, DocBitmap> lookup) implements QueryClause {
+    static FieldClause tag(String tag) {
+        return new FieldClause("tag:" + tag, attributes -> attributes.tagged(tag));
+    }
+
+    static FieldClause category(Category category) {
+        return new FieldClause("category:" + category.name(), attributes -> attributes.inCategory(category));
+    }
+
+    static FieldClause fileType(Item.FileType fileType) {
+        return new FieldClause("type:" + fileType.name(), attributes -> attributes.ofFileType(fileType));
+    }
+
+    static FieldClause rating(int min, int max) {
+        return new FieldClause("rating:" + min + ".." + max, attributes -> attributes.ratedBetween(min, max));
+    }
+
+    @Override
+    public DocBitmap matches(Context context) {
+        return lookup.apply(context.attributes());
+    }
+
+    @Override
+    public List<String> terms() {
+        return List.of();
+    }
+}
@@ -0,0 +1,86 @@
+package com.smartcollections.service;
+
+import java.util.Arrays;
+
+/**
+ * Per-document token counts for each {@link SearchField} plus running totals, so
+ * average field lengths are available without walking the collection. Each
+ * doc's counts are a small array that is replaced, never changed, on a write,
+ * and the arrays sit in a {@link PersistentVector}, so a {@link #snapshot()}
+ * copies only the totals.
+ */
+final class FieldStatistics {
+    private static final int FIELD_COUNT = SearchField.values().length;
+    private static final int[] NO_LENGTHS = new int[FIELD_COUNT];
+
+    // Vectors made under this token may be changed in place; null in a snapshot, which is never written.
+    private Object edit;
+    private PersistentVector<int[]> lengths;
+    private final long[] totals;
+    private int documents;
+
+    FieldStatistics() {
+        edit = new Object();
+        lengths = PersistentVector.empty();
+        totals = new long[FIELD_COUNT];
+    }
+
+    private FieldStatistics(FieldStatistics source) {
+        edit = null;
+        lengths = source.lengths;
+        totals = source.totals.clone();
+        documents = source.documents;
+    }
+
+    void add(int doc) {
+        while (lengths.size() <= doc) {
+            lengths = lengths.add(NO_LENGTHS, edit);
+        }
+        documents++;
+    }
+
+    void remove(int doc) {
+        documents--;
+        int[] previous = lengths.get(doc);
+        for (int f = 0; f < FIELD_COUNT; f++) {
+            totals[f] -= previous[f];
+        }
+        lengths = lengths.set(doc, NO_LENGTHS, edit);
+    }
+
+    void setLength(int doc, SearchField field, int length) {
+        int f = field.ordinal();
+        int[] previous = lengths.get(doc);
+        if (previous[f] == length) {
+            return;
+        }
+        int[] updated = previous.clone();
+        updated[f] = length;
+        totals[f] += length - previous[f];
+        lengths = lengths.set(doc, updated, edit);
+    }
+
+    int length(SearchField field, int doc) {
+        return doc < lengths.size() ? lengths.get(doc)[field.ordinal()] : 0;
+    }
+
+    double averageLength(SearchField field) {
+        return documents == 0 ? 0 : (double) totals[field.ordinal()] / documents;
+    }
+
+    void clear() {
+        lengths = PersistentVector.empty();
+        Arrays.fill(totals, 0);
+        documents = 0;
+    }
+
+    /**
+     * A read-only copy of the totals sharing this one's per-doc counts. This
+     * instance moves to a new edit token, so the shared counts never change.
+     */
+    FieldStatistics snapshot() {
+        FieldStatistics snapshot = new FieldStatistics(this);
+        edit = new Object();
+        return snapshot;
+    }
+}
@@ -13,6 +13,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 public class FileImportService {
@@ -28,7 +29,26 @@ public class FileImportService {
     
     public ImportResult importFromDirectory(Path directory) {
         ImportResult result = new ImportResult();
-        
+        // The walk and the items are built before the write lock is taken, so other
+        // writers and the UI only wait for the items to be added.
+        List<Item> found = walk(directory, result);
+        // One batch: the folder is indexed in one pass, appears to searches at once and is undone in one step.
+        libraryService.batch(writer -> {
+            for (Item item : found) {
+                if (writer.add(item)) {
+                    result.importedFiles++;
+                    result.importedItems.add(item);
+                } else {
+                    result.skippedFiles++;
+                }
+            }
+        });
+        return result;
+    }
+
+    // Items for every supported file under directory; files that cannot be read count as skipped.
+    private List<Item> walk(Path directory, ImportResult result) {
+        List<Item> found = new ArrayList<>();
         try {
             Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
                 @Override
@@ -37,8 +57,9 @@ public class FileImportService {
                         String ext = getFileExtension(file);
                         if (supportedExtensions.contains(ext)) {
                             result.totalFiles++;
-                            if (importFile(file)) {
-                                result.importedFiles++;
+                            Item item = createItem(file);
+                            if (item != null) {
+                                found.add(item);
                             } else {
                                 result.skippedFiles++;
                             }
@@ -56,15 +77,30 @@ public class FileImportService {
         } catch (IOException e) {
             result.errors.add("Error walking directory: " + e.getMessage());
         }
-        
-        return result;
+        return found;
     }
     
     public boolean importFile(Path filePath) {
-        if (!Files.isRegularFile(filePath)) return false;
+        return importItem(filePath).isPresent();
+    }
+
+    /** Imports {@code filePath} and returns its item, or empty if it is unsupported or already in the library. */
+    public Optional<Item> importItem(Path filePath) {
+        Item item = createItem(filePath);
+        return item != null && libraryService.addItem(item) ? Optional.of(item) : Optional.empty();
+    }
+
+    /** Imports {@code filePath} as part of a {@link LibraryService#batch} write. */
+    public boolean importFile(Path filePath, LibraryService.BatchWriter writer) {
+        Item item = createItem(filePath);
+        return item != null && writer.add(item);
+    }
+
+    private Item createItem(Path filePath) {
+        if (!Files.isRegularFile(filePath)) return null;
         
         String extension = getFileExtension(filePath);
-        if (!supportedExtensions.contains(extension)) return false;
+        if (!supportedExtensions.contains(extension)) return null;
         
         String fileName = filePath.getFileName().toString();
         int lastDot = fileName.lastIndexOf('.');
@@ -79,7 +115,7 @@ public class FileImportService {
             item.addTag(extension.substring(1));
         }
         item.addTag(category.name().toLowerCase());
-        return libraryService.addItem(item);
+        return item;
     }
     
     private String getFileExtension(Path path) {
@@ -102,6 +138,8 @@ public class FileImportService {
         public int totalFiles = 0;
         public int importedFiles = 0;
         public int skippedFiles = 0;
+        // What the import added, so follow-up work such as content extraction can skip the rest of the library.
+        public final List<Item> importedItems = new ArrayList<>();
         public final List<String> errors = new ArrayList<>();
         
         @Override
@@ -0,0 +1,39 @@
+package com.smartcollections.service;
+
+import com.smartcollections.model.Item;
+
+/**
+ * The original ranking: each matched keyword adds its tag frequency (or posting
+ * count), boosted for exact matches, plus flat bonuses for a title match and
+ * for the item's rating. Keywords found only in extracted document text count
+ * for a quarter, so content hits don't outrank title, tag and file name hits.
+ */
+public class FrequencyRanker implements Ranker {
+    private static final double EXACT_MATCH_BOOST = 1.5;
+    private static final double TITLE_MATCH_BONUS = 8;
+    private static final double RATING_WEIGHT = 0.5;
+    private static final double CONTENT_ONLY_WEIGHT = 0.25;
+
+    @Override
+    public Scorer prepare(IndexStatistics statistics) {
+        return new Scorer() {
+            @Override
+            public double termWeight(String keyword, int documentFrequency, boolean exact) {
+                int tagCount = statistics.tagFrequency(keyword);
+                double weight = tagCount > 0 ? tagCount : documentFrequency;
+                return exact ? weight * EXACT_MATCH_BOOST : weight;
+            }
+
+            @Override
+            public double score(double termWeight, int doc, int fieldMask) {
+                return fieldMask == SearchField.CONTENT.mask() ? termWeight * CONTENT_ONLY_WEIGHT : termWeight;
+            }
+
+            @Override
+            public double finalScore(double accumulated, boolean titleMatch, Item item) {
+                double titleBonus = titleMatch ? TITLE_MATCH_BONUS : 0;
+                return accumulated + titleBonus + item.getRating() * RATING_WEIGHT;
+            }
+        };
+    }
+}
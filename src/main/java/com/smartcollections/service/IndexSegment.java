@@ -0,0 +1,119 @@
+package com.smartcollections.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Frozen keyword postings for a group of docs: a sorted term array with one
+ * trimmed {@link PostingList} per term, plus the sorted ids of the docs it was
+ * built from. Nothing in a segment changes after construction, so published
+ * index copies share segments instead of copying them. Docs removed later are
+ * masked by tombstones kept next to the segment and dropped when it is merged.
+ */
+final class IndexSegment {
+    private final String[] terms;
+    private final PostingList[] postings;
+    private final int[] docs;
+    private final int postingCount;
+
+    private IndexSegment(String[] terms, PostingList[] postings, int[] docs) {
+        this.terms = terms;
+        this.postings = postings;
+        this.docs = docs;
+        int count = 0;
+        for (PostingList list : postings) {
+            count += list.size();
+        }
+        this.postingCount = count;
+    }
+
+    /** Freezes a copy of the in-memory buffer. */
+    static IndexSegment of(Map<String, PostingList> buffer, int[] docs) {
+        String[] terms = buffer.keySet().toArray(String[]::new);
+        Arrays.sort(terms);
+        PostingList[] postings = new PostingList[terms.length];
+        for (int t = 0; t < terms.length; t++) {
+            postings[t] = buffer.get(terms[t]).copy();
+        }
+        int[] sorted = docs.clone();
+        Arrays.sort(sorted);
+        return new IndexSegment(terms, postings, sorted);
+    }
+
+    /**
+     * Folds {@code segments} into one, leaving out every doc marked in the
+     * matching {@code deleted} bitmap. The sorted term arrays are walked
+     * together, so each term's postings are combined exactly once.
+     */
+    static IndexSegment merge(List<IndexSegment> segments, List<PersistentBitmap> deleted) {
+        int[] cursors = new int[segments.size()];
+        List<String> terms = new ArrayList<>();
+        List<PostingList> postings = new ArrayList<>();
+        List<PostingList> sources = new ArrayList<>(segments.size());
+        List<PersistentBitmap> masks = new ArrayList<>(segments.size());
+        while (true) {
+            String term = null;
+            for (int s = 0; s < segments.size(); s++) {
+                IndexSegment segment = segments.get(s);
+                if (cursors[s] < segment.terms.length
+                    && (term == null || segment.terms[cursors[s]].compareTo(term) < 0)) {
+                    term = segment.terms[cursors[s]];
+                }
+            }
+            if (term == null) {
+                break;
+            }
+            sources.clear();
+            masks.clear();
+            for (int s = 0; s < segments.size(); s++) {
+                IndexSegment segment = segments.get(s);
+                if (cursors[s] < segment.terms.length && segment.terms[cursors[s]].equals(term)) {
+                    sources.add(segment.postings[cursors[s]++]);
+                    masks.add(deleted.get(s));
+                }
+            }
+            PostingList merged = PostingList.union(sources, masks);
+            if (!merged.isEmpty()) {
+                terms.add(term);
+                postings.add(merged);
+            }
+        }
+
+        int docCount = 0;
+        for (IndexSegment segment : segments) {
+            docCount += segment.docs.length;
+        }
+        int[] docs = new int[docCount];
+        int live = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            for (int doc : segments.get(s).docs) {
+                if (!deleted.get(s).get(doc)) {
+                    docs[live++] = doc;
+                }
+            }
+        }
+        docs = Arrays.copyOf(docs, live);
+        Arrays.sort(docs);
+        return new IndexSegment(terms.toArray(String[]::new), postings.toArray(PostingList[]::new), docs);
+    }
+
+    /** Postings of {@code term} in this segment, tombstoned docs included; null when absent. */
+    PostingList postings(String term) {
+        int index = Arrays.binarySearch(terms, term);
+        return index >= 0 ? postings[index] : null;
+    }
+
+    int[] docs() {
+        return docs;
+    }
+
+    int docCount() {
+        return docs.length;
+    }
+
+    int postingCount() {
+        return postingCount;
+    }
+}
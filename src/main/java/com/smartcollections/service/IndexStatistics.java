@@ -0,0 +1,17 @@
+package com.smartcollections.service;
+
+/**
+ * Read-only view of the collection statistics a {@link Ranker} may use. All
+ * lookups are answered from counters kept up to date while indexing.
+ */
+public interface IndexStatistics {
+    int documentCount();
+
+    int documentFrequency(String term);
+
+    int tagFrequency(String tag);
+
+    int fieldLength(SearchField field, int doc);
+
+    double averageFieldLength(SearchField field);
+}
@@ -0,0 +1,95 @@
+package com.smartcollections.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency counts in log-linear buckets, laid out like an HDR histogram: every
+ * power of two is split into {@link #SUB_BUCKETS} equal slots, so any recorded
+ * value is reported within one part in {@value #SUB_BUCKETS} of its true value
+ * however long or short it was. Values are nanoseconds up to about a minute;
+ * anything longer lands in the last bucket. Searches record from many threads
+ * at once, so the counts are atomic and recording never allocates or locks.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_TRACKABLE = TimeUnit.SECONDS.toNanos(64);
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_TRACKABLE) + 1);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_TRACKABLE));
+        counts.incrementAndGet(indexOf(value));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    public long count() {
+        return totalCount.get();
+    }
+
+    public long maxNanos() {
+        return maxNanos.get();
+    }
+
+    public double meanNanos() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalNanos.get() / count;
+    }
+
+    /**
+     * The smallest recorded latency that at least {@code percentile} percent of
+     * samples do not exceed, rounded up to its bucket; 0 when nothing was recorded.
+     */
+    public long valueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        }
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int index = 0; index < counts.length(); index++) {
+            seen += counts.get(index);
+            if (seen >= wanted) {
+                return Math.min(highestValueAt(index), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    public void reset() {
+        for (int index = 0; index < counts.length(); index++) {
+            counts.set(index, 0);
+        }
+        totalCount.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d p50=%dus p99=%dus max=%dus", count(), valueAtPercentile(50) / 1_000,
+            valueAtPercentile(99) / 1_000, maxNanos() / 1_000);
+    }
+
+    // Values below 2 * SUB_BUCKETS get a slot each; above that, each power of two has SUB_BUCKETS slots.
+    private static int indexOf(long value) {
+        int bucket = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return (bucket << SUB_BUCKET_BITS) + (int) (value >>> bucket);
+    }
+
+    private static long highestValueAt(int index) {
+        int bucket = Math.max(0, (index >>> SUB_BUCKET_BITS) - 1);
+        long subBucket = index - ((long) bucket << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << bucket) - 1;
+    }
+}
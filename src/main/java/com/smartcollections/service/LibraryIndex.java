@@ -0,0 +1,933 @@
+package com.smartcollections.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import com.smartcollections.model.Item;
+
+/**
+ * Everything a search reads: the items in insertion order, dense doc ids,
+ * keyword postings, the substring and typo lookups over the vocabulary, title
+ * grams, word positions, attribute bitmaps and field statistics. The single
+ * writer mutates its own instance and publishes a {@link #snapshot()} after
+ * each write batch. A published snapshot is never mutated again, so readers
+ * search it without locking and never see an item that is only partly indexed.
+ * <p>
+ * Every structure here is persistent: per-doc tables are
+ * {@link PersistentVector}s, maps are {@link PersistentMap}s, and the
+ * components share their nodes with their own snapshots. A snapshot therefore
+ * costs a few references per component, and a write copies only the paths to
+ * what it changes, so a single edit costs the same in a small library as in a
+ * large one.
+ */
+final class LibraryIndex implements IndexStatistics, QueryClause.Context {
+    // Below one item in this many, picked items are sorted by key instead of found by walking every title.
+    private static final int TITLE_SCAN_FRACTION = 8;
+    // Removed items leave an empty slot in the insertion order until this many, and half of it, are empty.
+    private static final int MIN_COMPACTED_SLOTS = 64;
+
+    // Tables made under this token may be changed in place; null in a published snapshot.
+    private Object edit;
+    // Items in insertion order. A removed item leaves a null slot until the next compaction.
+    private PersistentVector<Item> items;
+    private int emptySlots;
+    // Dense int doc ids keep postings at four bytes each instead of a 36-char UUID per entry.
+    private PersistentMap<String, Integer> docIds;
+    private PersistentVector<Item> docs;
+    // Where each doc's item sits in items.
+    private PersistentVector<Integer> itemSlots;
+    // Writer side only; null in published snapshots.
+    private final Deque<Integer> freeDocIds;
+    // Keyword postings in frozen segments plus a small write buffer; published snapshots share the segments.
+    private final SegmentedPostings postings;
+    // Trigram postings over the keyword vocabulary so substring tokens don't scan every keyword.
+    private final SubstringIndex<String> keywordGrams;
+    // Same vocabulary as a trie, walked with Levenshtein rows for typo-tolerant lookups and
+    // weighted by document frequency for completions.
+    private final VocabularyTrie vocabulary;
+    // Tags weighted by how many items carry them, for completions in the tag field.
+    private final VocabularyTrie tagVocabulary;
+    // Pre-lowercased titles keyed by doc id, so the title boost only visits titles that match.
+    private final SubstringIndex<Integer> titleGrams;
+    private final TitleOrder titleOrder;
+    private PersistentVector<String[]> docKeywords;
+    // Field mask of each keyword in docKeywords, at the same index.
+    private PersistentVector<byte[]> docKeywordFields;
+    // Every term of a doc as written to the postings, metadata and content merged, for scan plans.
+    private PersistentVector<String[]> docTerms;
+    private PersistentVector<byte[]> docTermFields;
+    // Totals over the postings that the query planner weighs its options with.
+    private final PostingStatistics postingStatistics;
+    private PersistentVector<String[]> docTags;
+    // Extracted document text lives in the CONTENT field, next to the file it was read from.
+    private PersistentVector<String[]> docContent;
+    private PersistentVector<LibraryService.ContentStamp> docContentStamps;
+    // Word positions per doc, indexed by SearchField ordinal; tags are whole values and have none.
+    // Each doc's array is replaced, never changed, so snapshots can share it.
+    private PersistentVector<TermPositions[]> docPositions;
+    private final AttributeIndex attributeIndex;
+    private final FieldStatistics fieldStatistics;
+    private PersistentMap<String, Integer> tagFrequency;
+    // How each field's text becomes terms; tags are whole values and have no analyzer.
+    private final Map<SearchField, Analyzer> analyzers;
+    // Canonical term strings, kept in step with the vocabulary. Writer side only; null in published snapshots.
+    private final TermDictionary dictionary;
+    // Bumped by every mutation; cached results from an older generation are never served.
+    private long generation;
+
+    LibraryIndex() {
+        edit = new Object();
+        freeDocIds = new ArrayDeque<>();
+        keywordGrams = new SubstringIndex<>();
+        vocabulary = new VocabularyTrie();
+        dictionary = new TermDictionary();
+        postings = new SegmentedPostings(new SegmentedPostings.VocabularyListener() {
+            @Override
+            public void added(String term) {
+                dictionary.intern(term);
+                keywordGrams.add(term, term);
+                // counted() follows straight away and puts the term in the trie with its weight.
+            }
+
+            @Override
+            public void removed(String term) {
+                dictionary.remove(term);
+                keywordGrams.remove(term);
+                postingStatistics.counted(vocabulary.weight(term), 0);
+                vocabulary.remove(term);
+            }
+
+            @Override
+            public void counted(String term, int docs) {
+                postingStatistics.counted(vocabulary.weight(term), docs);
+                vocabulary.put(term, docs);
+            }
+        });
+        postingStatistics = new PostingStatistics();
+        tagVocabulary = new VocabularyTrie();
+        titleGrams = new SubstringIndex<>();
+        titleOrder = new TitleOrder();
+        attributeIndex = new AttributeIndex();
+        fieldStatistics = new FieldStatistics();
+        analyzers = new EnumMap<>(SearchField.class);
+        analyzers.put(SearchField.TITLE, Analyzer.standard());
+        analyzers.put(SearchField.FILE_NAME, Analyzer.standard());
+        analyzers.put(SearchField.CONTENT, Analyzer.standard());
+        clearTables();
+    }
+
+    private LibraryIndex(LibraryIndex source) {
+        edit = null;
+        items = source.items;
+        emptySlots = source.emptySlots;
+        docIds = source.docIds;
+        docs = source.docs;
+        itemSlots = source.itemSlots;
+        freeDocIds = null;
+        postings = source.postings.snapshot();
+        keywordGrams = source.keywordGrams.snapshot();
+        vocabulary = source.vocabulary.snapshot();
+        tagVocabulary = source.tagVocabulary.snapshot();
+        titleGrams = source.titleGrams.snapshot();
+        titleOrder = source.titleOrder.snapshot();
+        docKeywords = source.docKeywords;
+        docKeywordFields = source.docKeywordFields;
+        docTerms = source.docTerms;
+        docTermFields = source.docTermFields;
+        postingStatistics = source.postingStatistics.copy();
+        docTags = source.docTags;
+        docContent = source.docContent;
+        docContentStamps = source.docContentStamps;
+        docPositions = source.docPositions;
+        attributeIndex = source.attributeIndex.snapshot();
+        fieldStatistics = source.fieldStatistics.snapshot();
+        tagFrequency = source.tagFrequency;
+        analyzers = new EnumMap<>(source.analyzers);
+        dictionary = null;
+        generation = source.generation;
+    }
+
+    /**
+     * A frozen snapshot for readers, sharing every table with this index; the
+     * writer keeps mutating this instance under a new edit token, so it copies
+     * whatever it changes next instead of changing it under the snapshot.
+     */
+    LibraryIndex snapshot() {
+        LibraryIndex snapshot = new LibraryIndex(this);
+        edit = new Object();
+        return snapshot;
+    }
+
+    // Shares every table and component of a published index but its postings.
+    private LibraryIndex(LibraryIndex published, SegmentedPostings postings) {
+        edit = null;
+        items = published.items;
+        emptySlots = published.emptySlots;
+        docIds = published.docIds;
+        docs = published.docs;
+        itemSlots = published.itemSlots;
+        freeDocIds = null;
+        this.postings = postings;
+        keywordGrams = published.keywordGrams;
+        vocabulary = published.vocabulary;
+        tagVocabulary = published.tagVocabulary;
+        titleGrams = published.titleGrams;
+        titleOrder = published.titleOrder;
+        docKeywords = published.docKeywords;
+        docKeywordFields = published.docKeywordFields;
+        docTerms = published.docTerms;
+        docTermFields = published.docTermFields;
+        postingStatistics = published.postingStatistics;
+        docTags = published.docTags;
+        docContent = published.docContent;
+        docContentStamps = published.docContentStamps;
+        docPositions = published.docPositions;
+        attributeIndex = published.attributeIndex;
+        fieldStatistics = published.fieldStatistics;
+        tagFrequency = published.tagFrequency;
+        analyzers = published.analyzers;
+        dictionary = null;
+        generation = published.generation;
+    }
+
+    /**
+     * {@code published} with only its segment list replaced by this index's,
+     * for publishing a merge: nothing else moved, so every other table is
+     * shared with it as is. Everything this index wrote must already be
+     * published.
+     */
+    LibraryIndex withPostingsOf(LibraryIndex published) {
+        return new LibraryIndex(published, postings.snapshot());
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    /** Moves the generation on without changing the index, e.g. when the ranker changes. */
+    void invalidate() {
+        generation++;
+    }
+
+    void add(Item item) {
+        assignDocId(item);
+        indexItem(item);
+    }
+
+    void remove(Item item) {
+        removeFromIndex(item);
+        releaseDocId(item);
+    }
+
+    /**
+     * Adds {@code batch} in one pass. Each item's fields are indexed as
+     * {@link #add(Item)} would, but tag counts are summed over the batch and
+     * applied once per tag, and the postings of every doc are handed to
+     * {@link SegmentedPostings#putAll} together in doc order.
+     */
+    void addAll(List<Item> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        generation++;
+        int[] docs = new int[batch.size()];
+        Map<String, Integer> tagCounts = new HashMap<>();
+        for (int i = 0; i < docs.length; i++) {
+            Item item = batch.get(i);
+            assignDocId(item);
+            docs[i] = docIds.get(item.getId());
+            for (String tag : indexFields(item, docs[i])) {
+                tagCounts.merge(tag, 1, Integer::sum);
+            }
+            collectTerms(docs[i]);
+        }
+        tagCounts.forEach(this::countTag);
+
+        // Recycled doc ids come first, so the batch is not in doc order until sorted.
+        Arrays.sort(docs);
+        String[][] terms = new String[docs.length][];
+        byte[][] fields = new byte[docs.length][];
+        for (int i = 0; i < docs.length; i++) {
+            terms[i] = docTerms.get(docs[i]);
+            fields[i] = docTermFields.get(docs[i]);
+        }
+        postings.putAll(docs, terms, fields);
+    }
+
+    /**
+     * Removes {@code batch} in one pass: the item list is filtered once instead
+     * of searched per item, and postings and tag counts move once per term and
+     * tag. Items that are not indexed are ignored.
+     */
+    void removeAll(Collection<Item> batch) {
+        Map<String, Item> indexed = new HashMap<>();
+        for (Item item : batch) {
+            if (docIds.containsKey(item.getId())) {
+                indexed.put(item.getId(), item);
+            }
+        }
+        if (indexed.isEmpty()) {
+            return;
+        }
+        generation++;
+        Map<String, Integer> tagCounts = new HashMap<>();
+        int[] docs = new int[indexed.size()];
+        int count = 0;
+        for (Item item : indexed.values()) {
+            docs[count] = docIds.get(item.getId());
+            String[] tags = clearFields(docs[count++]);
+            if (tags != null) {
+                for (String tag : tags) {
+                    tagCounts.merge(tag, -1, Integer::sum);
+                }
+            }
+        }
+        postings.deleteAll(docs);
+        tagCounts.forEach(this::countTag);
+        indexed.values().forEach(this::releaseDocId);
+    }
+
+    /**
+     * Brings the index up to date with new tags on {@code batch}, leaving alone
+     * everything that does not depend on them: titles, file names, positions
+     * and content are not re-analysed. Each doc's postings are rewritten, but
+     * only the tag terms it gained or lost change their doc counts, and tag
+     * counts move once per tag for the whole batch.
+     */
+    void retag(List<Item> batch) {
+        generation++;
+        Map<String, Integer> tagCounts = new HashMap<>();
+        for (Item item : batch) {
+            Integer doc = docIds.get(item.getId());
+            if (doc == null) {
+                continue;
+            }
+            String[] previous = docTags.get(doc);
+            if (previous != null) {
+                for (String tag : previous) {
+                    tagCounts.merge(tag, -1, Integer::sum);
+                }
+            }
+            String[] tags = item.getTags().toArray(String[]::new);
+            for (String tag : tags) {
+                tagCounts.merge(tag, 1, Integer::sum);
+            }
+
+            Map<String, Integer> fieldMasks = new LinkedHashMap<>();
+            String[] keywords = docKeywords.get(doc);
+            byte[] keywordFields = docKeywordFields.get(doc);
+            for (int i = 0; keywords != null && i < keywords.length; i++) {
+                int mask = keywordFields[i] & ~SearchField.TAGS.mask();
+                if (mask != 0) {
+                    fieldMasks.put(keywords[i], mask);
+                }
+            }
+            for (String tag : tags) {
+                fieldMasks.merge(tag, SearchField.TAGS.mask(), (a, b) -> a | b);
+            }
+            String[] retagged = dictionary.intern(fieldMasks.keySet().toArray(String[]::new));
+            byte[] retaggedFields = new byte[retagged.length];
+            for (int i = 0; i < retagged.length; i++) {
+                retaggedFields[i] = (byte) (int) fieldMasks.get(retagged[i]);
+            }
+            docKeywords = docKeywords.set(doc, retagged, edit);
+            docKeywordFields = docKeywordFields.set(doc, retaggedFields, edit);
+            fieldStatistics.setLength(doc, SearchField.TAGS, tags.length);
+            docTags = docTags.set(doc, tags, edit);
+            attributeIndex.add(doc, item, tags);
+            writePostings(doc);
+        }
+        tagCounts.forEach((tag, change) -> {
+            if (change != 0) {
+                countTag(tag, change);
+            }
+        });
+    }
+
+    /** Re-files {@code batch} under their new categories; nothing else depends on the category. */
+    void recategorise(List<Item> batch) {
+        generation++;
+        for (Item item : batch) {
+            Integer doc = docIds.get(item.getId());
+            if (doc != null) {
+                attributeIndex.add(doc, item, docTags.get(doc));
+            }
+        }
+    }
+
+    /** Items carrying {@code tag}, read off its attribute bitmap. */
+    List<Item> itemsTagged(String tag) {
+        DocBitmap tagged = attributeIndex.tagged(tag);
+        List<Item> result = new ArrayList<>();
+        for (int doc = tagged.nextSetBit(0); doc >= 0; doc = tagged.nextSetBit(doc + 1)) {
+            result.add(docs.get(doc));
+        }
+        return result;
+    }
+
+    void indexItem(Item item) {
+        Integer doc = docIds.get(item.getId());
+        if (doc == null) {
+            return;
+        }
+        generation++;
+        for (String tag : indexFields(item, doc)) {
+            countTag(tag, 1);
+        }
+        writePostings(doc);
+    }
+
+    // Indexes everything of the item but its postings and tag counts, and returns its tags.
+    private String[] indexFields(Item item, int doc) {
+        Set<String> titleTokens = analyzers.get(SearchField.TITLE).terms(item.getTitle());
+        Set<String> tagSet = item.getTags();
+        Set<String> fileNameTokens = analyzers.get(SearchField.FILE_NAME).terms(item.fileName());
+        Map<String, Integer> fieldMasks = new LinkedHashMap<>();
+        titleTokens.forEach(token -> fieldMasks.merge(token, SearchField.TITLE.mask(), (a, b) -> a | b));
+        tagSet.forEach(token -> fieldMasks.merge(token, SearchField.TAGS.mask(), (a, b) -> a | b));
+        fileNameTokens.forEach(token -> fieldMasks.merge(token, SearchField.FILE_NAME.mask(), (a, b) -> a | b));
+
+        String[] keywords = dictionary.intern(fieldMasks.keySet().toArray(String[]::new));
+        byte[] keywordFields = new byte[keywords.length];
+        for (int i = 0; i < keywords.length; i++) {
+            keywordFields[i] = (byte) (int) fieldMasks.get(keywords[i]);
+        }
+        docKeywords = docKeywords.set(doc, keywords, edit);
+        docKeywordFields = docKeywordFields.set(doc, keywordFields, edit);
+        fieldStatistics.setLength(doc, SearchField.TITLE, titleTokens.size());
+        fieldStatistics.setLength(doc, SearchField.TAGS, tagSet.size());
+        fieldStatistics.setLength(doc, SearchField.FILE_NAME, fileNameTokens.size());
+
+        String[] tags = tagSet.toArray(String[]::new);
+        docTags = docTags.set(doc, tags, edit);
+        attributeIndex.add(doc, item, tags);
+        if (item.getTitle() != null) {
+            titleGrams.add(doc, item.getTitle().toLowerCase(Locale.ROOT));
+        }
+        titleOrder.put(doc, item.getTitle(), item.getId());
+        TermPositions[] positions = docPositions.get(doc).clone();
+        positions[SearchField.TITLE.ordinal()] =
+            TermPositions.of(item.getTitle(), Integer.MAX_VALUE, analyzers.get(SearchField.TITLE)).intern(dictionary);
+        positions[SearchField.FILE_NAME.ordinal()] =
+            TermPositions.of(item.fileName(), Integer.MAX_VALUE, analyzers.get(SearchField.FILE_NAME)).intern(dictionary);
+        docPositions = docPositions.set(doc, positions, edit);
+
+        // Extracted text belongs to the file it came from; a new path waits for re-extraction.
+        LibraryService.ContentStamp stamp = docContentStamps.get(doc);
+        if (stamp != null && !Objects.equals(stamp.path(), item.getFilePath())) {
+            removeContent(doc);
+        }
+        return tags;
+    }
+
+    void removeFromIndex(Item item) {
+        Integer doc = docIds.get(item.getId());
+        if (doc == null) {
+            return;
+        }
+        generation++;
+        // Content postings go too; indexItem writes them back together with the new metadata.
+        deletePostings(doc);
+        String[] tags = clearFields(doc);
+        if (tags != null) {
+            for (String tag : tags) {
+                countTag(tag, -1);
+            }
+        }
+    }
+
+    // Clears everything indexed for the doc but its postings and tag counts, and returns the tags it had.
+    private String[] clearFields(int doc) {
+        titleGrams.remove(doc);
+        titleOrder.remove(doc);
+        TermPositions[] positions = docPositions.get(doc).clone();
+        positions[SearchField.TITLE.ordinal()] = null;
+        positions[SearchField.FILE_NAME.ordinal()] = null;
+        docPositions = docPositions.set(doc, positions, edit);
+        docKeywordFields = docKeywordFields.set(doc, null, edit);
+        String[] keywords = docKeywords.get(doc);
+        docKeywords = docKeywords.set(doc, null, edit);
+        if (keywords != null) {
+            fieldStatistics.setLength(doc, SearchField.TITLE, 0);
+            fieldStatistics.setLength(doc, SearchField.TAGS, 0);
+            fieldStatistics.setLength(doc, SearchField.FILE_NAME, 0);
+        }
+
+        attributeIndex.remove(doc);
+        String[] tags = docTags.get(doc);
+        docTags = docTags.set(doc, null, edit);
+        return tags;
+    }
+
+    private void countTag(String tag, int change) {
+        int count = tagFrequency(tag) + change;
+        if (count > 0) {
+            tagFrequency = tagFrequency.put(tag, count, edit);
+            tagVocabulary.put(tag, count);
+        } else {
+            tagFrequency = tagFrequency.remove(tag, edit);
+            tagVocabulary.remove(tag);
+        }
+    }
+
+    /**
+     * Replaces the extracted-text tokens of an item. Results are dropped when the
+     * item was removed or its file path changed since extraction started.
+     */
+    boolean updateContent(String itemId, LibraryService.ContentStamp stamp, Set<String> tokens,
+                          TermPositions positions) {
+        Integer doc = docIds.get(itemId);
+        if (doc == null || !Objects.equals(docs.get(doc).getFilePath(), stamp.path())) {
+            return false;
+        }
+        generation++;
+        String[] contentTokens = dictionary.intern(tokens.toArray(String[]::new));
+        docContent = docContent.set(doc, contentTokens, edit);
+        docContentStamps = docContentStamps.set(doc, stamp, edit);
+        setPositions(doc, SearchField.CONTENT, positions.intern(dictionary));
+        fieldStatistics.setLength(doc, SearchField.CONTENT, contentTokens.length);
+        writePostings(doc);
+        return true;
+    }
+
+    LibraryService.ContentStamp contentStamp(Item item) {
+        Integer doc = docIds.get(item.getId());
+        return doc != null ? docContentStamps.get(doc) : null;
+    }
+
+    void clear() {
+        clearTables();
+        freeDocIds.clear();
+        postings.clear();
+        keywordGrams.clear();
+        vocabulary.clear();
+        tagVocabulary.clear();
+        titleGrams.clear();
+        titleOrder.clear();
+        postingStatistics.clear();
+        attributeIndex.clear();
+        fieldStatistics.clear();
+        dictionary.clear();
+        generation++;
+    }
+
+    // Points every per-doc table at an empty one; snapshots keep the old tables.
+    private void clearTables() {
+        items = PersistentVector.empty();
+        emptySlots = 0;
+        docIds = PersistentMap.empty();
+        docs = PersistentVector.empty();
+        itemSlots = PersistentVector.empty();
+        docKeywords = PersistentVector.empty();
+        docKeywordFields = PersistentVector.empty();
+        docTerms = PersistentVector.empty();
+        docTermFields = PersistentVector.empty();
+        docTags = PersistentVector.empty();
+        docContent = PersistentVector.empty();
+        docContentStamps = PersistentVector.empty();
+        docPositions = PersistentVector.empty();
+        tagFrequency = PersistentMap.empty();
+    }
+
+    Analyzer analyzer(SearchField field) {
+        return analyzers.get(field);
+    }
+
+    /**
+     * Switches a field to {@code analyzer} and re-analyses every item's title
+     * or file name. Content cannot be re-analysed without its text, so a new
+     * content analyzer drops the extracted text until the files are read again.
+     */
+    void setAnalyzer(SearchField field, Analyzer analyzer) {
+        analyzers.put(field, analyzer);
+        generation++;
+        for (Item item : items()) {
+            if (field == SearchField.CONTENT) {
+                int doc = docIds.get(item.getId());
+                removeContent(doc);
+                writePostings(doc);
+            } else {
+                removeFromIndex(item);
+                indexItem(item);
+            }
+        }
+    }
+
+    /**
+     * Hands every keyword of the doc, metadata and content alike, to the
+     * segmented postings in one go. A doc's postings are always replaced as a
+     * whole, which is what lets a segment drop a doc with a single tombstone.
+     */
+    private void writePostings(int doc) {
+        collectTerms(doc);
+        postings.put(doc, docTerms.get(doc), docTermFields.get(doc));
+    }
+
+    // Merges the doc's metadata keywords and content tokens into the terms writePostings hands over.
+    private void collectTerms(int doc) {
+        String[] keywords = docKeywords.get(doc);
+        byte[] keywordFields = docKeywordFields.get(doc);
+        String[] content = docContent.get(doc);
+        Map<String, Integer> fieldMasks = new LinkedHashMap<>();
+        if (keywords != null) {
+            for (int i = 0; i < keywords.length; i++) {
+                fieldMasks.put(keywords[i], (int) keywordFields[i]);
+            }
+        }
+        if (content != null) {
+            for (String token : content) {
+                fieldMasks.merge(token, SearchField.CONTENT.mask(), (a, b) -> a | b);
+            }
+        }
+        String[] terms = fieldMasks.keySet().toArray(String[]::new);
+        byte[] fields = new byte[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            fields[i] = (byte) (int) fieldMasks.get(terms[i]);
+        }
+        docTerms = docTerms.set(doc, terms, edit);
+        docTermFields = docTermFields.set(doc, fields, edit);
+    }
+
+    private void deletePostings(int doc) {
+        postings.delete(doc);
+        docTerms = docTerms.set(doc, null, edit);
+        docTermFields = docTermFields.set(doc, null, edit);
+    }
+
+    // Forgets the doc's extracted text; the caller rewrites or drops its postings.
+    private void removeContent(int doc) {
+        String[] contentTokens = docContent.get(doc);
+        docContent = docContent.set(doc, null, edit);
+        docContentStamps = docContentStamps.set(doc, null, edit);
+        setPositions(doc, SearchField.CONTENT, null);
+        if (contentTokens == null) {
+            return;
+        }
+        generation++;
+        fieldStatistics.setLength(doc, SearchField.CONTENT, 0);
+    }
+
+    // Swaps in a new positions array for the doc, since snapshots may share the old one.
+    private void setPositions(int doc, SearchField field, TermPositions positions) {
+        TermPositions[] updated = docPositions.get(doc).clone();
+        updated[field.ordinal()] = positions;
+        docPositions = docPositions.set(doc, updated, edit);
+    }
+
+    private void assignDocId(Item item) {
+        Integer recycled = freeDocIds.poll();
+        int doc = recycled != null ? recycled : docs.size();
+        if (recycled == null) {
+            docs = docs.add(item, edit);
+            itemSlots = itemSlots.add(items.size(), edit);
+            docKeywords = docKeywords.add(null, edit);
+            docKeywordFields = docKeywordFields.add(null, edit);
+            docTerms = docTerms.add(null, edit);
+            docTermFields = docTermFields.add(null, edit);
+            docTags = docTags.add(null, edit);
+            docContent = docContent.add(null, edit);
+            docContentStamps = docContentStamps.add(null, edit);
+            docPositions = docPositions.add(new TermPositions[SearchField.values().length], edit);
+        } else {
+            docs = docs.set(doc, item, edit);
+            itemSlots = itemSlots.set(doc, items.size(), edit);
+        }
+        items = items.add(item, edit);
+        docIds = docIds.put(item.getId(), doc, edit);
+        fieldStatistics.add(doc);
+    }
+
+    private void releaseDocId(Item item) {
+        Integer doc = docIds.get(item.getId());
+        if (doc != null) {
+            docIds = docIds.remove(item.getId(), edit);
+            removeContent(doc);
+            deletePostings(doc);
+            fieldStatistics.remove(doc);
+            docs = docs.set(doc, null, edit);
+            items = items.set(itemSlots.get(doc), null, edit);
+            emptySlots++;
+            freeDocIds.push(doc);
+            if (emptySlots >= MIN_COMPACTED_SLOTS && emptySlots * 2 >= items.size()) {
+                compactItems();
+            }
+        }
+    }
+
+    // Closes up the slots of removed items; amortised over at least as many removals as items it moves.
+    private void compactItems() {
+        PersistentVector<Item> compacted = PersistentVector.empty();
+        for (int slot = 0; slot < items.size(); slot++) {
+            Item item = items.get(slot);
+            if (item != null) {
+                itemSlots = itemSlots.set(docIds.get(item.getId()), compacted.size(), edit);
+                compacted = compacted.add(item, edit);
+            }
+        }
+        items = compacted;
+        emptySlots = 0;
+    }
+
+    /** Every item in the order it was added. */
+    List<Item> items() {
+        List<Item> list = new ArrayList<>(itemCount());
+        for (int slot = 0; slot < items.size(); slot++) {
+            Item item = items.get(slot);
+            if (item != null) {
+                list.add(item);
+            }
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    int itemCount() {
+        return docIds.size();
+    }
+
+    /** The first {@code limit} items by title, read off the maintained title order. */
+    List<Item> itemsByTitle(int limit) {
+        List<Item> sorted = new ArrayList<>(Math.min(limit, titleOrder.size()));
+        for (int doc : titleOrder.docs()) {
+            if (sorted.size() >= limit) {
+                break;
+            }
+            sorted.add(docs.get(doc));
+        }
+        return sorted;
+    }
+
+    /**
+     * {@code items} in title order. A large share of the library is picked out
+     * in one walk of the title order; a handful is sorted by the stored keys.
+     * Items this copy of the index does not hold keep their order at the end.
+     */
+    List<Item> sortByTitle(Collection<Item> items) {
+        List<Integer> known = new ArrayList<>(items.size());
+        List<Item> unknown = new ArrayList<>();
+        for (Item item : items) {
+            Integer doc = docIds.get(item.getId());
+            if (doc != null) {
+                known.add(doc);
+            } else {
+                unknown.add(item);
+            }
+        }
+        List<Item> sorted = new ArrayList<>(items.size());
+        if ((long) known.size() * TITLE_SCAN_FRACTION >= titleOrder.size()) {
+            DocBitmap wanted = new DocBitmap(docs.size());
+            known.forEach(wanted::set);
+            for (int doc : titleOrder.docs()) {
+                if (wanted.get(doc)) {
+                    sorted.add(docs.get(doc));
+                }
+            }
+        } else {
+            known.sort(titleOrder.comparator());
+            for (int doc : known) {
+                sorted.add(docs.get(doc));
+            }
+        }
+        sorted.addAll(unknown);
+        return sorted;
+    }
+
+    /** The item holding {@code doc}, or null when the id is free. */
+    Item item(int doc) {
+        return docs.get(doc);
+    }
+
+    Map<String, Integer> tagFrequencies() {
+        Map<String, Integer> frequencies = new HashMap<>();
+        tagFrequency.forEach(frequencies::put);
+        return Collections.unmodifiableMap(frequencies);
+    }
+
+    /** Docs whose title contains {@code text}; only those found before {@code stop} says yes. */
+    List<Integer> titlesContaining(String text, BooleanSupplier stop) {
+        return titleGrams.find(text, stop);
+    }
+
+    String titleOf(int doc) {
+        return titleGrams.textOf(doc);
+    }
+
+    void fuzzy(String word, int maxEdits, int exactPrefix, BooleanSupplier stop,
+               VocabularyTrie.MatchConsumer consumer) {
+        vocabulary.fuzzy(word, maxEdits, exactPrefix, stop, consumer);
+    }
+
+    /** Keywords containing {@code word}; only those found before {@code stop} says yes. */
+    List<String> keywordsContaining(String word, BooleanSupplier stop) {
+        return keywordGrams.find(word, stop);
+    }
+
+    /** Every term of {@code doc} as held in the postings, or null when it has none. */
+    String[] docTerms(int doc) {
+        return docTerms.get(doc);
+    }
+
+    /** The field mask of each term in {@link #docTerms(int)}, at the same index. */
+    byte[] docTermFields(int doc) {
+        return docTermFields.get(doc);
+    }
+
+    int segmentCount() {
+        return postings.segmentCount();
+    }
+
+    /**
+     * Whether {@code other} shares {@code doc}'s entries with this index, i.e.
+     * neither copied the parts of the per-doc tables that hold it.
+     */
+    boolean sharesDoc(LibraryIndex other, int doc) {
+        return docs.sharesLeaf(other.docs, doc)
+            && itemSlots.sharesLeaf(other.itemSlots, doc)
+            && docKeywords.sharesLeaf(other.docKeywords, doc)
+            && docKeywordFields.sharesLeaf(other.docKeywordFields, doc)
+            && docTerms.sharesLeaf(other.docTerms, doc)
+            && docTermFields.sharesLeaf(other.docTermFields, doc)
+            && docTags.sharesLeaf(other.docTags, doc)
+            && docContent.sharesLeaf(other.docContent, doc)
+            && docContentStamps.sharesLeaf(other.docContentStamps, doc)
+            && docPositions.sharesLeaf(other.docPositions, doc);
+    }
+
+    /** Whether {@code other} reads the very same frozen posting segments. */
+    boolean sharesSegments(LibraryIndex other) {
+        return postings.sharesSegments(other.postings);
+    }
+
+    int vocabularySize() {
+        return vocabulary.size();
+    }
+
+    long totalPostings() {
+        return postingStatistics.totalPostings();
+    }
+
+    long[] postingsLengthHistogram() {
+        return postingStatistics.lengthHistogram();
+    }
+
+    /** The {@code k} keywords starting with {@code prefix} that the most items hold. */
+    List<String> suggestKeywords(String prefix, int k) {
+        return vocabulary.suggest(prefix, k);
+    }
+
+    /** The {@code k} tags starting with {@code prefix} that the most items carry. */
+    List<String> suggestTags(String prefix, int k) {
+        return tagVocabulary.suggest(prefix, k);
+    }
+
+    // Walks the keyword grams' keys, which are the live terms in snapshots too.
+    Map<String, Set<String>> keywordIndexById() {
+        Map<String, Set<String>> copy = new HashMap<>();
+        keywordGrams.forEachKey(keyword -> {
+            PostingList list = postings.postings(keyword);
+            Set<String> ids = new HashSet<>();
+            for (int i = 0; i < list.size(); i++) {
+                ids.add(docs.get(list.docAt(i)).getId());
+            }
+            copy.put(keyword, ids);
+        });
+        return copy;
+    }
+
+    boolean mergeDue() {
+        return postings.mergeDue();
+    }
+
+    SegmentedPostings.Merge planMerge() {
+        return postings.planMerge();
+    }
+
+    /** Installs a finished merge. Searches return the same results before and after, so the generation stays. */
+    boolean commitMerge(SegmentedPostings.Merge merge) {
+        return postings.commit(merge);
+    }
+
+    Map<String, Set<String>> keywordsById() {
+        return fieldById(docKeywords);
+    }
+
+    Map<String, Set<String>> tagsById() {
+        return fieldById(docTags);
+    }
+
+    private Map<String, Set<String>> fieldById(PersistentVector<String[]> field) {
+        Map<String, Set<String>> copy = new HashMap<>();
+        for (int doc = 0; doc < docs.size(); doc++) {
+            String[] values = field.get(doc);
+            if (values != null) {
+                copy.put(docs.get(doc).getId(), new HashSet<>(List.of(values)));
+            }
+        }
+        return copy;
+    }
+
+    @Override
+    public int documentCount() {
+        return docIds.size();
+    }
+
+    // The trie keeps every term's live doc count, so this needn't merge postings across segments.
+    @Override
+    public int documentFrequency(String term) {
+        return vocabulary.weight(term);
+    }
+
+    @Override
+    public int tagFrequency(String tag) {
+        Integer count = tagFrequency.get(tag);
+        return count != null ? count : 0;
+    }
+
+    @Override
+    public int fieldLength(SearchField field, int doc) {
+        return fieldStatistics.length(field, doc);
+    }
+
+    @Override
+    public double averageFieldLength(SearchField field) {
+        return fieldStatistics.averageLength(field);
+    }
+
+    @Override
+    public int capacity() {
+        return docs.size();
+    }
+
+    @Override
+    public PostingList postings(String term) {
+        return postings.postings(term);
+    }
+
+    @Override
+    public TermPositions positions(int doc, SearchField field) {
+        return docPositions.get(doc)[field.ordinal()];
+    }
+
+    @Override
+    public List<String> keywordsContaining(String word) {
+        return keywordGrams.find(word);
+    }
+
+    @Override
+    public AttributeIndex attributes() {
+        return attributeIndex;
+    }
+}
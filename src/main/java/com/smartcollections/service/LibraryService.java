@@ -4,13 +4,18 @@ import java.io.Serializable;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -18,28 +23,98 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
+import com.smartcollections.model.Category;
 import com.smartcollections.model.Item;
 import com.smartcollections.model.Memento;
 import com.smartcollections.model.Task;
 
+/**
+ * The library and its search index, safe for many concurrent readers and one
+ * writer at a time. Mutations take the write lock and change a private working
+ * {@link LibraryIndex}; when the outermost write completes, a frozen copy of it
+ * is published through a volatile field. Searches, facets and item listings
+ * read whichever copy is published when they start and never lock. Items
+ * themselves are shared with the published copy, so a reader racing an edit may
+ * see the item's new field values before the index reflects them.
+ * <p>
+ * Keyword postings are kept in immutable segments (see
+ * {@link SegmentedPostings}). Segments are merged on a background thread: the
+ * merge is planned and installed under the write lock, but the work in between
+ * runs without it, so writers and readers are never held up by compaction.
+ */
 public class LibraryService {
     private static final int RECENTLY_VIEWED_LIMIT = 20;
-
-    // ArrayList keeps cache-friendly sequential reads for the table view and avoids pointer chasing vs LinkedList.
-    private final List<Item> items = new ArrayList<>();
+    private static final int DEFAULT_UNDO_DEPTH = 200;
+    private static final long DEFAULT_UNDO_BUDGET_BYTES = 8L << 20;
+    // Detail-pane saves of one item this close together undo as one step.
+    private static final Duration UNDO_COALESCE_WINDOW = Duration.ofSeconds(5);
+    private static final int SEARCH_CACHE_CAPACITY = 64;
+    private static final int FUZZY_MIN_TOKEN_LENGTH = 3;
+    private static final int FUZZY_TWO_EDIT_LENGTH = 6;
+    private static final int FUZZY_EXACT_PREFIX = 1;
+    private static final double FUZZY_EDIT_PENALTY = 0.5;
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 250_000;
+    private static final int DEFAULT_EXPLAIN_LIMIT = 10;
+    // Postings walked between two looks at the clock and the cancellation token; a power of two.
+    private static final int DEADLINE_CHECK_INTERVAL = 4_096;
+    // Resolving one keyword's postings, in postings visited: a fixed part plus a lookup per index segment.
+    private static final int KEYWORD_RESOLVE_COST = 16;
+    private static final int SEGMENT_PROBE_COST = 2;
+    private static final Comparator<ItemScore> RANKING_ORDER = (left, right) -> {
+        int comparison = Double.compare(right.score(), left.score());
+        if (comparison != 0) return comparison;
+        comparison = Integer.compare(right.exactMatches(), left.exactMatches());
+        if (comparison != 0) return comparison;
+        comparison = Integer.compare(right.item().getRating(), left.item().getRating());
+        if (comparison != 0) return comparison;
+        comparison = right.item().getCreatedAt().compareTo(left.item().getCreatedAt());
+        if (comparison != 0) return comparison;
+        // Doc id makes the order total, so sharded and sequential rankings agree on ties.
+        return Integer.compare(left.doc(), right.doc());
+    };
+
+    // Reentrant so a batch can wrap the public mutators; a snapshot is published when the outermost write ends.
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final LibraryIndex working = new LibraryIndex();
+    private volatile LibraryIndex published = working.snapshot();
+    private volatile Ranker ranker = new FrequencyRanker();
+    // Writer state: only touched while holding writeLock.
     private final Map<String, Item> itemsById = new HashMap<>();
-    private final Map<String, Set<String>> keywordIndex = new HashMap<>();
-    private final Map<String, Set<String>> itemKeywords = new HashMap<>();
-    private final Map<String, Set<String>> itemTags = new HashMap<>();
-    private final Map<String, Integer> tagFrequency = new HashMap<>();
     private final Set<String> uniquePaths = new HashSet<>();
-    // ArrayDeque behaves as a stack without the synchronization overhead of java.util.Stack.
-    private final Deque<Memento> undoStack = new ArrayDeque<>();
+    // The writer of the batch running on the lock-holding thread, so its deletes go through the batch.
+    private BatchWriter activeBatch;
+    // Pushed and polled by writers, but synchronized itself so hasUndo() needn't wait for a write.
+    private final UndoHistory undoHistory =
+        new UndoHistory(DEFAULT_UNDO_DEPTH, DEFAULT_UNDO_BUDGET_BYTES, UNDO_COALESCE_WINDOW);
+    // Guards tasks and recently viewed items, so the FX thread never waits behind an index write for them.
+    // Writers may take it while holding writeLock; never the other way round.
+    private final Object stateLock = new Object();
     private final Deque<Item> recentlyViewedStack = new ArrayDeque<>();
     private final PriorityQueue<Task> taskQueue = new PriorityQueue<>();
     private final Map<String, Task> tasksById = new HashMap<>();
+    private final SearchCache searchCache = new SearchCache(SEARCH_CACHE_CAPACITY);
+    private boolean mergeScheduled;
+    private final ExecutorService merger = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "index-merger");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    // Doc id ranges scored concurrently once the index holds parallelThreshold docs.
+    private volatile int searchShards = Runtime.getRuntime().availableProcessors();
+    private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    // One histogram per phase, recorded into by every searching thread; the map itself never changes.
+    private final Map<SearchPhase, LatencyHistogram> phaseLatency = newPhaseHistograms();
 
     public boolean addItem(Item item) {
         return addItemInternal(item, true);
@@ -49,192 +124,1229 @@ public class LibraryService {
         return addItemInternal(item, false);
     }
 
+    /**
+     * Runs {@code writes} as one write batch: other writers wait until it
+     * finishes and readers see none of its changes until all of them are
+     * published together, which also saves copying the index per item.
+     */
+    public void runBatch(Runnable writes) {
+        beginWrite();
+        try {
+            writes.run();
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Runs {@code writes} as one write batch like {@link #runBatch(Runnable)},
+     * with the index work deferred: items given to the {@link BatchWriter} are
+     * indexed together when {@code writes} returns, so postings are merged in
+     * doc order and tag counts move once per tag rather than once per item. The
+     * whole batch becomes a single undo step. Writes made before
+     * {@code writes} throws are still applied. {@link #deleteItem(Item)}
+     * called from within {@code writes} deletes through the batch as well.
+     */
+    public void batch(Consumer<BatchWriter> writes) {
+        Objects.requireNonNull(writes, "writes");
+        beginWrite();
+        BatchWriter enclosing = activeBatch;
+        try {
+            BatchWriter writer = new BatchWriter(true);
+            activeBatch = writer;
+            try {
+                writes.accept(writer);
+            } finally {
+                activeBatch = enclosing;
+                writer.apply();
+            }
+        } finally {
+            endWrite();
+        }
+    }
+
     private boolean addItemInternal(Item item, boolean recordUndo) {
         if (item == null) {
             return false;
         }
-        String normalisedPath = normalisePath(item.getFilePath());
-        if (normalisedPath != null && uniquePaths.contains(normalisedPath)) {
-            return false;
-        }
+        beginWrite();
+        try {
+            String normalisedPath = normalisePath(item.getFilePath());
+            if (normalisedPath != null && uniquePaths.contains(normalisedPath)) {
+                return false;
+            }
 
-        items.add(item);
-        itemsById.put(item.getId(), item);
-        if (normalisedPath != null) {
-            uniquePaths.add(normalisedPath);
-        }
-        indexItem(item);
-        if (recordUndo) {
-            undoStack.push(new Memento(item.copy(), Memento.OperationType.ADD, null));
+            itemsById.put(item.getId(), item);
+            working.add(item);
+            if (normalisedPath != null) {
+                uniquePaths.add(normalisedPath);
+            }
+            if (recordUndo) {
+                undoHistory.push(Memento.added(item));
+            }
+            return true;
+        } finally {
+            endWrite();
         }
-        return true;
     }
 
     public void editItem(Item item, Consumer<Item> editor) {
+        editItem(item, editor, false);
+    }
+
+    /**
+     * Applies {@code editor} to {@code item} and re-indexes it. The undo entry
+     * holds only the fields the edit changed. With {@code coalesce}, an edit
+     * following a coalescing edit of the same item within a few seconds merges
+     * into its undo entry, so repeated saves from one form undo together.
+     */
+    public void editItem(Item item, Consumer<Item> editor, boolean coalesce) {
         if (item == null || editor == null) {
             return;
         }
+        beginWrite();
+        try {
+            Item beforeEdit = item.copy();
 
-        Memento beforeEdit = new Memento(item.copy());
-        undoStack.push(beforeEdit);
-
-        String previousPath = normalisePath(item.getFilePath());
-        if (previousPath != null) {
-            uniquePaths.remove(previousPath);
-        }
-        removeFromIndex(item);
+            String previousPath = normalisePath(item.getFilePath());
+            if (previousPath != null) {
+                uniquePaths.remove(previousPath);
+            }
+            working.removeFromIndex(item);
 
-        editor.accept(item);
+            editor.accept(item);
 
-        String updatedPath = normalisePath(item.getFilePath());
-        if (updatedPath != null && !Objects.equals(updatedPath, previousPath) && uniquePaths.contains(updatedPath)) {
-            item.restoreFromMemento(beforeEdit);
-            indexItem(item);
-            if (previousPath != null) {
-                uniquePaths.add(previousPath);
+            String updatedPath = normalisePath(item.getFilePath());
+            if (updatedPath != null && !Objects.equals(updatedPath, previousPath) && uniquePaths.contains(updatedPath)) {
+                item.restoreFromMemento(new Memento(beforeEdit));
+                working.indexItem(item);
+                if (previousPath != null) {
+                    uniquePaths.add(previousPath);
+                }
+                throw new IllegalArgumentException("An item with this file path already exists.");
             }
-            undoStack.pop();
-            throw new IllegalArgumentException("An item with this file path already exists.");
-        }
 
-        if (updatedPath != null) {
-            uniquePaths.add(updatedPath);
+            if (updatedPath != null) {
+                uniquePaths.add(updatedPath);
+            }
+            working.indexItem(item);
+            undoHistory.push(Memento.edited(beforeEdit, item), coalesce);
+        } finally {
+            endWrite();
         }
-        indexItem(item);
     }
 
     public void deleteItem(Item item) {
         if (item == null) {
             return;
         }
+        beginWrite();
+        try {
+            // Inside a batch the delete joins it, so it is undone with the batch and the index sees it once.
+            if (activeBatch != null) {
+                activeBatch.delete(item);
+                return;
+            }
+            DeletedItemSnapshot snapshot = removeItemInternal(item, true);
+            undoHistory.push(Memento.deleted(snapshot.item(), snapshot));
+        } finally {
+            endWrite();
+        }
+    }
+
+    /** Deletes {@code items} and their tasks in one batch; a single undo brings them all back. */
+    public int deleteItems(Collection<Item> items) {
+        int[] deleted = new int[1];
+        batch(writer -> {
+            for (Item item : items) {
+                if (writer.delete(item)) {
+                    deleted[0]++;
+                }
+            }
+        });
+        return deleted[0];
+    }
+
+    /** Tags each of {@code items} with {@code tag}. Returns how many items gained it. */
+    public int addTag(Collection<Item> items, String tag) {
+        String normalised = normaliseTag(tag);
+        return editTags(items, item -> item.addTag(normalised), "Tagged " + normalised);
+    }
+
+    /** Takes {@code tag} off each of {@code items}. Returns how many items had it. */
+    public int removeTag(Collection<Item> items, String tag) {
+        String normalised = normaliseTag(tag);
+        return editTags(items, item -> item.removeTag(normalised), "Untagged " + normalised);
+    }
+
+    /**
+     * Renames {@code from} to {@code to} on every item carrying it, keeping its
+     * place among each item's tags. An item already tagged {@code to} just loses
+     * {@code from}. The items are found through the tag's bitmap rather than by
+     * visiting the library.
+     */
+    public int renameTag(String from, String to) {
+        String source = normaliseTag(from);
+        String target = normaliseTag(to);
+        if (source.equals(target)) {
+            return 0;
+        }
+        beginWrite();
+        try {
+            return editTags(working.itemsTagged(source), item -> {
+                Set<String> renamed = new LinkedHashSet<>();
+                for (String tag : item.getTags()) {
+                    renamed.add(tag.equals(source) ? target : tag);
+                }
+                item.setTags(renamed);
+            }, "Renamed tag " + source + " to " + target);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /** Moves each of {@code items} into {@code category}. Returns how many items changed. */
+    public int recategorise(Collection<Item> items, Category category) {
+        Objects.requireNonNull(category, "category");
+        beginWrite();
+        try {
+            List<Item> changed = new ArrayList<>();
+            List<Memento> edits = applyEdits(items, item -> item.setCategory(category), changed);
+            if (!changed.isEmpty()) {
+                working.recategorise(changed);
+                undoHistory.push(Memento.batch("Moved to " + category, new BulkEdit(edits)));
+            }
+            return changed.size();
+        } finally {
+            endWrite();
+        }
+    }
+
+    // Applies a tag change to every item, re-indexing only what depends on tags, as one undo step.
+    private int editTags(Collection<Item> items, Consumer<Item> editor, String summary) {
+        beginWrite();
+        try {
+            List<Item> changed = new ArrayList<>();
+            List<Memento> edits = applyEdits(items, editor, changed);
+            if (!changed.isEmpty()) {
+                working.retag(changed);
+                undoHistory.push(Memento.batch(summary, new BulkEdit(edits)));
+            }
+            return changed.size();
+        } finally {
+            endWrite();
+        }
+    }
+
+    // Edits the library's own instances among items and returns a delta memento for each one that changed.
+    private List<Memento> applyEdits(Collection<Item> items, Consumer<Item> editor, List<Item> changed) {
+        List<Memento> edits = new ArrayList<>();
+        for (Item item : items) {
+            if (item == null || itemsById.get(item.getId()) != item) {
+                continue;
+            }
+            Item before = item.copy();
+            editor.accept(item);
+            Memento edit = Memento.edited(before, item);
+            if (edit != null) {
+                edits.add(edit);
+                changed.add(item);
+            }
+        }
+        return edits;
+    }
+
+    private static String normaliseTag(String tag) {
+        String normalised = tag == null ? "" : tag.trim().toLowerCase(Locale.ROOT);
+        if (normalised.isEmpty()) {
+            throw new IllegalArgumentException("Tag must not be blank.");
+        }
+        return normalised;
+    }
+
+    private void beginWrite() {
+        writeLock.lock();
+    }
+
+    // Publishes a frozen copy once the outermost write is done, if anything changed.
+    private void endWrite() {
+        try {
+            if (writeLock.getHoldCount() == 1 && working.generation() != published.generation()) {
+                published = working.snapshot();
+                if (!mergeScheduled && working.mergeDue()) {
+                    mergeScheduled = true;
+                    merger.execute(this::mergeSegments);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-        DeletedItemSnapshot snapshot = removeItemInternal(item, true);
-        undoStack.push(new Memento(snapshot.item(), Memento.OperationType.DELETE, snapshot));
+    // Runs merges until none is due. Only planning and installing hold the write lock.
+    private void mergeSegments() {
+        while (true) {
+            SegmentedPostings.Merge merge;
+            writeLock.lock();
+            try {
+                merge = working.planMerge();
+                if (merge == null) {
+                    mergeScheduled = false;
+                    return;
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            merge.run();
+            writeLock.lock();
+            try {
+                // Results are unchanged, so the generation and the search cache stay; only the segments move.
+                if (working.commitMerge(merge)) {
+                    published = working.withPostingsOf(published);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
     }
 
     public List<Item> search(String query) {
-        if (query == null || query.isBlank()) {
-            return sortedItemsByTitle();
+        PhaseTimer timer = new PhaseTimer();
+        SearchCache.Entry ranked =
+            rankedWindow(normaliseQuery(query), false, Integer.MAX_VALUE, timer, SearchDeadline.NONE);
+        timer.restart();
+        List<Item> results = new ArrayList<>(ranked.ranked());
+        timer.lap(SearchPhase.MATERIALISATION);
+        recordPhases(timer);
+        return results;
+    }
+
+    /**
+     * Returns one page of ranked results. Only the best {@code offset + limit}
+     * hits are kept in a bounded heap, so broad queries no longer sort and
+     * materialise every match just to fill one screen of rows.
+     */
+    public SearchPage search(String query, int offset, int limit) {
+        return search(SearchRequest.of(query).page(offset, limit));
+    }
+
+    /**
+     * Evaluates {@code request}. With a time budget or cancellation token the
+     * search may stop early; it then ranks what it had scored and returns that
+     * as an {@link SearchPage#incomplete() incomplete} page, which is never
+     * cached. Query clauses are always evaluated in full, since skipping one
+     * would admit docs it excludes, so partial results are still true hits.
+     */
+    public SearchPage search(SearchRequest request) {
+        PhaseTimer timer = new PhaseTimer();
+        SearchDeadline deadline = SearchDeadline.of(request);
+        SearchCache.Entry ranked =
+            rankedWindow(normaliseQuery(request.query()), request.fuzzy(), request.window(), timer, deadline);
+        recordPhases(timer);
+        return toPage(ranked, request, deadline.stopped());
+    }
+
+    SearchPage toPage(SearchCache.Entry ranked, SearchRequest request, boolean incomplete) {
+        PhaseTimer timer = new PhaseTimer();
+        SearchPage page = new SearchPage(page(ranked.ranked(), request.offset(), request.window()),
+            ranked.totalHits(), request.offset(), request.limit(), incomplete);
+        timer.lap(SearchPhase.MATERIALISATION);
+        recordPhases(timer);
+        return page;
+    }
+
+    private SearchCache.Entry rankedWindow(String normalised, boolean fuzzy, int window, PhaseTimer timer,
+                                           SearchDeadline deadline) {
+        LibraryIndex index = published;
+        SearchCache.Key key = new SearchCache.Key(normalised, fuzzy);
+        SearchCache.Entry cached = searchCache.get(key, index.generation(), window);
+        if (cached != null) {
+            return cached;
+        }
+
+        if (normalised.isEmpty()) {
+            timer.restart();
+            List<Item> byTitle = index.itemsByTitle(window);
+            timer.lap(SearchPhase.MATERIALISATION);
+            return searchCache.put(key, index.generation(), byTitle, index.itemCount());
         }
+        return rankMatches(matchQuery(index, normalised, null, fuzzy, timer, deadline), window, timer, deadline);
+    }
 
-        String trimmed = query.trim().toLowerCase(Locale.ROOT);
-        String[] tokens = trimmed.split("\\s+");
+    /**
+     * {@code items}, e.g. a page of search results, in the order the empty
+     * query lists the library. The index keeps that order up to date, so this
+     * walks or looks up precomputed collation keys instead of comparing titles.
+     */
+    public List<Item> sortByTitle(Collection<Item> items) {
+        return published.sortByTitle(items);
+    }
+
+    /**
+     * Category, tag and file type counts for everything {@code query} matches,
+     * e.g. to show how many results each filter value would leave.
+     */
+    public SearchFacets facets(String query) {
+        return facets(SearchRequest.of(query));
+    }
 
-        Map<String, ScoreAccumulator> accumulators = new HashMap<>();
-        for (String token : tokens) {
-            if (token.isBlank()) {
+    /**
+     * Facet counts for {@code request}, cached like rankings by query and
+     * index generation. A time budget or cancellation token stops the count
+     * early; such counts are {@link SearchFacets#incomplete() incomplete} and
+     * never cached.
+     */
+    public SearchFacets facets(SearchRequest request) {
+        LibraryIndex index = published;
+        String normalised = normaliseQuery(request.query());
+        SearchCache.Key key = new SearchCache.Key(normalised, request.fuzzy());
+        SearchFacets cached = searchCache.getFacets(key, index.generation());
+        if (cached != null) {
+            return cached;
+        }
+        SearchFacets counts;
+        if (normalised.isEmpty()) {
+            counts = index.attributes().facets(index.attributes().live());
+        } else {
+            PhaseTimer timer = new PhaseTimer();
+            SearchDeadline deadline = SearchDeadline.of(request);
+            List<ScoreBoard> boards =
+                scoreMatches(matchQuery(index, normalised, null, request.fuzzy(), timer, deadline), timer, deadline);
+            DocBitmap results;
+            try {
+                results = hitBitmap(boards, index);
+            } finally {
+                release(boards);
+            }
+            recordPhases(timer);
+            counts = index.attributes().facets(results);
+            if (deadline.stopped()) {
+                return counts.asIncomplete();
+            }
+        }
+        searchCache.putFacets(key, index.generation(), counts);
+        return counts;
+    }
+
+    /**
+     * Evaluates {@code query} in full, bypassing the result cache, and reports
+     * how: candidates and postings per token, time per phase and the score
+     * breakdown of the first {@value #DEFAULT_EXPLAIN_LIMIT} results, along with
+     * the plan the query was matched with.
+     */
+    public SearchExplanation explain(String query) {
+        return explain(SearchRequest.of(query).page(0, DEFAULT_EXPLAIN_LIMIT));
+    }
+
+    /**
+     * Like {@link #explain(String)} for one page of {@code request}. The work
+     * explained is the work a search does, but explaining it does not feed the
+     * latency histograms, so profiling a query leaves them about real searches.
+     */
+    public SearchExplanation explain(SearchRequest request) {
+        LibraryIndex index = published;
+        String normalised = normaliseQuery(request.query());
+        PhaseTimer timer = new PhaseTimer();
+        if (normalised.isEmpty()) {
+            List<Item> byTitle = index.itemsByTitle(request.window());
+            timer.lap(SearchPhase.MATERIALISATION);
+            List<SearchExplanation.ItemExplanation> items = new ArrayList<>();
+            for (Item item : page(byTitle, request.offset(), request.window())) {
+                items.add(new SearchExplanation.ItemExplanation(item, 0, false, 0, Map.of()));
+            }
+            return new SearchExplanation(normalised, null, List.of(), 0, 0, index.itemCount(), phaseNanos(timer),
+                items);
+        }
+
+        QueryMatches matches = matchQuery(index, normalised, null, request.fuzzy(), timer, SearchDeadline.NONE);
+        List<ScoreBoard> boards = scoreMatches(matches, timer, SearchDeadline.NONE);
+        try {
+            return explain(request, matches, boards, timer);
+        } finally {
+            release(boards);
+        }
+    }
+
+    private SearchExplanation explain(SearchRequest request, QueryMatches matches, List<ScoreBoard> boards,
+                                      PhaseTimer timer) {
+        LibraryIndex index = matches.index();
+        String normalised = matches.normalised();
+        List<ItemScore> ranked = rankScores(boards, index, request.window(), timer);
+        timer.restart();
+        List<ItemScore> returned = ranked.subList(Math.min(request.offset(), ranked.size()), ranked.size());
+        List<Item> pageItems = new ArrayList<>(returned.size());
+        returned.forEach(score -> pageItems.add(score.item()));
+        timer.lap(SearchPhase.MATERIALISATION);
+
+        // Counted from the vocabulary's doc counts, outside the timed phases.
+        List<SearchExplanation.TokenCandidates> tokens = new ArrayList<>();
+        boolean scan = matches.plan().strategy() == QueryPlan.Strategy.SCAN;
+        long postingsTouched = scan ? index.totalPostings() : 0;
+        for (int i = 0; i < matches.tokens().length; i++) {
+            long substringPostings = 0;
+            for (String keyword : matches.keywords().get(i)) {
+                substringPostings += index.documentFrequency(keyword);
+            }
+            long fuzzyPostings = 0;
+            for (FuzzyMatch match : matches.fuzzyKeywords().get(i)) {
+                fuzzyPostings += index.documentFrequency(match.keyword());
+            }
+            tokens.add(new SearchExplanation.TokenCandidates(matches.tokens()[i], matches.keywords().get(i).size(),
+                matches.fuzzyKeywords().get(i).size(), substringPostings + fuzzyPostings));
+            postingsTouched += (scan ? 0 : substringPostings) + fuzzyPostings;
+        }
+        for (String term : matches.clauseTerms()) {
+            long termPostings = index.documentFrequency(term);
+            tokens.add(new SearchExplanation.TokenCandidates(term, termPostings > 0 ? 1 : 0, 0, termPostings));
+            postingsTouched += termPostings;
+        }
+
+        List<SearchExplanation.ItemExplanation> items = new ArrayList<>(returned.size());
+        for (ItemScore score : returned) {
+            ScoreBoard board = boardFor(boards, score.doc());
+            items.add(new SearchExplanation.ItemExplanation(score.item(), score.score(),
+                board.titleMatch(score.doc()), score.exactMatches(), termScores(matches, board.scorer(), score.doc())));
+        }
+        return new SearchExplanation(normalised, matches.plan(), tokens, matches.titleDocs().size(), postingsTouched,
+            hitCount(boards), phaseNanos(timer), items);
+    }
+
+    /**
+     * What each query term added to {@code doc}'s score, read off the doc's own
+     * terms rather than the postings, with the weights scoring gave them.
+     */
+    private static Map<String, Double> termScores(QueryMatches matches, Ranker.Scorer scorer, int doc) {
+        LibraryIndex index = matches.index();
+        Map<String, Double> scores = new LinkedHashMap<>();
+        String[] terms = index.docTerms(doc);
+        if (terms == null) {
+            return scores;
+        }
+        byte[] fields = index.docTermFields(doc);
+        for (int j = 0; j < terms.length; j++) {
+            String term = terms[j];
+            int documentFrequency = index.documentFrequency(term);
+            for (int i = 0; i < matches.tokens().length; i++) {
+                String token = matches.tokens()[i];
+                if (term.contains(token)) {
+                    double termWeight = scorer.termWeight(term, documentFrequency, term.equals(token));
+                    scores.merge(term, scorer.score(termWeight, doc, fields[j]), Double::sum);
+                }
+                for (FuzzyMatch match : matches.fuzzyKeywords().get(i)) {
+                    if (match.keyword().equals(term)) {
+                        double termWeight = fuzzyWeight(scorer, match, documentFrequency);
+                        scores.merge(term, scorer.score(termWeight, doc, fields[j]), Double::sum);
+                    }
+                }
+            }
+            for (String clauseTerm : matches.clauseTerms()) {
+                if (clauseTerm.equals(term)) {
+                    double termWeight = scorer.termWeight(term, documentFrequency, true);
+                    scores.merge(term, scorer.score(termWeight, doc, fields[j]), Double::sum);
+                }
+            }
+        }
+        return scores;
+    }
+
+    private static ScoreBoard boardFor(List<ScoreBoard> boards, int doc) {
+        for (ScoreBoard board : boards) {
+            if (doc >= board.from() && doc < board.to()) {
+                return board;
+            }
+        }
+        throw new IllegalStateException("No shard holds doc " + doc);
+    }
+
+    private static Map<SearchPhase, Long> phaseNanos(PhaseTimer timer) {
+        Map<SearchPhase, Long> nanos = new EnumMap<>(SearchPhase.class);
+        for (SearchPhase phase : SearchPhase.values()) {
+            if (timer.ran(phase)) {
+                nanos.put(phase, timer.nanos(phase));
+            }
+        }
+        return nanos;
+    }
+
+    /**
+     * Latencies of {@code phase} over every search, facet count and
+     * search-as-you-type refinement since the last {@link #resetLatency()}.
+     * Only phases a search actually ran are recorded, so a cached search adds
+     * nothing but its materialisation.
+     */
+    public LatencyHistogram latency(SearchPhase phase) {
+        return phaseLatency.get(phase);
+    }
+
+    public void resetLatency() {
+        phaseLatency.values().forEach(LatencyHistogram::reset);
+    }
+
+    private void recordPhases(PhaseTimer timer) {
+        for (SearchPhase phase : SearchPhase.values()) {
+            if (timer.ran(phase)) {
+                phaseLatency.get(phase).record(timer.nanos(phase));
+            }
+        }
+    }
+
+    private static Map<SearchPhase, LatencyHistogram> newPhaseHistograms() {
+        Map<SearchPhase, LatencyHistogram> histograms = new EnumMap<>(SearchPhase.class);
+        for (SearchPhase phase : SearchPhase.values()) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+        return histograms;
+    }
+
+    static String normaliseQuery(String query) {
+        return QueryParser.normalise(query);
+    }
+
+    /**
+     * Opens a search-as-you-type session that narrows the previous query's
+     * candidates when the next query only extends its tokens.
+     */
+    public SearchSession openSearchSession() {
+        return new SearchSession(this);
+    }
+
+    public Ranker getRanker() {
+        return ranker;
+    }
+
+    /**
+     * Replaces the ranking function, e.g. with a {@link Bm25fRanker}. Cached
+     * rankings were computed by the previous ranker, so the generation moves on.
+     */
+    public void setRanker(Ranker ranker) {
+        Objects.requireNonNull(ranker, "ranker");
+        beginWrite();
+        try {
+            // Set before the new generation is published, so a reader of that generation sees this ranker.
+            this.ranker = ranker;
+            working.invalidate();
+        } finally {
+            endWrite();
+        }
+    }
+
+    public Analyzer getAnalyzer(SearchField field) {
+        return published.analyzer(field);
+    }
+
+    /**
+     * Changes how one field's text is turned into terms and re-indexes every
+     * item with it; the title's analyzer also shapes queries. Tags are matched
+     * as whole values and have no analyzer. A new content analyzer drops the
+     * extracted text, which is read again the next time the content indexer
+     * visits each file.
+     */
+    public void setAnalyzer(SearchField field, Analyzer analyzer) {
+        Objects.requireNonNull(analyzer, "analyzer");
+        if (field == SearchField.TAGS) {
+            throw new IllegalArgumentException("Tags are matched as whole values and are not analysed.");
+        }
+        beginWrite();
+        try {
+            working.setAnalyzer(field, analyzer);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Splits scoring into {@code shards} contiguous doc id ranges run on the
+     * common {@link ForkJoinPool} once the index holds at least
+     * {@code minDocuments} docs. Smaller libraries stay on the calling thread,
+     * where forking costs more than it saves. Rankings are identical either way.
+     */
+    public void setParallelSearch(int shards, int minDocuments) {
+        if (shards < 1 || minDocuments < 0) {
+            throw new IllegalArgumentException("Shard count must be >= 1 and the threshold must not be negative.");
+        }
+        this.searchShards = shards;
+        this.parallelThreshold = minDocuments;
+    }
+
+    /** The index copy readers currently see. */
+    LibraryIndex index() {
+        return published;
+    }
+
+    SearchCache.Entry cachedRanking(LibraryIndex index, String normalised, boolean fuzzy, int window) {
+        return searchCache.get(new SearchCache.Key(normalised, fuzzy), index.generation(), window);
+    }
+
+    SearchCache.Entry rankMatches(QueryMatches matches, int window, SearchDeadline deadline) {
+        PhaseTimer timer = new PhaseTimer();
+        SearchCache.Entry ranked = rankMatches(matches, window, timer, deadline);
+        recordPhases(timer);
+        return ranked;
+    }
+
+    // A ranking cut short by its deadline is handed back but kept out of the cache.
+    private SearchCache.Entry rankMatches(QueryMatches matches, int window, PhaseTimer timer,
+                                          SearchDeadline deadline) {
+        List<ScoreBoard> boards = scoreMatches(matches, timer, deadline);
+        List<Item> ranked;
+        int hits;
+        try {
+            ranked = rankTop(boards, matches.index(), window, timer);
+            hits = hitCount(boards);
+        } finally {
+            release(boards);
+        }
+        long generation = matches.index().generation();
+        if (deadline.stopped()) {
+            return new SearchCache.Entry(generation, List.copyOf(ranked), hits);
+        }
+        SearchCache.Key key = new SearchCache.Key(matches.normalised(), matches.fuzzy());
+        return searchCache.put(key, generation, ranked, hits);
+    }
+
+    /**
+     * Resolves each free-text token to the keywords containing it and the free
+     * text to the titles containing it. When {@code previous} was resolved against
+     * the same {@code index}, a token that contains the previous token at the
+     * same position can only match a subset of its keywords, so those are
+     * filtered instead of looked up again; the same holds for the title matches.
+     * With {@code fuzzy}, vocabulary terms within one or two edits of a token
+     * that it did not already match as a substring are collected separately.
+     * Phrase, proximity, field and boolean clauses are evaluated into a filter
+     * of admitted docs before anything is scored. Once {@code deadline}
+     * expires, the remaining tokens and the title text resolve to nothing;
+     * the clauses are still evaluated. A cancelled search also stops part way
+     * through the vocabulary and title scans, the first token's included.
+     */
+    QueryMatches matchQuery(LibraryIndex index, String normalised, QueryMatches previous, boolean fuzzy,
+                            SearchDeadline deadline) {
+        PhaseTimer timer = new PhaseTimer();
+        QueryMatches matches = matchQuery(index, normalised, previous, fuzzy, timer, deadline);
+        recordPhases(timer);
+        return matches;
+    }
+
+    private QueryMatches matchQuery(LibraryIndex index, String normalised, QueryMatches previous, boolean fuzzy,
+                                    PhaseTimer timer, SearchDeadline deadline) {
+        timer.restart();
+        QueryParser.ParsedQuery parsed = QueryParser.parse(normalised, index.analyzer(SearchField.TITLE));
+        timer.lap(SearchPhase.TOKENISE);
+        String[] tokens = parsed.tokens();
+        List<List<String>> keywords = new ArrayList<>(tokens.length);
+        List<List<FuzzyMatch>> fuzzyKeywords = new ArrayList<>(tokens.length);
+        for (int i = 0; i < tokens.length; i++) {
+            String token = tokens[i];
+            // The first token is always resolved, so an expired search still has something to rank.
+            if (i > 0 && deadline.expired()) {
+                keywords.add(List.of());
+                fuzzyKeywords.add(List.of());
                 continue;
             }
-            for (Map.Entry<String, Set<String>> entry : keywordIndex.entrySet()) {
-                String keyword = entry.getKey();
-                if (!keyword.contains(token)) {
-                    continue;
+            if (previous != null && i < previous.tokens().length && token.contains(previous.tokens()[i])) {
+                List<String> narrowed = new ArrayList<>();
+                for (String keyword : previous.keywords().get(i)) {
+                    if (keyword.contains(token)) {
+                        narrowed.add(keyword);
+                    }
                 }
-                boolean exact = keyword.equals(token);
-                double frequencyWeight = tagFrequency.getOrDefault(keyword, entry.getValue().size());
-                if (exact) {
-                    frequencyWeight *= 1.5;
+                keywords.add(narrowed);
+            } else {
+                keywords.add(index.keywordsContaining(token, deadline::cancelled));
+            }
+            fuzzyKeywords.add(fuzzy ? fuzzyMatches(index, token, keywords.get(i), deadline) : List.of());
+        }
+
+        String titleText = titleText(parsed);
+        List<Integer> titleDocs;
+        if (deadline.expired()) {
+            titleDocs = List.of();
+        } else if (previous != null && !previous.titleText().isEmpty() && titleText.contains(previous.titleText())) {
+            titleDocs = new ArrayList<>();
+            for (int doc : previous.titleDocs()) {
+                if (index.titleOf(doc).contains(titleText)) {
+                    titleDocs.add(doc);
+                }
+            }
+        } else {
+            titleDocs = index.titlesContaining(titleText, deadline::cancelled);
+        }
+
+        DocBitmap filter = null;
+        List<String> clauseTerms = new ArrayList<>();
+        for (QueryClause clause : parsed.clauses()) {
+            DocBitmap matches = clause.matches(index);
+            filter = filter == null ? matches : filter.and(matches);
+            clauseTerms.addAll(clause.terms());
+        }
+        QueryPlan plan = plan(index, tokens, keywords);
+        timer.lap(SearchPhase.CANDIDATE_LOOKUP);
+        return new QueryMatches(index, normalised, tokens, keywords, fuzzyKeywords, titleText, titleDocs,
+            clauseTerms, filter, fuzzy, plan);
+    }
+
+    /**
+     * Weighs walking the postings of every candidate keyword against walking
+     * every doc's terms once per token. The first grows with how much of the
+     * vocabulary the tokens reach, the second only with the size of the
+     * library, so broad one- and two-letter tokens scan and selective ones
+     * use the index. Resolving a keyword looks it up in every index segment,
+     * so a library with many unmerged segments tips towards scanning sooner.
+     * Doc counts come from the vocabulary, not the postings.
+     */
+    private static QueryPlan plan(LibraryIndex index, String[] tokens, List<List<String>> keywords) {
+        int candidates = 0;
+        long candidatePostings = 0;
+        for (List<String> tokenKeywords : keywords) {
+            candidates += tokenKeywords.size();
+            for (String keyword : tokenKeywords) {
+                candidatePostings += index.documentFrequency(keyword);
+            }
+        }
+        int segments = index.segmentCount();
+        long resolveCost = KEYWORD_RESOLVE_COST + (long) SEGMENT_PROBE_COST * segments;
+        long indexCost = candidatePostings + candidates * resolveCost;
+        long scanCost = tokens.length == 0
+            ? Long.MAX_VALUE
+            : index.totalPostings() * tokens.length + index.documentCount();
+        QueryPlan.Strategy strategy = scanCost < indexCost ? QueryPlan.Strategy.SCAN : QueryPlan.Strategy.INDEX;
+        List<Long> histogram = new ArrayList<>();
+        for (long terms : index.postingsLengthHistogram()) {
+            histogram.add(terms);
+        }
+        return new QueryPlan(strategy, indexCost, scanCost, candidates, candidatePostings, index.documentCount(),
+            index.vocabularySize(), index.totalPostings(), segments, histogram);
+    }
+
+    // A query that is only a phrase still rewards titles containing that phrase.
+    private static String titleText(QueryParser.ParsedQuery parsed) {
+        if (parsed.freeText().isEmpty()) {
+            for (QueryClause clause : parsed.clauses()) {
+                if (clause instanceof PhraseClause phrase) {
+                    return phrase.text();
                 }
-                for (String itemId : entry.getValue()) {
-                    Item item = itemsById.get(itemId);
-                    if (item == null) {
+            }
+        }
+        return parsed.freeText();
+    }
+
+    private static List<FuzzyMatch> fuzzyMatches(LibraryIndex index, String token, List<String> substringMatches,
+                                                 SearchDeadline deadline) {
+        if (token.length() < FUZZY_MIN_TOKEN_LENGTH) {
+            return List.of();
+        }
+        int maxEdits = token.length() >= FUZZY_TWO_EDIT_LENGTH ? 2 : 1;
+        Set<String> alreadyMatched = new HashSet<>(substringMatches);
+        List<FuzzyMatch> matches = new ArrayList<>();
+        index.fuzzy(token, maxEdits, FUZZY_EXACT_PREFIX, deadline::cancelled, (term, distance) -> {
+            if (distance > 0 && !alreadyMatched.contains(term)) {
+                matches.add(new FuzzyMatch(term, distance));
+            }
+        });
+        return matches;
+    }
+
+    /**
+     * Scores every admitted doc the query touches. Each shard owns a contiguous
+     * doc id range and walks only its slice of every posting list, so shards
+     * share no mutable state and each doc's postings are summed in the same
+     * order as on the sequential path.
+     */
+    private List<ScoreBoard> scoreMatches(QueryMatches matches, PhaseTimer timer, SearchDeadline deadline) {
+        timer.restart();
+        LibraryIndex index = matches.index();
+        Ranker.Scorer scorer = ranker.prepare(index);
+        int capacity = index.capacity();
+        int shards = capacity >= parallelThreshold ? Math.min(searchShards, Math.max(1, capacity)) : 1;
+        int shardSize = (capacity + shards - 1) / shards;
+        boolean scan = matches.plan().strategy() == QueryPlan.Strategy.SCAN;
+        Map<String, PostingList> postings = resolvePostings(matches, !scan, deadline);
+        List<ScoreBoard> boards = forEachShard(shards, shard -> {
+            int from = shard * shardSize;
+            return scoreShard(matches, postings, scorer, from, Math.min(capacity, from + shardSize), deadline);
+        });
+        timer.lap(SearchPhase.SCORING);
+        return boards;
+    }
+
+    /**
+     * Live postings combine every index segment, so each term is resolved once
+     * per query, not once per shard. Past the deadline, terms stop being
+     * resolved as soon as one has postings, so there is always something to rank.
+     * A scan plan finds substring matches without postings, so leaves them out.
+     */
+    private static Map<String, PostingList> resolvePostings(QueryMatches matches, boolean substringKeywords,
+                                                            SearchDeadline deadline) {
+        LibraryIndex index = matches.index();
+        List<String> terms = new ArrayList<>();
+        if (substringKeywords) {
+            matches.keywords().forEach(terms::addAll);
+        }
+        matches.fuzzyKeywords().forEach(fuzzy -> fuzzy.forEach(match -> terms.add(match.keyword())));
+        terms.addAll(matches.clauseTerms());
+        Map<String, PostingList> postings = new HashMap<>();
+        boolean found = false;
+        for (String term : terms) {
+            if (found && deadline.expired()) {
+                break;
+            }
+            if (!postings.containsKey(term)) {
+                PostingList list = index.postings(term);
+                postings.put(term, list);
+                found |= list != null;
+            }
+        }
+        return postings;
+    }
+
+    private static ScoreBoard scoreShard(QueryMatches matches, Map<String, PostingList> termPostings,
+                                         Ranker.Scorer scorer, int from, int to, SearchDeadline deadline) {
+        ScoreBoard board = new ScoreBoard(from, to, scorer, matches.filter());
+        boolean scan = matches.plan().strategy() == QueryPlan.Strategy.SCAN;
+        if (scan) {
+            scanTerms(board, matches, scorer, deadline);
+        }
+        forEachScoredTerm(matches, termPostings, scorer, !scan, deadline,
+            (term, postings, termWeight, exact) -> scorePostings(board, postings, termWeight, exact, deadline));
+
+        for (int doc : matches.titleDocs()) {
+            if (doc >= from && doc < to) {
+                board.markTitleMatch(doc);
+            }
+        }
+
+        // A purely structured query ("tag:exam rating>=4") returns everything its filter admits.
+        DocBitmap filter = matches.filter();
+        if (matches.tokens().length == 0 && filter != null) {
+            for (int doc = filter.nextSetBit(from); doc >= 0 && doc < to; doc = filter.nextSetBit(doc + 1)) {
+                board.admit(doc);
+            }
+        }
+        return board;
+    }
+
+    /**
+     * The scan plan's substring matching: every term of every doc in the board's
+     * range is tested against each token, and matches score exactly as their
+     * postings would. Term weights are computed once per keyword per shard.
+     */
+    private static void scanTerms(ScoreBoard board, QueryMatches matches, Ranker.Scorer scorer,
+                                  SearchDeadline deadline) {
+        LibraryIndex index = matches.index();
+        String[] tokens = matches.tokens();
+        Map<String, Double> weights = new HashMap<>();
+        for (int doc = board.from(); doc < board.to(); doc++) {
+            if (((doc - board.from() + 1) & (DEADLINE_CHECK_INTERVAL - 1)) == 0 && deadline.expired()) {
+                return;
+            }
+            String[] terms = index.docTerms(doc);
+            if (terms == null) {
+                continue;
+            }
+            byte[] fields = index.docTermFields(doc);
+            for (int j = 0; j < terms.length; j++) {
+                String term = terms[j];
+                for (String token : tokens) {
+                    if (!term.contains(token)) {
                         continue;
                     }
-                    accumulators
-                        .computeIfAbsent(itemId, k -> new ScoreAccumulator())
-                        .boostFrequency(frequencyWeight, exact);
+                    boolean exact = term.equals(token);
+                    double termWeight = exact
+                        ? scorer.termWeight(term, index.documentFrequency(term), true)
+                        : weights.computeIfAbsent(term,
+                            keyword -> scorer.termWeight(keyword, index.documentFrequency(keyword), false));
+                    board.boost(doc, fields[j], termWeight, exact);
                 }
             }
         }
+    }
 
-        for (Item item : items) {
-            String lowerTitle = item.getTitle() != null ? item.getTitle().toLowerCase(Locale.ROOT) : "";
-            if (lowerTitle.contains(trimmed)) {
-                accumulators
-                    .computeIfAbsent(item.getId(), k -> new ScoreAccumulator())
-                    .boostTitle();
-            }
-        }
-
-        Comparator<ItemScore> rankingComparator = (left, right) -> {
-            int comparison = Double.compare(right.score(), left.score());
-            if (comparison != 0) return comparison;
-            comparison = Integer.compare(right.exactMatches(), left.exactMatches());
-            if (comparison != 0) return comparison;
-            comparison = Integer.compare(right.item().getRating(), left.item().getRating());
-            if (comparison != 0) return comparison;
-            return right.item().getCreatedAt().compareTo(left.item().getCreatedAt());
-        };
+    /**
+     * Hands every keyword the query scores to {@code visitor} with its live
+     * postings and its weight: substring matches of each token unless
+     * {@code substringKeywords} is off, its typo matches, then the terms of
+     * phrase and proximity clauses. Once {@code deadline} expires it stops
+     * handing out terms, though never before the first one with postings.
+     */
+    private static void forEachScoredTerm(QueryMatches matches, Map<String, PostingList> termPostings,
+                                          Ranker.Scorer scorer, boolean substringKeywords, SearchDeadline deadline,
+                                          ScoredTermVisitor visitor) {
+        boolean visited = false;
+        for (int i = 0; i < matches.tokens().length; i++) {
+            String token = matches.tokens()[i];
+            for (String keyword : substringKeywords ? matches.keywords().get(i) : List.<String>of()) {
+                if (visited && deadline.expired()) {
+                    return;
+                }
+                PostingList postings = termPostings.get(keyword);
+                if (postings == null) {
+                    continue;
+                }
+                boolean exact = keyword.equals(token);
+                visitor.visit(keyword, postings, scorer.termWeight(keyword, postings.size(), exact), exact);
+                visited = true;
+            }
+            for (FuzzyMatch match : matches.fuzzyKeywords().get(i)) {
+                if (visited && deadline.expired()) {
+                    return;
+                }
+                PostingList postings = termPostings.get(match.keyword());
+                if (postings == null) {
+                    continue;
+                }
+                visitor.visit(match.keyword(), postings, fuzzyWeight(scorer, match, postings.size()), false);
+                visited = true;
+            }
+        }
 
-        PriorityQueue<ItemScore> ranked = new PriorityQueue<>(rankingComparator);
+        // Terms named by phrase and proximity clauses rank like exact query tokens.
+        for (String term : matches.clauseTerms()) {
+            if (visited && deadline.expired()) {
+                return;
+            }
+            PostingList postings = termPostings.get(term);
+            if (postings == null) {
+                continue;
+            }
+            visitor.visit(term, postings, scorer.termWeight(term, postings.size(), true), true);
+            visited = true;
+        }
+    }
 
-        accumulators.forEach((itemId, accumulator) -> {
-            Item item = itemsById.get(itemId);
-            if (item != null) {
-                ranked.offer(accumulator.toScore(item));
+    // Each edit halves the weight, keeping typo matches below exact and substring hits.
+    private static double fuzzyWeight(Ranker.Scorer scorer, FuzzyMatch match, int documentFrequency) {
+        return scorer.termWeight(match.keyword(), documentFrequency, false)
+            * Math.pow(FUZZY_EDIT_PENALTY, match.distance());
+    }
+
+    private static void scorePostings(ScoreBoard board, PostingList postings, double termWeight, boolean exact,
+                                      SearchDeadline deadline) {
+        int start = postings.lowerBound(board.from());
+        for (int j = start; j < postings.size(); j++) {
+            int doc = postings.docAt(j);
+            if (doc >= board.to()) {
+                break;
             }
-        });
+            if (((j - start + 1) & (DEADLINE_CHECK_INTERVAL - 1)) == 0 && deadline.expired()) {
+                break;
+            }
+            board.boost(doc, postings.fieldsAt(j), termWeight, exact);
+        }
+    }
 
-        List<Item> results = new ArrayList<>(ranked.size());
-        while (!ranked.isEmpty()) {
-            results.add(ranked.poll().item());
+    /**
+     * Each shard keeps its own bounded heap of the best {@code limit} hits; the
+     * heaps are then merged under the same total order, which yields exactly the
+     * ranking a single heap over every hit would.
+     */
+    private List<Item> rankTop(List<ScoreBoard> boards, LibraryIndex index, int limit, PhaseTimer timer) {
+        List<ItemScore> scores = rankScores(boards, index, limit, timer);
+        timer.restart();
+        List<Item> results = new ArrayList<>(scores.size());
+        for (ItemScore score : scores) {
+            results.add(score.item());
         }
+        timer.lap(SearchPhase.MATERIALISATION);
+        return results;
+    }
 
+    private List<ItemScore> rankScores(List<ScoreBoard> boards, LibraryIndex index, int limit, PhaseTimer timer) {
+        timer.restart();
+        List<List<ItemScore>> shardTops =
+            forEachShard(boards.size(), shard -> shardTop(boards.get(shard), index, limit));
+        List<ItemScore> scores;
+        if (shardTops.size() == 1) {
+            scores = shardTops.get(0);
+        } else {
+            List<ItemScore> candidates = new ArrayList<>();
+            shardTops.forEach(candidates::addAll);
+            scores = boundedTop(candidates, RANKING_ORDER, limit);
+        }
+        timer.lap(SearchPhase.RANKING);
+        return scores;
+    }
+
+    private static List<ItemScore> shardTop(ScoreBoard board, LibraryIndex index, int limit) {
+        PriorityQueue<ItemScore> worstFirst = new PriorityQueue<>(RANKING_ORDER.reversed());
+        for (int i = 0; i < board.hitCount(); i++) {
+            int doc = board.hitAt(i);
+            Item item = index.item(doc);
+            if (item != null) {
+                offerBounded(worstFirst, board.toScore(doc, item), RANKING_ORDER, limit);
+            }
+        }
+        List<ItemScore> best = new ArrayList<>(worstFirst.size());
+        while (!worstFirst.isEmpty()) {
+            best.add(worstFirst.poll());
+        }
+        Collections.reverse(best);
+        return best;
+    }
+
+    // Runs one task per shard on the common pool and returns the results in shard order.
+    private static <T> List<T> forEachShard(int shards, IntFunction<T> work) {
+        if (shards == 1) {
+            return List.of(work.apply(0));
+        }
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            int current = shard;
+            tasks.add(ForkJoinPool.commonPool().submit(() -> work.apply(current)));
+        }
+        List<T> results = new ArrayList<>(shards);
+        for (ForkJoinTask<T> task : tasks) {
+            results.add(task.join());
+        }
         return results;
     }
 
+    private static int hitCount(List<ScoreBoard> boards) {
+        int hits = 0;
+        for (ScoreBoard board : boards) {
+            hits += board.hitCount();
+        }
+        return hits;
+    }
+
+    // Boards are consumed on the caller's thread after the shards finish, so they go back only once it is done.
+    private static void release(List<ScoreBoard> boards) {
+        for (ScoreBoard board : boards) {
+            board.release();
+        }
+    }
+
+    private static DocBitmap hitBitmap(List<ScoreBoard> boards, LibraryIndex index) {
+        DocBitmap bitmap = new DocBitmap(index.capacity());
+        for (ScoreBoard board : boards) {
+            for (int i = 0; i < board.hitCount(); i++) {
+                bitmap.set(board.hitAt(i));
+            }
+        }
+        return bitmap;
+    }
+
+    private static <T> List<T> boundedTop(Iterable<T> source, Comparator<T> order, int limit) {
+        PriorityQueue<T> worstFirst = new PriorityQueue<>(order.reversed());
+        for (T element : source) {
+            offerBounded(worstFirst, element, order, limit);
+        }
+        List<T> best = new ArrayList<>(worstFirst.size());
+        while (!worstFirst.isEmpty()) {
+            best.add(worstFirst.poll());
+        }
+        Collections.reverse(best);
+        return best;
+    }
+
+    // Keeps the heap at no more than limit elements by evicting its current worst entry.
+    private static <T> void offerBounded(PriorityQueue<T> worstFirst, T candidate, Comparator<T> order, int limit) {
+        if (limit <= 0) {
+            return;
+        }
+        if (worstFirst.size() < limit) {
+            worstFirst.offer(candidate);
+        } else if (order.compare(candidate, worstFirst.peek()) < 0) {
+            worstFirst.poll();
+            worstFirst.offer(candidate);
+        }
+    }
+
+    private static List<Item> page(List<Item> top, int offset, int window) {
+        int end = Math.min(top.size(), window);
+        if (offset >= end) {
+            return List.of();
+        }
+        return top.subList(offset, end);
+    }
+
     public void addTask(Task task) {
         if (task == null) {
             return;
         }
-        taskQueue.offer(task);
-        tasksById.put(task.getId(), task);
+        synchronized (stateLock) {
+            taskQueue.offer(task);
+            tasksById.put(task.getId(), task);
+        }
     }
 
     public void deleteTask(Task task) {
         if (task == null) {
             return;
         }
-        undoStack.push(new Memento(task.copy(), Memento.OperationType.TASK_DELETE));
-        taskQueue.remove(task);
-        tasksById.remove(task.getId());
+        beginWrite();
+        try {
+            undoHistory.push(new Memento(task.copy(), Memento.OperationType.TASK_DELETE));
+            synchronized (stateLock) {
+                taskQueue.remove(task);
+                tasksById.remove(task.getId());
+            }
+        } finally {
+            endWrite();
+        }
     }
 
     public Optional<Task> peekNextTask() {
-        return Optional.ofNullable(taskQueue.peek());
+        synchronized (stateLock) {
+            return Optional.ofNullable(taskQueue.peek());
+        }
     }
 
     public void markAsViewed(Item item) {
         if (item == null) {
             return;
         }
-        recentlyViewedStack.remove(item);
-        recentlyViewedStack.push(item);
-        while (recentlyViewedStack.size() > RECENTLY_VIEWED_LIMIT) {
-            recentlyViewedStack.removeLast();
+        synchronized (stateLock) {
+            recentlyViewedStack.remove(item);
+            recentlyViewedStack.push(item);
+            while (recentlyViewedStack.size() > RECENTLY_VIEWED_LIMIT) {
+                recentlyViewedStack.removeLast();
+            }
         }
     }
 
     public List<Item> getRecentlyViewed() {
-        List<Item> recent = new ArrayList<>(recentlyViewedStack);
-        Collections.reverse(recent);
-        return recent;
+        synchronized (stateLock) {
+            List<Item> recent = new ArrayList<>(recentlyViewedStack);
+            Collections.reverse(recent);
+            return recent;
+        }
     }
 
     public Optional<Item> popRecentlyViewed() {
-        return Optional.ofNullable(recentlyViewedStack.poll());
+        synchronized (stateLock) {
+            return Optional.ofNullable(recentlyViewedStack.poll());
+        }
     }
 
     public Optional<Item> navigateBack(Item current) {
-        if (current != null && !recentlyViewedStack.isEmpty() && recentlyViewedStack.peek().equals(current)) {
-            recentlyViewedStack.pop();
+        synchronized (stateLock) {
+            if (current != null && !recentlyViewedStack.isEmpty() && recentlyViewedStack.peek().equals(current)) {
+                recentlyViewedStack.pop();
+            }
+            Item previous = recentlyViewedStack.poll();
+            return Optional.ofNullable(previous);
         }
-        Item previous = recentlyViewedStack.poll();
-        return Optional.ofNullable(previous);
     }
 
     public boolean undo() {
-        Memento memento = undoStack.poll();
+        return undo(item -> { });
+    }
+
+    /**
+     * Like {@link #undo()}, and hands {@code restored} every item the undo put
+     * back or reverted to an earlier edit, e.g. so only those have their file
+     * content extracted again. It is called under the write lock.
+     */
+    public boolean undo(Consumer<? super Item> restored) {
+        beginWrite();
+        try {
+            return applyUndo(restored);
+        } finally {
+            endWrite();
+        }
+    }
+
+    private boolean applyUndo(Consumer<? super Item> restored) {
+        Memento memento = undoHistory.poll();
         if (memento == null) {
             return false;
         }
@@ -253,7 +1365,7 @@ public class LibraryService {
                 if (item == null) {
                     yield false;
                 }
-                removeFromIndex(item);
+                working.removeFromIndex(item);
                 String currentPath = normalisePath(item.getFilePath());
                 if (currentPath != null) {
                     uniquePaths.remove(currentPath);
@@ -263,7 +1375,8 @@ public class LibraryService {
                 if (restoredPath != null) {
                     uniquePaths.add(restoredPath);
                 }
-                indexItem(item);
+                working.indexItem(item);
+                restored.accept(item);
                 yield true;
             }
             case DELETE -> {
@@ -275,11 +1388,24 @@ public class LibraryService {
                         for (Task task : snapshot.tasks()) {
                             addTask(task.copy());
                         }
+                        restored.accept(restoredItem);
                     }
                     yield added;
                 }
                 yield false;
             }
+            case BATCH -> {
+                Object changes = memento.getOperationData();
+                if (changes instanceof BatchSnapshot snapshot) {
+                    revertBatch(snapshot, restored);
+                    yield true;
+                }
+                if (changes instanceof BulkEdit edits) {
+                    revertEdits(edits);
+                    yield true;
+                }
+                yield false;
+            }
             case TASK_DELETE, TASK_EDIT -> {
                 Object data = memento.getOperationData();
                 if (data instanceof Task task) {
@@ -300,156 +1426,240 @@ public class LibraryService {
     }
 
     public List<Item> getAllItems() {
-        return new ArrayList<>(items);
+        return new ArrayList<>(published.items());
     }
 
     public List<Task> getAllTasks() {
-        List<Task> ordered = new ArrayList<>(taskQueue);
+        List<Task> ordered;
+        synchronized (stateLock) {
+            ordered = new ArrayList<>(taskQueue);
+        }
         ordered.sort(null);
         return ordered;
     }
 
     public Map<String, Integer> getTagFrequency() {
-        return Collections.unmodifiableMap(tagFrequency);
+        return published.tagFrequencies();
+    }
+
+    /**
+     * Up to {@code k} keywords completing the partly typed word {@code prefix},
+     * the ones held by the most items first. Each node of the vocabulary trie
+     * keeps its best completions, so this costs the length of the prefix
+     * whatever the size of the library.
+     */
+    public List<String> suggest(String prefix, int k) {
+        LibraryIndex index = published;
+        String word = prefix == null ? "" : prefix.trim();
+        if (word.isEmpty() || k <= 0) {
+            return List.of();
+        }
+        return index.suggestKeywords(index.analyzer(SearchField.TITLE).prefix(word), k);
+    }
+
+    /** Up to {@code k} existing tags starting with {@code prefix}, the most used first. */
+    public List<String> suggestTags(String prefix, int k) {
+        String tag = prefix == null ? "" : prefix.trim().toLowerCase(Locale.ROOT);
+        if (tag.isEmpty() || k <= 0) {
+            return List.of();
+        }
+        return published.suggestTags(tag, k);
+    }
+
+    /**
+     * Bounds the undo history to {@code maxEntries} steps and roughly
+     * {@code maxBytes} of retained state, dropping the oldest steps to fit.
+     * The most recent step is kept even when it alone is over the budget.
+     */
+    public void setUndoLimits(int maxEntries, long maxBytes) {
+        undoHistory.setLimits(maxEntries, maxBytes);
     }
 
     public boolean hasUndo() {
-        return !undoStack.isEmpty();
+        return !undoHistory.isEmpty();
     }
 
     public int getItemCount() {
-        return items.size();
+        return published.itemCount();
     }
 
     public void clear() {
-        items.clear();
-        itemsById.clear();
-        keywordIndex.clear();
-        itemKeywords.clear();
-        itemTags.clear();
-        tagFrequency.clear();
-        uniquePaths.clear();
-        undoStack.clear();
-        recentlyViewedStack.clear();
-        taskQueue.clear();
-        tasksById.clear();
+        beginWrite();
+        try {
+            working.clear();
+            searchCache.clear();
+            itemsById.clear();
+            uniquePaths.clear();
+            undoHistory.clear();
+            synchronized (stateLock) {
+                recentlyViewedStack.clear();
+                taskQueue.clear();
+                tasksById.clear();
+            }
+        } finally {
+            endWrite();
+        }
     }
 
+    /**
+     * The library as last published, for saving. Reads the published index
+     * instead of the writer's, so saving never waits for a write; the unique
+     * paths are those of the items it holds.
+     */
     public LibraryState createSnapshot() {
-        List<String> recentOrder = new ArrayList<>(recentlyViewedStack.size());
-        for (Item item : recentlyViewedStack) {
-            recentOrder.add(item.getId());
+        LibraryIndex index = published;
+        List<Item> items = copyItems(index.items());
+        Set<String> paths = new HashSet<>();
+        for (Item item : items) {
+            String normalisedPath = normalisePath(item.getFilePath());
+            if (normalisedPath != null) {
+                paths.add(normalisedPath);
+            }
+        }
+        List<String> recentOrder;
+        List<Task> tasks;
+        synchronized (stateLock) {
+            recentOrder = new ArrayList<>(recentlyViewedStack.size());
+            for (Item item : recentlyViewedStack) {
+                recentOrder.add(item.getId());
+            }
+            tasks = copyTasks(tasksById.values());
         }
 
         return new LibraryState(
-            copyItems(items),
-            copyMapOfSets(keywordIndex),
-            copyMapOfSets(itemKeywords),
-            copyMapOfSets(itemTags),
-            new HashMap<>(tagFrequency),
-            new HashSet<>(uniquePaths),
+            items,
+            index.keywordIndexById(),
+            index.keywordsById(),
+            index.tagsById(),
+            new HashMap<>(index.tagFrequencies()),
+            paths,
             recentOrder,
-            new ArrayList<>(undoStack),
-            copyTasks(tasksById.values())
+            undoHistory.toList(),
+            tasks
         );
     }
 
     public void restoreSnapshot(LibraryState state) {
-        clear();
-        if (state == null) {
-            return;
-        }
-
-        state.items().forEach(item -> {
-            Item copy = item.copy();
-            items.add(copy);
-            itemsById.put(copy.getId(), copy);
-        });
-        keywordIndex.putAll(copyMapOfSets(state.keywordIndex()));
-        itemKeywords.putAll(copyMapOfSets(state.itemKeywords()));
-        itemTags.putAll(copyMapOfSets(state.itemTags()));
-        tagFrequency.putAll(state.tagFrequency());
-        uniquePaths.addAll(state.uniquePaths());
-
-        state.tasks().forEach(task -> {
-            Task copy = task.copy();
-            taskQueue.offer(copy);
-            tasksById.put(copy.getId(), copy);
-        });
-
-        Deque<Memento> restoredUndo = new ArrayDeque<>(state.undoHistory());
-        undoStack.addAll(restoredUndo);
+        beginWrite();
+        try {
+            clear();
+            if (state == null) {
+                return;
+            }
 
-    List<String> recentIds = new ArrayList<>(state.recentlyViewedOrder());
-    Collections.reverse(recentIds);
-    for (String id : recentIds) {
-            Item item = itemsById.get(id);
-            if (item != null) {
-                recentlyViewedStack.push(item);
+            state.items().forEach(item -> {
+                Item copy = item.copy();
+                itemsById.put(copy.getId(), copy);
+                // The persisted maps are derived data keyed by item id; rebuilding keeps doc ids dense.
+                working.add(copy);
+            });
+            uniquePaths.addAll(state.uniquePaths());
+
+            state.tasks().forEach(task -> addTask(task.copy()));
+
+            undoHistory.restore(state.undoHistory());
+
+            List<String> recentIds = new ArrayList<>(state.recentlyViewedOrder());
+            Collections.reverse(recentIds);
+            synchronized (stateLock) {
+                for (String id : recentIds) {
+                    Item item = itemsById.get(id);
+                    if (item != null) {
+                        recentlyViewedStack.push(item);
+                    }
+                }
             }
+        } finally {
+            endWrite();
         }
     }
 
-    private void indexItem(Item item) {
-        Set<String> keywordTokens = new HashSet<>(item.keywordTokensForSearch());
-        itemKeywords.put(item.getId(), keywordTokens);
-        keywordTokens.forEach(token ->
-            keywordIndex.computeIfAbsent(token, t -> new HashSet<>()).add(item.getId())
-        );
+    /**
+     * Replaces the extracted-text tokens of an item. Results are dropped when the
+     * item was removed or its file path changed since extraction started.
+     */
+    boolean updateContent(String itemId, ContentStamp stamp, Set<String> tokens, TermPositions positions) {
+        beginWrite();
+        try {
+            return working.updateContent(itemId, stamp, tokens, positions);
+        } finally {
+            endWrite();
+        }
+    }
 
-        Set<String> tags = new HashSet<>(item.getTags());
-        itemTags.put(item.getId(), tags);
-        tags.forEach(tag -> tagFrequency.merge(tag, 1, Integer::sum));
+    ContentStamp contentStamp(Item item) {
+        return published.contentStamp(item);
     }
 
     private DeletedItemSnapshot removeItemInternal(Item item, boolean captureTasks) {
         if (item == null) {
             return new DeletedItemSnapshot(null, List.of());
         }
+        DeletedItemSnapshot snapshot = detachItem(item, captureTasks);
+        working.remove(item);
+        return snapshot;
+    }
+
+    // Forgets the item and its tasks everywhere but in the index.
+    private DeletedItemSnapshot detachItem(Item item, boolean captureTasks) {
         Item itemCopy = item.copy();
         List<Task> orphanedTasks = new ArrayList<>();
-        taskQueue.removeIf(task -> {
-            if (item.getId().equals(task.getItemId())) {
-                tasksById.remove(task.getId());
-                if (captureTasks) {
-                    orphanedTasks.add(task.copy());
+        synchronized (stateLock) {
+            taskQueue.removeIf(task -> {
+                if (item.getId().equals(task.getItemId())) {
+                    tasksById.remove(task.getId());
+                    if (captureTasks) {
+                        orphanedTasks.add(task.copy());
+                    }
+                    return true;
                 }
-                return true;
-            }
-            return false;
-        });
-
-        recentlyViewedStack.remove(item);
-        items.remove(item);
+                return false;
+            });
+            recentlyViewedStack.remove(item);
+        }
         itemsById.remove(item.getId());
         String normalisedPath = normalisePath(item.getFilePath());
         if (normalisedPath != null) {
             uniquePaths.remove(normalisedPath);
         }
-        removeFromIndex(item);
         return new DeletedItemSnapshot(itemCopy, orphanedTasks);
     }
 
-    private void removeFromIndex(Item item) {
-        Set<String> keywords = itemKeywords.remove(item.getId());
-        if (keywords != null) {
-            for (String keyword : keywords) {
-                Set<String> ids = keywordIndex.get(keyword);
-                if (ids != null) {
-                    ids.remove(item.getId());
-                    if (ids.isEmpty()) {
-                        keywordIndex.remove(keyword);
-                    }
-                }
+    // Restores the tags or categories a bulk edit changed, re-indexing only what depends on them.
+    private void revertEdits(BulkEdit edits) {
+        List<Item> retagged = new ArrayList<>();
+        List<Item> recategorised = new ArrayList<>();
+        for (Memento edit : edits.edits()) {
+            Item item = itemsById.get(edit.getItemId());
+            if (item == null) {
+                continue;
             }
+            item.restoreFromMemento(edit);
+            (edit.captures(Memento.Field.TAGS) ? retagged : recategorised).add(item);
         }
+        working.retag(retagged);
+        working.recategorise(recategorised);
+    }
 
-        Set<String> tags = itemTags.remove(item.getId());
-        if (tags != null) {
-            for (String tag : tags) {
-                tagFrequency.computeIfPresent(tag, (key, count) -> count > 1 ? count - 1 : null);
+    // Puts back what a batch changed, as one batch that records no undo step of its own.
+    private void revertBatch(BatchSnapshot snapshot, Consumer<? super Item> restored) {
+        BatchWriter writer = new BatchWriter(false);
+        for (String id : snapshot.added()) {
+            Item item = itemsById.get(id);
+            if (item != null) {
+                writer.delete(item);
+            }
+        }
+        for (DeletedItemSnapshot deleted : snapshot.deleted()) {
+            Item item = deleted.item().copy();
+            if (writer.add(item)) {
+                for (Task task : deleted.tasks()) {
+                    addTask(task.copy());
+                }
+                restored.accept(item);
             }
         }
+        writer.apply();
     }
 
     private String normalisePath(String path) {
@@ -464,12 +1674,6 @@ public class LibraryService {
         }
     }
 
-    private List<Item> sortedItemsByTitle() {
-        List<Item> copy = new ArrayList<>(items);
-        copy.sort(Comparator.comparing(Item::getTitle, String.CASE_INSENSITIVE_ORDER));
-        return copy;
-    }
-
     private static List<Item> copyItems(List<Item> source) {
         List<Item> copies = new ArrayList<>(source.size());
         for (Item item : source) {
@@ -486,44 +1690,277 @@ public class LibraryService {
         return copies;
     }
 
-    private static Map<String, Set<String>> copyMapOfSets(Map<String, Set<String>> source) {
-        Map<String, Set<String>> copy = new HashMap<>();
-        source.forEach((key, value) -> copy.put(key, new HashSet<>(value)));
-        return copy;
-    }
+    /**
+     * Per-query scores for the doc ids in [from, to), indexed by doc - from; hits
+     * records which slots were touched. The arrays are borrowed from a pool and
+     * handed back by {@link #release()}, which clears only the touched slots, so a
+     * query pays for its hits rather than for the size of the library.
+     */
+    private static final class ScoreBoard {
+        // Enough for a few queries' worth of shards; anything beyond it is left to the collector.
+        private static final int POOLED_SCRATCH = 4 * Runtime.getRuntime().availableProcessors();
+        private static final ConcurrentLinkedQueue<Scratch> POOL = new ConcurrentLinkedQueue<>();
+        private static final AtomicInteger POOLED = new AtomicInteger();
+
+        private final int from;
+        private final int to;
+        private final Ranker.Scorer scorer;
+        private final DocBitmap filter;
+        private final double[] scores;
+        private final int[] exactMatches;
+        private final boolean[] titleMatches;
+        private final boolean[] touched;
+        private final int[] hits;
+        private Scratch scratch;
+        private int hitCount;
+
+        ScoreBoard(int from, int to, Ranker.Scorer scorer, DocBitmap filter) {
+            this.from = from;
+            this.to = to;
+            this.scorer = scorer;
+            this.filter = filter;
+            scratch = borrow(to - from);
+            scores = scratch.scores;
+            exactMatches = scratch.exactMatches;
+            titleMatches = scratch.titleMatches;
+            touched = scratch.touched;
+            hits = scratch.hits;
+        }
 
-    private static final class ScoreAccumulator {
-        private double frequencyScore;
-        private int exactMatches;
-        private boolean titleMatch;
+        // A pooled scratch too small for this shard is dropped; the library has outgrown it.
+        private static Scratch borrow(int capacity) {
+            Scratch pooled;
+            while ((pooled = POOL.poll()) != null) {
+                POOLED.decrementAndGet();
+                if (pooled.hits.length >= capacity) {
+                    return pooled;
+                }
+            }
+            return new Scratch(capacity);
+        }
 
-        void boostFrequency(double weight, boolean exactMatch) {
-            frequencyScore += weight;
+        /** Clears the touched slots and returns the arrays to the pool; the board is unusable after. */
+        void release() {
+            Scratch released = scratch;
+            if (released == null) {
+                return;
+            }
+            scratch = null;
+            for (int i = 0; i < hitCount; i++) {
+                int slot = hits[i] - from;
+                scores[slot] = 0;
+                exactMatches[slot] = 0;
+                titleMatches[slot] = false;
+                touched[slot] = false;
+            }
+            hitCount = 0;
+            if (POOLED.incrementAndGet() <= POOLED_SCRATCH) {
+                POOL.offer(released);
+            } else {
+                POOLED.decrementAndGet();
+            }
+        }
+
+        int from() {
+            return from;
+        }
+
+        Ranker.Scorer scorer() {
+            return scorer;
+        }
+
+        boolean titleMatch(int doc) {
+            return titleMatches[doc - from];
+        }
+
+        int to() {
+            return to;
+        }
+
+        void boost(int doc, int fieldMask, double termWeight, boolean exactMatch) {
+            if (!admits(doc)) {
+                return;
+            }
+            touch(doc);
+            scores[doc - from] += scorer.score(termWeight, doc, fieldMask);
             if (exactMatch) {
-                exactMatches++;
+                exactMatches[doc - from]++;
             }
         }
 
-        void boostTitle() {
-            titleMatch = true;
-            frequencyScore += 3;
+        void markTitleMatch(int doc) {
+            if (!admits(doc)) {
+                return;
+            }
+            touch(doc);
+            titleMatches[doc - from] = true;
+        }
+
+        int hitCount() {
+            return hitCount;
+        }
+
+        int hitAt(int index) {
+            return hits[index];
         }
 
-        ItemScore toScore(Item item) {
-            double ratingBonus = item.getRating() * 0.5;
-            double titleBonus = titleMatch ? 5 : 0;
-            double score = frequencyScore + ratingBonus + titleBonus;
-            return new ItemScore(item, score, exactMatches);
+        ItemScore toScore(int doc, Item item) {
+            double score = scorer.finalScore(scores[doc - from], titleMatches[doc - from], item);
+            return new ItemScore(item, doc, score, exactMatches[doc - from]);
         }
+
+        void admit(int doc) {
+            if (admits(doc)) {
+                touch(doc);
+            }
+        }
+
+        private boolean admits(int doc) {
+            return filter == null || filter.get(doc);
+        }
+
+        private void touch(int doc) {
+            if (!touched[doc - from]) {
+                touched[doc - from] = true;
+                hits[hitCount++] = doc;
+            }
+        }
+
+        private static final class Scratch {
+            private final double[] scores;
+            private final int[] exactMatches;
+            private final boolean[] titleMatches;
+            private final boolean[] touched;
+            private final int[] hits;
+
+            Scratch(int capacity) {
+                scores = new double[capacity];
+                exactMatches = new int[capacity];
+                titleMatches = new boolean[capacity];
+                touched = new boolean[capacity];
+                hits = new int[capacity];
+            }
+        }
+    }
+
+    /**
+     * Candidates resolved against {@code index}, which is also the copy they are
+     * scored against. {@code filter} is null when the query has no clauses, i.e.
+     * is plain free text.
+     */
+    record QueryMatches(LibraryIndex index, String normalised, String[] tokens, List<List<String>> keywords,
+                        List<List<FuzzyMatch>> fuzzyKeywords, String titleText, List<Integer> titleDocs,
+                        List<String> clauseTerms, DocBitmap filter, boolean fuzzy, QueryPlan plan) {
+    }
+
+    record FuzzyMatch(String keyword, int distance) {
+    }
+
+    @FunctionalInterface
+    private interface ScoredTermVisitor {
+        void visit(String term, PostingList postings, double termWeight, boolean exact);
+    }
+
+    /** Identifies the file version extracted text came from, so unchanged files are skipped. */
+    record ContentStamp(String path, long lastModified, long size) {
+    }
+
+    private record ItemScore(Item item, int doc, double score, int exactMatches) {
     }
 
-    private record ItemScore(Item item, double score, int exactMatches) {
+    record DeletedItemSnapshot(Item item, List<Task> tasks) implements Serializable {
+        private static final long serialVersionUID = 1L;
     }
 
-    private record DeletedItemSnapshot(Item item, List<Task> tasks) implements Serializable {
+    // Ids of the items a batch added, which are shared with the items rather than copied, and what it deleted.
+    record BatchSnapshot(List<String> added, List<DeletedItemSnapshot> deleted) implements Serializable {
         private static final long serialVersionUID = 1L;
     }
 
+    // Delta mementos of the items one bulk tag or category change edited.
+    record BulkEdit(List<Memento> edits) implements Serializable {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * The writes of one {@link LibraryService#batch} call. Library state such as
+     * duplicate paths and tasks is updated as each write is made, but the index
+     * only changes when the batch ends, so items added here are not searchable
+     * until then. Only valid inside the callback it was handed to.
+     */
+    public final class BatchWriter {
+        private final boolean recordUndo;
+        // Keyed by id so an item added and deleted in the same batch is simply dropped.
+        private final Map<String, Item> added = new LinkedHashMap<>();
+        private final List<Item> removed = new ArrayList<>();
+        private final List<DeletedItemSnapshot> deleted = new ArrayList<>();
+        private boolean applied;
+
+        private BatchWriter(boolean recordUndo) {
+            this.recordUndo = recordUndo;
+        }
+
+        /** Adds {@code item} unless another item already has its file path, as {@link LibraryService#addItem(Item)} does. */
+        public boolean add(Item item) {
+            checkOpen();
+            if (item == null || itemsById.containsKey(item.getId())) {
+                return false;
+            }
+            String normalisedPath = normalisePath(item.getFilePath());
+            if (normalisedPath != null && !uniquePaths.add(normalisedPath)) {
+                return false;
+            }
+            itemsById.put(item.getId(), item);
+            added.put(item.getId(), item);
+            return true;
+        }
+
+        /** Deletes {@code item} and its tasks, which undoing the batch brings back. */
+        public boolean delete(Item item) {
+            checkOpen();
+            if (item == null || itemsById.get(item.getId()) != item) {
+                return false;
+            }
+            if (added.remove(item.getId()) != null) {
+                detachItem(item, false);
+                return true;
+            }
+            DeletedItemSnapshot snapshot = detachItem(item, recordUndo);
+            removed.add(item);
+            if (recordUndo) {
+                deleted.add(snapshot);
+            }
+            return true;
+        }
+
+        /** Writes made so far, adds and deletes together. */
+        public int size() {
+            return added.size() + removed.size();
+        }
+
+        private void checkOpen() {
+            if (applied) {
+                throw new IllegalStateException("The batch has already been applied.");
+            }
+        }
+
+        private void apply() {
+            if (applied) {
+                return;
+            }
+            applied = true;
+            // Items deleted meanwhile through the service itself are no longer ours to index.
+            added.values().removeIf(item -> itemsById.get(item.getId()) != item);
+            working.removeAll(removed);
+            working.addAll(new ArrayList<>(added.values()));
+            if (recordUndo && size() > 0) {
+                String summary = added.size() + " added, " + removed.size() + " deleted";
+                undoHistory.push(Memento.batch(summary,
+                    new BatchSnapshot(new ArrayList<>(added.keySet()), new ArrayList<>(deleted))));
+            }
+        }
+    }
+
     public static class LibraryState implements Serializable {
         private static final long serialVersionUID = 2L;
         private final List<Item> items;
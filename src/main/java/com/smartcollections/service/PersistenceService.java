@@ -72,9 +72,11 @@ public class PersistenceService {
             long timestamp = ois.readLong();
             
             LibraryData data = (LibraryData) ois.readObject();
-            libraryService.clear();
-            data.items.forEach(libraryService::addItemSilently);
-            data.tasks.forEach(libraryService::addTask);
+            libraryService.runBatch(() -> {
+                libraryService.clear();
+                data.items.forEach(libraryService::addItemSilently);
+                data.tasks.forEach(libraryService::addTask);
+            });
         }
     }
     
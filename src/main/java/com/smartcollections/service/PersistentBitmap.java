@@ -0,0 +1,115 @@
+package com.smartcollections.service;
+
+/**
+ * Doc bit set in blocks of {@value #BLOCK_BITS} docs held by a
+ * {@link PersistentVector}, for attribute bitmaps and tombstones that a
+ * published index shares with the writer's. Setting or clearing a doc under a
+ * new edit token copies one block and the vector path to it, not the whole
+ * set. Queries combine {@link DocBitmap}s, so readers take a flat copy with
+ * {@link #toDocBitmap()} or probe single docs with {@link #get(int)}.
+ */
+final class PersistentBitmap {
+    private static final int BLOCK_WORDS = 16;
+    static final int BLOCK_BITS = BLOCK_WORDS * Long.SIZE;
+    private static final PersistentBitmap EMPTY = new PersistentBitmap(null, PersistentVector.empty(), 0);
+
+    private final Object edit;
+    private PersistentVector<Block> blocks;
+    private int cardinality;
+
+    private PersistentBitmap(Object edit, PersistentVector<Block> blocks, int cardinality) {
+        this.edit = edit;
+        this.blocks = blocks;
+        this.cardinality = cardinality;
+    }
+
+    static PersistentBitmap empty() {
+        return EMPTY;
+    }
+
+    boolean get(int doc) {
+        int block = doc / BLOCK_BITS;
+        if (block >= blocks.size()) {
+            return false;
+        }
+        Block bits = blocks.get(block);
+        return bits != null && (bits.words[(doc % BLOCK_BITS) >>> 6] & (1L << doc)) != 0;
+    }
+
+    /** This bitmap with {@code doc} set. */
+    PersistentBitmap set(int doc, Object edit) {
+        if (get(doc)) {
+            return this;
+        }
+        PersistentBitmap bitmap = editable(edit);
+        int block = doc / BLOCK_BITS;
+        while (bitmap.blocks.size() <= block) {
+            bitmap.blocks = bitmap.blocks.add(null, edit);
+        }
+        bitmap.editableBlock(block, edit).words[(doc % BLOCK_BITS) >>> 6] |= 1L << doc;
+        bitmap.cardinality++;
+        return bitmap;
+    }
+
+    /** This bitmap with {@code doc} cleared. */
+    PersistentBitmap clear(int doc, Object edit) {
+        if (!get(doc)) {
+            return this;
+        }
+        PersistentBitmap bitmap = editable(edit);
+        bitmap.editableBlock(doc / BLOCK_BITS, edit).words[(doc % BLOCK_BITS) >>> 6] &= ~(1L << doc);
+        bitmap.cardinality--;
+        return bitmap;
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /** Size of the intersection with {@code other}, without materialising it. */
+    int andCardinality(DocBitmap other) {
+        int count = 0;
+        for (int b = 0; b < blocks.size(); b++) {
+            Block bits = blocks.get(b);
+            if (bits != null) {
+                count += other.andCardinality(bits.words, b * BLOCK_WORDS);
+            }
+        }
+        return count;
+    }
+
+    /** A flat copy the caller is free to combine in place. */
+    DocBitmap toDocBitmap() {
+        DocBitmap bitmap = new DocBitmap(blocks.size() * BLOCK_BITS);
+        for (int b = 0; b < blocks.size(); b++) {
+            Block bits = blocks.get(b);
+            if (bits != null) {
+                bitmap.or(bits.words, b * BLOCK_WORDS);
+            }
+        }
+        return bitmap;
+    }
+
+    private Block editableBlock(int block, Object edit) {
+        Block bits = blocks.get(block);
+        if (bits == null || bits.edit != edit) {
+            bits = new Block(edit, bits != null ? bits.words.clone() : new long[BLOCK_WORDS]);
+            blocks = blocks.set(block, bits, edit);
+        }
+        return bits;
+    }
+
+    private PersistentBitmap editable(Object edit) {
+        if (edit == null) {
+            throw new IllegalArgumentException("Writes need an edit token.");
+        }
+        return this.edit == edit ? this : new PersistentBitmap(edit, blocks, cardinality);
+    }
+
+    private record Block(Object edit, long[] words) {
+    }
+}
@@ -0,0 +1,325 @@
+package com.smartcollections.service;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+
+/**
+ * Hash array mapped trie: a hash map whose nodes can be shared between a
+ * published index and the writer's. Like {@link PersistentVector}, a map
+ * belongs to the edit token it was written under and changes in place for that
+ * token only; with any other token {@link #put} and {@link #remove} return a
+ * new map that copies the few nodes on the key's path. Null keys and values are
+ * not allowed, so {@link #get} returns null only for absent keys.
+ */
+final class PersistentMap<K, V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, null, 0);
+
+    private final Object edit;
+    private Node root;
+    private int size;
+
+    private PersistentMap(Object edit, Node root, int size) {
+        this.edit = edit;
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        return root == null ? null : (V) root.find(0, hash(key), key);
+    }
+
+    boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /** This map with {@code key} mapped to {@code value}. */
+    PersistentMap<K, V> put(K key, V value, Object edit) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Keys and values must not be null.");
+        }
+        if (get(key) == value) {
+            return this;
+        }
+        PersistentMap<K, V> map = editable(edit);
+        boolean[] added = new boolean[1];
+        Node start = map.root != null ? map.root : BitmapNode.EMPTY;
+        map.root = start.put(edit, 0, hash(key), key, value, added);
+        if (added[0]) {
+            map.size++;
+        }
+        return map;
+    }
+
+    /** This map without {@code key}. */
+    PersistentMap<K, V> remove(Object key, Object edit) {
+        if (!containsKey(key)) {
+            return this;
+        }
+        PersistentMap<K, V> map = editable(edit);
+        map.root = map.root.remove(edit, 0, hash(key), key);
+        map.size--;
+        return map;
+    }
+
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        forEachWhile((key, value) -> {
+            action.accept(key, value);
+            return true;
+        });
+    }
+
+    /** Visits entries until {@code action} returns false; returns false if it was stopped that way. */
+    @SuppressWarnings("unchecked")
+    boolean forEachWhile(BiPredicate<? super K, ? super V> action) {
+        return root == null || root.forEachWhile((BiPredicate<Object, Object>) action);
+    }
+
+    private PersistentMap<K, V> editable(Object edit) {
+        if (edit == null) {
+            throw new IllegalArgumentException("Writes need an edit token.");
+        }
+        return this.edit == edit ? this : new PersistentMap<>(edit, root, size);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private abstract static class Node {
+        final Object edit;
+
+        Node(Object edit) {
+            this.edit = edit;
+        }
+
+        abstract Object find(int shift, int hash, Object key);
+
+        abstract Node put(Object edit, int shift, int hash, Object key, Object value, boolean[] added);
+
+        // Null once the node holds nothing; the key is known to be present.
+        abstract Node remove(Object edit, int shift, int hash, Object key);
+
+        abstract boolean forEachWhile(BiPredicate<Object, Object> action);
+    }
+
+    // Up to 32 slots picked by five bits of the hash; a slot holds a key and value, or null and a child node.
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+        private int bitmap;
+        private Object[] array;
+
+        BitmapNode(Object edit, int bitmap, Object[] array) {
+            super(edit);
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int index = index(bit);
+            Object slotKey = array[2 * index];
+            Object slotValue = array[2 * index + 1];
+            if (slotKey == null) {
+                return ((Node) slotValue).find(shift + BITS, hash, key);
+            }
+            return key.equals(slotKey) ? slotValue : null;
+        }
+
+        @Override
+        Node put(Object edit, int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                int count = Integer.bitCount(bitmap);
+                BitmapNode node;
+                if (this.edit == edit && array.length >= 2 * (count + 1)) {
+                    node = this;
+                    System.arraycopy(array, 2 * index, array, 2 * (index + 1), 2 * (count - index));
+                } else {
+                    // Nodes of the current edit keep a little room, so a burst of puts does not copy per key.
+                    Object[] grown = new Object[2 * (count + (this.edit == edit ? 4 : 1))];
+                    System.arraycopy(array, 0, grown, 0, 2 * index);
+                    System.arraycopy(array, 2 * index, grown, 2 * (index + 1), 2 * (count - index));
+                    node = new BitmapNode(edit, bitmap, grown);
+                }
+                node.array[2 * index] = key;
+                node.array[2 * index + 1] = value;
+                node.bitmap |= bit;
+                return node;
+            }
+            Object slotKey = array[2 * index];
+            Object slotValue = array[2 * index + 1];
+            if (slotKey == null) {
+                Node child = ((Node) slotValue).put(edit, shift + BITS, hash, key, value, added);
+                return child == slotValue ? this : with(edit, 2 * index + 1, child);
+            }
+            if (key.equals(slotKey)) {
+                return slotValue == value ? this : with(edit, 2 * index + 1, value);
+            }
+            added[0] = true;
+            Node child = pair(edit, shift + BITS, slotKey, slotValue, hash, key, value);
+            BitmapNode node = (BitmapNode) with(edit, 2 * index, null);
+            node.array[2 * index + 1] = child;
+            return node;
+        }
+
+        @Override
+        Node remove(Object edit, int shift, int hash, Object key) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            Object slotKey = array[2 * index];
+            if (slotKey == null) {
+                Node child = ((Node) array[2 * index + 1]).remove(edit, shift + BITS, hash, key);
+                if (child != null) {
+                    return with(edit, 2 * index + 1, child);
+                }
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            int count = Integer.bitCount(bitmap);
+            BitmapNode node = this.edit == edit ? this : new BitmapNode(edit, bitmap, array.clone());
+            System.arraycopy(node.array, 2 * (index + 1), node.array, 2 * index, 2 * (count - index - 1));
+            node.array[2 * count - 2] = null;
+            node.array[2 * count - 1] = null;
+            node.bitmap ^= bit;
+            return node;
+        }
+
+        @Override
+        boolean forEachWhile(BiPredicate<Object, Object> action) {
+            int count = Integer.bitCount(bitmap);
+            for (int i = 0; i < count; i++) {
+                boolean more = array[2 * i] == null
+                    ? ((Node) array[2 * i + 1]).forEachWhile(action)
+                    : action.test(array[2 * i], array[2 * i + 1]);
+                if (!more) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Node with(Object edit, int slot, Object value) {
+            BitmapNode node = this.edit == edit ? this : new BitmapNode(edit, bitmap, array.clone());
+            node.array[slot] = value;
+            return node;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & MASK);
+        }
+
+        // A node holding two entries that collided at the level above.
+        private static Node pair(Object edit, int shift, Object key1, Object value1, int hash2, Object key2,
+                                 Object value2) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(edit, hash1, new Object[] {key1, value1, key2, value2});
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.put(edit, shift, hash1, key1, value1, added).put(edit, shift, hash2, key2, value2, added);
+        }
+    }
+
+    // Keys whose full hashes are equal, searched linearly.
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private Object[] array;
+
+        CollisionNode(Object edit, int hash, Object[] array) {
+            super(edit);
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int index = indexOf(key);
+            return index >= 0 ? array[index + 1] : null;
+        }
+
+        @Override
+        Node put(Object edit, int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // Push this node one level down behind a bitmap node that can tell the hashes apart.
+                BitmapNode parent = new BitmapNode(edit, BitmapNode.bit(this.hash, shift), new Object[] {null, this});
+                return parent.put(edit, shift, hash, key, value, added);
+            }
+            int index = indexOf(key);
+            CollisionNode node = this.edit == edit ? this : new CollisionNode(edit, hash, array.clone());
+            if (index >= 0) {
+                node.array[index + 1] = value;
+            } else {
+                added[0] = true;
+                node.array = Arrays.copyOf(node.array, array.length + 2);
+                node.array[array.length] = key;
+                node.array[array.length + 1] = value;
+            }
+            return node;
+        }
+
+        @Override
+        Node remove(Object edit, int shift, int hash, Object key) {
+            if (array.length == 2) {
+                return null;
+            }
+            int index = indexOf(key);
+            Object[] smaller = new Object[array.length - 2];
+            System.arraycopy(array, 0, smaller, 0, index);
+            System.arraycopy(array, index + 2, smaller, index, array.length - index - 2);
+            if (this.edit == edit) {
+                array = smaller;
+                return this;
+            }
+            return new CollisionNode(edit, hash, smaller);
+        }
+
+        @Override
+        boolean forEachWhile(BiPredicate<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (!action.test(array[i], array[i + 1])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.smartcollections.service;
+
+import java.util.Arrays;
+
+/**
+ * Indexed sequence stored as a 32-way tree, so a published index and the
+ * writer's can share every part neither has changed. A vector belongs to the
+ * edit token it was written under: {@link #set} and {@link #add} with that
+ * token change it in place, along with every tree node made under the same
+ * token, while any other token gets a new vector that copies only the nodes on
+ * the path to the changed slot. Once its owner moves to a new token, a vector
+ * is never changed again and may be read from any thread.
+ */
+final class PersistentVector<T> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(null, new Node(null), 0, 0);
+
+    private final Object edit;
+    private Node root;
+    // Bits below the root's level; 0 while the root is itself a leaf.
+    private int shift;
+    private int size;
+
+    private PersistentVector(Object edit, Node root, int shift, int size) {
+        this.edit = edit;
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> PersistentVector<T> empty() {
+        return (PersistentVector<T>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int index) {
+        return (T) leaf(index).slots[index & MASK];
+    }
+
+    /** Whether {@code other} holds {@code index} in the very same leaf node, so neither copied it. */
+    boolean sharesLeaf(PersistentVector<T> other, int index) {
+        return leaf(index) == other.leaf(index);
+    }
+
+    /** This vector with {@code value} at {@code index}, which must already exist. */
+    PersistentVector<T> set(int index, T value, Object edit) {
+        checkIndex(index);
+        if (get(index) == value) {
+            return this;
+        }
+        PersistentVector<T> vector = editable(edit);
+        Node node = vector.root = vector.root.editable(edit);
+        for (int level = shift; level > 0; level -= BITS) {
+            int slot = (index >>> level) & MASK;
+            Node child = ((Node) node.slots[slot]).editable(edit);
+            node.slots[slot] = child;
+            node = child;
+        }
+        node.slots[index & MASK] = value;
+        return vector;
+    }
+
+    /** This vector with {@code value} appended. */
+    PersistentVector<T> add(T value, Object edit) {
+        PersistentVector<T> vector = editable(edit);
+        int index = vector.size;
+        if (index == 1 << (vector.shift + BITS)) {
+            Node grown = new Node(edit);
+            grown.slots[0] = vector.root;
+            vector.root = grown;
+            vector.shift += BITS;
+        }
+        Node node = vector.root = vector.root.editable(edit);
+        for (int level = vector.shift; level > 0; level -= BITS) {
+            int slot = (index >>> level) & MASK;
+            Node child = node.slots[slot] == null ? new Node(edit) : ((Node) node.slots[slot]).editable(edit);
+            node.slots[slot] = child;
+            node = child;
+        }
+        node.slots[index & MASK] = value;
+        vector.size++;
+        return vector;
+    }
+
+    private PersistentVector<T> editable(Object edit) {
+        if (edit == null) {
+            throw new IllegalArgumentException("Writes need an edit token.");
+        }
+        return this.edit == edit ? this : new PersistentVector<>(edit, root, shift, size);
+    }
+
+    private Node leaf(int index) {
+        checkIndex(index);
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Node) node.slots[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+    }
+
+    private static final class Node {
+        private final Object edit;
+        private final Object[] slots;
+
+        Node(Object edit) {
+            this(edit, new Object[WIDTH]);
+        }
+
+        private Node(Object edit, Object[] slots) {
+            this.edit = edit;
+            this.slots = slots;
+        }
+
+        Node editable(Object edit) {
+            return this.edit == edit ? this : new Node(edit, Arrays.copyOf(slots, WIDTH));
+        }
+    }
+}
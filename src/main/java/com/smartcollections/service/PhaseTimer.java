@@ -0,0 +1,32 @@
+package com.smartcollections.service;
+
+/**
+ * Stopwatch for one search. {@link #restart()} marks where a stretch of work
+ * begins and {@link #lap(SearchPhase)} charges the time since the mark to a
+ * phase, so code that runs between phases is never counted. A phase may be
+ * lapped more than once per search; its laps add up.
+ */
+final class PhaseTimer {
+    private final long[] nanos = new long[SearchPhase.values().length];
+    private final boolean[] ran = new boolean[SearchPhase.values().length];
+    private long mark = System.nanoTime();
+
+    void restart() {
+        mark = System.nanoTime();
+    }
+
+    void lap(SearchPhase phase) {
+        long now = System.nanoTime();
+        nanos[phase.ordinal()] += now - mark;
+        ran[phase.ordinal()] = true;
+        mark = now;
+    }
+
+    boolean ran(SearchPhase phase) {
+        return ran[phase.ordinal()];
+    }
+
+    long nanos(SearchPhase phase) {
+        return nanos[phase.ordinal()];
+    }
+}
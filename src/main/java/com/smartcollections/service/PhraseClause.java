@@ -0,0 +1,61 @@
+package com.smartcollections.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Quoted phrase such as {@code "linear algebra"}. The postings of its terms are
+ * intersected first and positions are only read for the docs that contain all
+ * of them. A tag equal to the whole phrase also matches, since tags are indexed
+ * as single multi-word keywords.
+ */
+record PhraseClause(String text, String[] words, int[] offsets) implements QueryClause {
+    static final SearchField[] POSITIONAL_FIELDS = {SearchField.TITLE, SearchField.FILE_NAME, SearchField.CONTENT};
+
+    @Override
+    public DocBitmap matches(Context context) {
+        DocBitmap matches = new DocBitmap(context.capacity());
+        PostingList tagged = context.postings(text);
+        if (tagged != null) {
+            for (int i = 0; i < tagged.size(); i++) {
+                if ((tagged.fieldsAt(i) & SearchField.TAGS.mask()) != 0) {
+                    matches.set(tagged.docAt(i));
+                }
+            }
+        }
+
+        List<PostingList> lists = new ArrayList<>(words.length);
+        for (String term : words) {
+            PostingList postings = context.postings(term);
+            if (postings == null) {
+                return matches;
+            }
+            lists.add(postings);
+        }
+        for (int doc : PostingList.intersect(lists)) {
+            if (words.length == 1 || containsPhrase(context, doc)) {
+                matches.set(doc);
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public List<String> terms() {
+        List<String> terms = new ArrayList<>(List.of(words));
+        if (!terms.contains(text)) {
+            terms.add(text);
+        }
+        return terms;
+    }
+
+    private boolean containsPhrase(Context context, int doc) {
+        for (SearchField field : POSITIONAL_FIELDS) {
+            TermPositions positions = context.positions(doc, field);
+            if (positions != null && positions.containsPhrase(words, offsets)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
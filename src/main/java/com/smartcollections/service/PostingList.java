@@ -0,0 +1,181 @@
+package com.smartcollections.service;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sorted, duplicate-free array of int doc ids. Four bytes per posting instead of
+ * a boxed String entry in a HashSet, and merges walk two arrays in order. A
+ * parallel byte per posting records which {@link SearchField}s the term came from.
+ */
+final class PostingList {
+    private static final int[] EMPTY = new int[0];
+    private static final byte[] NO_FIELDS = new byte[0];
+
+    private int[] docs = EMPTY;
+    private byte[] fields = NO_FIELDS;
+    private int size;
+
+    boolean add(int doc, int fieldMask) {
+        int index = Arrays.binarySearch(docs, 0, size, doc);
+        if (index >= 0) {
+            fields[index] |= (byte) fieldMask;
+            return false;
+        }
+        int insertAt = -index - 1;
+        if (size == docs.length) {
+            int capacity = Math.max(4, size + (size >> 1));
+            docs = Arrays.copyOf(docs, capacity);
+            fields = Arrays.copyOf(fields, capacity);
+        }
+        System.arraycopy(docs, insertAt, docs, insertAt + 1, size - insertAt);
+        System.arraycopy(fields, insertAt, fields, insertAt + 1, size - insertAt);
+        docs[insertAt] = doc;
+        fields[insertAt] = (byte) fieldMask;
+        size++;
+        return true;
+    }
+
+    boolean remove(int doc) {
+        int index = Arrays.binarySearch(docs, 0, size, doc);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(docs, index + 1, docs, index, size - index - 1);
+        System.arraycopy(fields, index + 1, fields, index, size - index - 1);
+        size--;
+        if (size == 0) {
+            docs = EMPTY;
+            fields = NO_FIELDS;
+        }
+        return true;
+    }
+
+    /**
+     * Clears {@code fieldMask} from the doc's posting and drops the posting once
+     * no field is left. Returns false if the doc was not in the list.
+     */
+    boolean clearFields(int doc, int fieldMask) {
+        int index = Arrays.binarySearch(docs, 0, size, doc);
+        if (index < 0) {
+            return false;
+        }
+        fields[index] &= (byte) ~fieldMask;
+        if (fields[index] == 0) {
+            remove(doc);
+        }
+        return true;
+    }
+
+    boolean contains(int doc) {
+        return Arrays.binarySearch(docs, 0, size, doc) >= 0;
+    }
+
+    /**
+     * Docs present in every list. The shortest list drives the walk and the
+     * others are probed by binary search, so the cost follows the rarest term.
+     */
+    static int[] intersect(List<PostingList> lists) {
+        if (lists.isEmpty()) {
+            return EMPTY;
+        }
+        PostingList shortest = lists.get(0);
+        for (PostingList list : lists) {
+            if (list.size < shortest.size) {
+                shortest = list;
+            }
+        }
+        int[] common = new int[shortest.size];
+        int count = 0;
+        for (int i = 0; i < shortest.size; i++) {
+            int doc = shortest.docs[i];
+            boolean everywhere = true;
+            for (PostingList list : lists) {
+                if (list != shortest && !list.contains(doc)) {
+                    everywhere = false;
+                    break;
+                }
+            }
+            if (everywhere) {
+                common[count++] = doc;
+            }
+        }
+        return Arrays.copyOf(common, count);
+    }
+
+    /**
+     * Postings of the same term from several segments as one sorted list,
+     * leaving out docs marked in the matching {@code deleted} bitmap (null for
+     * none). A single list with nothing deleted is returned as is.
+     */
+    static PostingList union(List<PostingList> lists, List<PersistentBitmap> deleted) {
+        if (lists.size() == 1 && deleted.get(0) == null) {
+            return lists.get(0);
+        }
+        int total = 0;
+        for (PostingList list : lists) {
+            total += list.size;
+        }
+        // Doc id in the high bits and field mask in the low byte, so one sort orders both.
+        long[] keys = new long[total];
+        int count = 0;
+        for (int l = 0; l < lists.size(); l++) {
+            PostingList list = lists.get(l);
+            PersistentBitmap mask = deleted.get(l);
+            for (int i = 0; i < list.size; i++) {
+                if (mask == null || !mask.get(list.docs[i])) {
+                    keys[count++] = (long) list.docs[i] << 8 | (list.fields[i] & 0xFF);
+                }
+            }
+        }
+        Arrays.sort(keys, 0, count);
+
+        PostingList union = new PostingList();
+        union.docs = new int[count];
+        union.fields = new byte[count];
+        for (int i = 0; i < count; i++) {
+            int doc = (int) (keys[i] >>> 8);
+            byte fields = (byte) keys[i];
+            if (union.size > 0 && union.docs[union.size - 1] == doc) {
+                union.fields[union.size - 1] |= fields;
+            } else {
+                union.docs[union.size] = doc;
+                union.fields[union.size] = fields;
+                union.size++;
+            }
+        }
+        return union;
+    }
+
+    /** Index of the first posting whose doc id is at least {@code doc}, or {@link #size()} if none is. */
+    int lowerBound(int doc) {
+        int index = Arrays.binarySearch(docs, 0, size, doc);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    PostingList copy() {
+        PostingList copy = new PostingList();
+        if (size > 0) {
+            copy.docs = Arrays.copyOf(docs, size);
+            copy.fields = Arrays.copyOf(fields, size);
+            copy.size = size;
+        }
+        return copy;
+    }
+
+    int docAt(int index) {
+        return docs[index];
+    }
+
+    int fieldsAt(int index) {
+        return fields[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
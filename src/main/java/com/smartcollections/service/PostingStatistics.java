@@ -0,0 +1,58 @@
+package com.smartcollections.service;
+
+import java.util.Arrays;
+
+/**
+ * Running totals over the keyword postings: how many there are and how many
+ * terms have a posting list of each length, bucketed by powers of two. Kept
+ * in step with every change to a term's doc count, so the query planner reads
+ * them without walking the index.
+ */
+final class PostingStatistics {
+    // Bucket b counts terms with a doc count in [2^b, 2^(b+1)).
+    private static final int BUCKETS = Integer.SIZE;
+
+    private long totalPostings;
+    private final long[] lengthHistogram;
+
+    PostingStatistics() {
+        lengthHistogram = new long[BUCKETS];
+    }
+
+    private PostingStatistics(PostingStatistics source) {
+        totalPostings = source.totalPostings;
+        lengthHistogram = source.lengthHistogram.clone();
+    }
+
+    /** Records a term's doc count moving from {@code before} to {@code after}; 0 means absent. */
+    void counted(int before, int after) {
+        if (before > 0) {
+            lengthHistogram[bucket(before)]--;
+        }
+        if (after > 0) {
+            lengthHistogram[bucket(after)]++;
+        }
+        totalPostings += after - before;
+    }
+
+    long totalPostings() {
+        return totalPostings;
+    }
+
+    long[] lengthHistogram() {
+        return lengthHistogram.clone();
+    }
+
+    void clear() {
+        totalPostings = 0;
+        Arrays.fill(lengthHistogram, 0);
+    }
+
+    PostingStatistics copy() {
+        return new PostingStatistics(this);
+    }
+
+    private static int bucket(int docs) {
+        return 31 - Integer.numberOfLeadingZeros(docs);
+    }
+}
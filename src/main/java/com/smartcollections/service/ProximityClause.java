@@ -0,0 +1,35 @@
+package com.smartcollections.service;
+
+import java.util.List;
+
+/**
+ * {@code left NEAR/k right}: both terms within {@code distance} words of each
+ * other, in either order, inside the same field. Like {@link PhraseClause} it
+ * intersects postings before reading any positions.
+ */
+record ProximityClause(String left, String right, int distance) implements QueryClause {
+    @Override
+    public DocBitmap matches(Context context) {
+        DocBitmap matches = new DocBitmap(context.capacity());
+        PostingList leftPostings = context.postings(left);
+        PostingList rightPostings = context.postings(right);
+        if (leftPostings == null || rightPostings == null) {
+            return matches;
+        }
+        for (int doc : PostingList.intersect(List.of(leftPostings, rightPostings))) {
+            for (SearchField field : PhraseClause.POSITIONAL_FIELDS) {
+                TermPositions positions = context.positions(doc, field);
+                if (positions != null && positions.near(left, right, distance)) {
+                    matches.set(doc);
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public List<String> terms() {
+        return List.of(left, right);
+    }
+}
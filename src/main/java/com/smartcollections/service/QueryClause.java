@@ -0,0 +1,28 @@
+package com.smartcollections.service;
+
+import java.util.List;
+
+/**
+ * A filtering part of a parsed query. Each clause resolves to the set of docs it
+ * admits; the free-text part of the query is then only ranked within that set.
+ */
+interface QueryClause {
+    DocBitmap matches(Context context);
+
+    /** Indexed terms the clause names, which also count towards ranking. */
+    List<String> terms();
+
+    /** Index access a clause needs while it is being evaluated. */
+    interface Context {
+        int capacity();
+
+        PostingList postings(String term);
+
+        TermPositions positions(int doc, SearchField field);
+
+        /** Indexed keywords that contain {@code word}. */
+        List<String> keywordsContaining(String word);
+
+        AttributeIndex attributes();
+    }
+}
@@ -0,0 +1,367 @@
+package com.smartcollections.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+
+/**
+ * Recursive-descent parser turning a normalised query into ranked free text
+ * and filtering clauses. Supported syntax:
+ * <ul>
+ *   <li>{@code "exact phrase"} and {@code a NEAR/3 b}</li>
+ *   <li>{@code tag:exam}, {@code tag:"linear algebra"}, {@code category:paper}, {@code type:pdf}</li>
+ *   <li>{@code rating>=4}, {@code rating<3}, {@code rating=5}</li>
+ *   <li>{@code -draft} or {@code NOT draft}, {@code a AND b}, {@code a OR b} and parentheses</li>
+ * </ul>
+ * Operators are only recognised in upper case, so "pride and prejudice" stays
+ * plain text. Bare top-level words are ranked as before; everything else must
+ * match for a doc to be returned. A query without any of this syntax keeps its
+ * text untouched, so plain searches behave exactly as they used to.
+ */
+final class QueryParser {
+    private static final Pattern NEAR = Pattern.compile("near/(\\d{1,4})");
+    private static final Pattern RATING = Pattern.compile("rating(>=|<=|>|<|=|:)(\\d)");
+    private static final Pattern OPERATOR = Pattern.compile("(?<![^\\s(])(AND|OR|NOT)(?![^\\s)])");
+
+    private final List<Token> tokens;
+    private final Analyzer analyzer;
+    private int position;
+    private boolean structured;
+
+    private QueryParser(List<Token> tokens, Analyzer analyzer, boolean structured) {
+        this.tokens = tokens;
+        this.analyzer = analyzer;
+        this.structured = structured;
+    }
+
+    /** Trims and lower-cases a query, keeping upper-case AND, OR and NOT operators intact. */
+    static String normalise(String query) {
+        if (query == null) {
+            return "";
+        }
+        String trimmed = query.trim();
+        Matcher operators = OPERATOR.matcher(trimmed);
+        StringBuilder normalised = new StringBuilder(trimmed.length());
+        int last = 0;
+        while (operators.find()) {
+            normalised.append(trimmed.substring(last, operators.start()).toLowerCase(Locale.ROOT))
+                .append(operators.group(1));
+            last = operators.end();
+        }
+        return normalised.append(trimmed.substring(last).toLowerCase(Locale.ROOT)).toString();
+    }
+
+    /** Words are analysed with {@code analyzer} so they meet indexed terms in the same form. */
+    static ParsedQuery parse(String normalised, Analyzer analyzer) {
+        List<Token> tokens = lex(normalised);
+        boolean structured = false;
+        for (Token token : tokens) {
+            structured |= token.kind() != Kind.WORD;
+        }
+        QueryParser parser = new QueryParser(tokens, analyzer, structured);
+
+        List<String> free = new ArrayList<>();
+        List<QueryClause> clauses = new ArrayList<>();
+        while (!parser.atEnd()) {
+            if (parser.peek(Kind.RPAREN)) {
+                parser.position++;
+                continue;
+            }
+            QueryClause unit = parser.parseOr();
+            if (unit instanceof TermClause term) {
+                free.add(term.word());
+            } else if (unit != null) {
+                clauses.add(unit);
+            }
+        }
+        if (!parser.structured) {
+            return plain(normalised, analyzer);
+        }
+        return new ParsedQuery(String.join(" ", free), withoutStopWords(free, analyzer), List.copyOf(clauses));
+    }
+
+    private QueryClause parseOr() {
+        List<QueryClause> operands = new ArrayList<>();
+        addOperand(operands, parseAnd());
+        while (peek(Kind.OR)) {
+            position++;
+            addOperand(operands, parseAnd());
+        }
+        return combine(BooleanClause.Operator.OR, operands);
+    }
+
+    private QueryClause parseAnd() {
+        List<QueryClause> operands = new ArrayList<>();
+        addOperand(operands, parseUnary());
+        while (peek(Kind.AND)) {
+            position++;
+            addOperand(operands, parseUnary());
+        }
+        return combine(BooleanClause.Operator.AND, operands);
+    }
+
+    private QueryClause parseUnary() {
+        if (peek(Kind.NOT) || peek(Kind.MINUS)) {
+            position++;
+            QueryClause operand = parseUnary();
+            return operand != null ? BooleanClause.not(operand) : null;
+        }
+        return parsePrimary();
+    }
+
+    private QueryClause parsePrimary() {
+        if (atEnd() || peek(Kind.RPAREN)) {
+            return null;
+        }
+        Token token = tokens.get(position++);
+        return switch (token.kind()) {
+            case LPAREN -> {
+                List<QueryClause> group = new ArrayList<>();
+                while (!atEnd() && !peek(Kind.RPAREN)) {
+                    addOperand(group, parseOr());
+                }
+                if (!atEnd()) {
+                    position++;
+                }
+                yield combine(BooleanClause.Operator.AND, group);
+            }
+            case PHRASE -> phrase(token.text());
+            case WORD -> word(token.text());
+            // A dangling operator, e.g. while the next operand is still being typed.
+            default -> null;
+        };
+    }
+
+    private QueryClause word(String text) {
+        QueryClause field = field(text);
+        if (field != null || text.endsWith(":") && isField(text.substring(0, text.length() - 1))) {
+            structured = true;
+            return field;
+        }
+        if (position + 1 < tokens.size() && peek(Kind.WORD) && tokens.get(position + 1).kind() == Kind.WORD) {
+            Matcher near = NEAR.matcher(tokens.get(position).text());
+            String left = singleTerm(text);
+            String right = singleTerm(tokens.get(position + 1).text());
+            if (near.matches() && left != null && right != null) {
+                position += 2;
+                structured = true;
+                return new ProximityClause(left, right, Integer.parseInt(near.group(1)));
+            }
+        }
+        return new TermClause(analyzer.probe(text));
+    }
+
+    private static QueryClause field(String text) {
+        Matcher rating = RATING.matcher(text);
+        if (rating.matches()) {
+            int value = Integer.parseInt(rating.group(2));
+            return switch (rating.group(1)) {
+                case ">=" -> FieldClause.rating(value, AttributeIndex.MAX_RATING);
+                case ">" -> FieldClause.rating(value + 1, AttributeIndex.MAX_RATING);
+                case "<=" -> FieldClause.rating(AttributeIndex.MIN_RATING, value);
+                case "<" -> FieldClause.rating(AttributeIndex.MIN_RATING, value - 1);
+                default -> FieldClause.rating(value, value);
+            };
+        }
+
+        int colon = text.indexOf(':');
+        if (colon <= 0 || colon == text.length() - 1) {
+            return null;
+        }
+        String name = text.substring(0, colon);
+        String value = text.substring(colon + 1).trim();
+        return switch (name) {
+            case "tag" -> FieldClause.tag(value);
+            case "category", "cat" -> {
+                Category category = category(value);
+                yield category != null ? FieldClause.category(category)
+                    : new FieldClause("category:" + value, attributes -> new DocBitmap(0));
+            }
+            case "type" -> {
+                Item.FileType fileType = fileType(value);
+                yield fileType != null ? FieldClause.fileType(fileType)
+                    : new FieldClause("type:" + value, attributes -> new DocBitmap(0));
+            }
+            default -> null;
+        };
+    }
+
+    private static boolean isField(String name) {
+        return name.equals("tag") || name.equals("category") || name.equals("cat") || name.equals("type");
+    }
+
+    // Accepts the enum name ("lecture_notes"), that name without underscores or the display name.
+    private static Category category(String value) {
+        for (Category category : Category.values()) {
+            String name = category.name().toLowerCase(Locale.ROOT);
+            if (value.equals(name) || value.equals(name.replace("_", ""))
+                || value.equals(category.getDisplayName().toLowerCase(Locale.ROOT))) {
+                return category;
+            }
+        }
+        return null;
+    }
+
+    private static Item.FileType fileType(String value) {
+        for (Item.FileType fileType : Item.FileType.values()) {
+            if (value.equals(fileType.name().toLowerCase(Locale.ROOT))) {
+                return fileType;
+            }
+        }
+        return null;
+    }
+
+    private PhraseClause phrase(String quoted) {
+        String text = quoted.trim().replaceAll("\\s+", " ");
+        if (text.isEmpty()) {
+            return null;
+        }
+        List<String> terms = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        Analyzer.TokenStream stream = analyzer.stream(text);
+        while (stream.next()) {
+            if (stream.kept()) {
+                terms.add(stream.term());
+                offsets.add(stream.position());
+            }
+        }
+        return new PhraseClause(text, terms.toArray(String[]::new),
+            offsets.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    // A NEAR operand has to be exactly one indexed term, otherwise it stays free text.
+    private String singleTerm(String word) {
+        String term = null;
+        Analyzer.TokenStream stream = analyzer.stream(word);
+        while (stream.next()) {
+            if (stream.kept()) {
+                if (term != null) {
+                    return null;
+                }
+                term = stream.term();
+            }
+        }
+        return term;
+    }
+
+    private static void addOperand(List<QueryClause> operands, QueryClause operand) {
+        if (operand != null) {
+            operands.add(operand);
+        }
+    }
+
+    private QueryClause combine(BooleanClause.Operator operator, List<QueryClause> operands) {
+        if (operands.size() <= 1) {
+            return operands.isEmpty() ? null : operands.get(0);
+        }
+        structured = true;
+        return new BooleanClause(operator, List.copyOf(operands));
+    }
+
+    private boolean atEnd() {
+        return position >= tokens.size();
+    }
+
+    private boolean peek(Kind kind) {
+        return !atEnd() && tokens.get(position).kind() == kind;
+    }
+
+    private static ParsedQuery plain(String normalised, Analyzer analyzer) {
+        List<String> words = new ArrayList<>();
+        if (!normalised.isEmpty()) {
+            for (String word : normalised.split("\\s+")) {
+                words.add(analyzer.probe(word));
+            }
+        }
+        return new ParsedQuery(normalised, withoutStopWords(words, analyzer), List.of());
+    }
+
+    // Stop words are only searched for when they are all there is, e.g. while "the" is typed on the way to "theory".
+    private static String[] withoutStopWords(List<String> words, Analyzer analyzer) {
+        List<String> kept = new ArrayList<>(words.size());
+        for (String word : words) {
+            if (!analyzer.isStopWord(word)) {
+                kept.add(word);
+            }
+        }
+        return (kept.isEmpty() ? words : kept).toArray(String[]::new);
+    }
+
+    private static List<Token> lex(String query) {
+        List<Token> tokens = new ArrayList<>();
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(new Token(c == '(' ? Kind.LPAREN : Kind.RPAREN, String.valueOf(c)));
+                i++;
+            } else if (c == '-' && i + 1 < length && startsOperand(query.charAt(i + 1))
+                && (i == 0 || Character.isWhitespace(query.charAt(i - 1)) || query.charAt(i - 1) == '(')) {
+                tokens.add(new Token(Kind.MINUS, "-"));
+                i++;
+            } else if (c == '"') {
+                // An unterminated quote runs to the end, which is what someone still typing means.
+                int close = query.indexOf('"', i + 1);
+                int end = close < 0 ? length : close;
+                tokens.add(new Token(Kind.PHRASE, query.substring(i + 1, end)));
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < length && !Character.isWhitespace(query.charAt(i)) && "()\"".indexOf(query.charAt(i)) < 0) {
+                    i++;
+                }
+                String word = query.substring(start, i);
+                if (word.endsWith(":") && i < length && query.charAt(i) == '"') {
+                    // tag:"linear algebra" carries a quoted value.
+                    int close = query.indexOf('"', i + 1);
+                    int end = close < 0 ? length : close;
+                    word += query.substring(i + 1, end);
+                    i = end + 1;
+                }
+                tokens.add(switch (word) {
+                    case "AND" -> new Token(Kind.AND, word);
+                    case "OR" -> new Token(Kind.OR, word);
+                    case "NOT" -> new Token(Kind.NOT, word);
+                    default -> new Token(Kind.WORD, word);
+                });
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean startsOperand(char c) {
+        return !Character.isWhitespace(c) && c != '-' && c != ')';
+    }
+
+    private enum Kind {
+        WORD,
+        PHRASE,
+        LPAREN,
+        RPAREN,
+        MINUS,
+        AND,
+        OR,
+        NOT
+    }
+
+    private record Token(Kind kind, String text) {
+    }
+
+    /**
+     * {@code freeText} is ranked exactly like a plain query; {@code clauses} must
+     * all match for a doc to be returned at all.
+     */
+    record ParsedQuery(String freeText, String[] tokens, List<QueryClause> clauses) {
+        boolean isPlain() {
+            return clauses.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.smartcollections.service;
+
+import java.util.List;
+
+/**
+ * How the free-text tokens of one query are matched, and why. {@link Strategy#INDEX}
+ * resolves the posting list of every vocabulary keyword containing a token
+ * and walks them; {@link Strategy#SCAN} instead walks each doc's own terms
+ * once, which is cheaper when a short token such as "e" matches most of the
+ * vocabulary. Costs are in postings visited, with the overhead of resolving
+ * a keyword's postings in each of the index {@code segments} converted at a
+ * flat rate. Typo matches and
+ * clause terms are few and always go through the index.
+ * <p>
+ * The index statistics the choice was made from are included:
+ * {@code postingsLengthHistogram[b]} counts the keywords held by between
+ * {@code 2^b} and {@code 2^(b+1) - 1} items.
+ */
+public record QueryPlan(Strategy strategy, long indexCost, long scanCost, int candidateKeywords,
+                        long candidatePostings, int itemCount, int vocabularySize, long totalPostings,
+                        int segments, List<Long> postingsLengthHistogram) {
+    public QueryPlan {
+        postingsLengthHistogram = List.copyOf(postingsLengthHistogram);
+    }
+
+    public enum Strategy {
+        INDEX,
+        SCAN
+    }
+}
@@ -0,0 +1,24 @@
+package com.smartcollections.service;
+
+import com.smartcollections.model.Item;
+
+/**
+ * Scores search hits. {@link #prepare(IndexStatistics)} is called once per query
+ * so a ranker can hoist anything that only depends on collection statistics out
+ * of the per-posting loop. With parallel search the scorer is shared by every
+ * shard, so it must not keep mutable state between calls.
+ */
+public interface Ranker {
+    Scorer prepare(IndexStatistics statistics);
+
+    interface Scorer {
+        /** Weight of one matched keyword, computed once per keyword per query. */
+        double termWeight(String keyword, int documentFrequency, boolean exact);
+
+        /** Contribution of one posting. Called in the inner loop and must not allocate. */
+        double score(double termWeight, int doc, int fieldMask);
+
+        /** Final score once every posting for the document has been accumulated. */
+        double finalScore(double accumulated, boolean titleMatch, Item item);
+    }
+}
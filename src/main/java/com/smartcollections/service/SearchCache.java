@@ -0,0 +1,132 @@
+package com.smartcollections.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.smartcollections.model.Item;
+
+/**
+ * Bounded LRU of recent ranked results keyed by the normalised query and its
+ * matching mode. Entries are stamped with the index generation they were
+ * computed against, and a lookup under any other generation misses, so a stale
+ * result can never be returned. Concurrent searches share it without locking:
+ * recency is a tick stamped on each hit, and the least recently used entry is
+ * evicted by a scan once the bound is exceeded, which is cheap at this size.
+ * Facet counts are kept alongside under the same keys, stamps and bound, since
+ * the UI asks for them with every search.
+ */
+final class SearchCache {
+    private final int capacity;
+    private final Map<Key, Slot<Entry>> entries = new ConcurrentHashMap<>();
+    private final Map<Key, Slot<FacetEntry>> facets = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+
+    SearchCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the cached ranking for {@code query} if it was computed under
+     * {@code generation} and holds at least the first {@code window} hits.
+     */
+    Entry get(Key query, long generation, int window) {
+        Slot<Entry> slot = entries.get(query);
+        if (slot == null) {
+            return null;
+        }
+        Entry entry = slot.entry;
+        if (entry.generation() != generation) {
+            // Only drop it if it is older; a concurrent search may already have stored a newer ranking.
+            if (entry.generation() < generation) {
+                entries.remove(query, slot);
+            }
+            return null;
+        }
+        slot.lastUsed = clock.incrementAndGet();
+        return entry.covers(window) ? entry : null;
+    }
+
+    Entry put(Key query, long generation, List<Item> ranked, int totalHits) {
+        Entry entry = new Entry(generation, List.copyOf(ranked), totalHits);
+        Slot<Entry> stored = entries.compute(query, (key, previous) -> {
+            // Keep the wider of two rankings from the same generation so a small page doesn't evict a full list.
+            if (previous != null && (previous.entry.generation() > generation
+                || previous.entry.generation() == generation && previous.entry.ranked().size() > ranked.size())) {
+                return previous;
+            }
+            return new Slot<>(entry);
+        });
+        stored.lastUsed = clock.incrementAndGet();
+        if (entries.size() > capacity) {
+            evictLeastRecentlyUsed(entries);
+        }
+        return stored.entry.generation() == generation ? stored.entry : entry;
+    }
+
+    /** The facet counts cached for {@code query} under {@code generation}, or null. */
+    SearchFacets getFacets(Key query, long generation) {
+        Slot<FacetEntry> slot = facets.get(query);
+        if (slot == null) {
+            return null;
+        }
+        if (slot.entry.generation() != generation) {
+            if (slot.entry.generation() < generation) {
+                facets.remove(query, slot);
+            }
+            return null;
+        }
+        slot.lastUsed = clock.incrementAndGet();
+        return slot.entry.facets();
+    }
+
+    /** Caches complete facet counts; a newer generation's already stored are kept. */
+    void putFacets(Key query, long generation, SearchFacets counts) {
+        Slot<FacetEntry> stored = facets.compute(query, (key, previous) ->
+            previous != null && previous.entry.generation() > generation
+                ? previous : new Slot<>(new FacetEntry(generation, counts)));
+        stored.lastUsed = clock.incrementAndGet();
+        if (facets.size() > capacity) {
+            evictLeastRecentlyUsed(facets);
+        }
+    }
+
+    void clear() {
+        entries.clear();
+        facets.clear();
+    }
+
+    private static <T> void evictLeastRecentlyUsed(Map<Key, Slot<T>> slots) {
+        Map.Entry<Key, Slot<T>> eldest = null;
+        for (Map.Entry<Key, Slot<T>> candidate : slots.entrySet()) {
+            if (eldest == null || candidate.getValue().lastUsed < eldest.getValue().lastUsed) {
+                eldest = candidate;
+            }
+        }
+        if (eldest != null) {
+            slots.remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    record Key(String query, boolean fuzzy) {
+    }
+
+    record Entry(long generation, List<Item> ranked, int totalHits) {
+        boolean covers(int window) {
+            return ranked.size() >= Math.min(window, totalHits);
+        }
+    }
+
+    private record FacetEntry(long generation, SearchFacets facets) {
+    }
+
+    private static final class Slot<T> {
+        private final T entry;
+        private volatile long lastUsed;
+
+        Slot(T entry) {
+            this.entry = entry;
+        }
+    }
+}
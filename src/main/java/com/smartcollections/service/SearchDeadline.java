@@ -0,0 +1,79 @@
+package com.smartcollections.service;
+
+import java.time.Duration;
+
+/**
+ * When one search has to stop: at its time budget, when its token is
+ * cancelled, or never. Once {@link #expired()} has said yes it keeps saying
+ * yes, so every shard of a parallel search stops at the same point and the
+ * caller can tell afterwards from {@link #stopped()} that results are partial.
+ */
+final class SearchDeadline {
+    static final SearchDeadline NONE = new SearchDeadline(Long.MAX_VALUE, null, null);
+    private static final Duration UNBOUNDED = Duration.ofDays(1);
+
+    private final long deadlineNanos;
+    private final CancellationToken cancellation;
+    private final CancellationToken supersession;
+    private volatile boolean stopped;
+
+    private SearchDeadline(long deadlineNanos, CancellationToken cancellation, CancellationToken supersession) {
+        this.deadlineNanos = deadlineNanos;
+        this.cancellation = cancellation;
+        this.supersession = supersession;
+    }
+
+    static SearchDeadline of(SearchRequest request) {
+        return of(request, null);
+    }
+
+    /** Also stops when {@code supersession} is cancelled, e.g. because a newer search replaced this one. */
+    static SearchDeadline of(SearchRequest request, CancellationToken supersession) {
+        Duration budget = request.timeBudget();
+        if (budget == null && request.cancellation() == null && supersession == null) {
+            return NONE;
+        }
+        long deadline = Long.MAX_VALUE;
+        // A budget of more than a day is no budget, and would overflow the clock arithmetic besides.
+        if (budget != null && budget.compareTo(UNBOUNDED) <= 0) {
+            deadline = System.nanoTime() + budget.toNanos();
+        }
+        return new SearchDeadline(deadline, request.cancellation(), supersession);
+    }
+
+    /** Checks the clock and the token; cheap, but not free enough for every posting. */
+    boolean expired() {
+        if (stopped) {
+            return true;
+        }
+        if (this == NONE) {
+            return false;
+        }
+        if ((cancellation != null && cancellation.isCancelled())
+            || (supersession != null && supersession.isCancelled())
+            || (deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos >= 0)) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    /**
+     * Checks only the tokens, not the clock, for work that runs to completion
+     * under a time budget but should still give up once nobody wants its result.
+     */
+    boolean cancelled() {
+        if (stopped) {
+            return true;
+        }
+        if ((cancellation != null && cancellation.isCancelled())
+            || (supersession != null && supersession.isCancelled())) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    /** Whether evaluation was cut short, i.e. the results are incomplete. */
+    boolean stopped() {
+        return stopped;
+    }
+}
@@ -0,0 +1,48 @@
+package com.smartcollections.service;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.smartcollections.model.Item;
+
+/**
+ * How one query was evaluated: the plan chosen for it, what each token reached,
+ * how many postings its candidates hold, how long every phase took and why
+ * each returned item scored what it did. Produced by
+ * {@link LibraryService#explain(SearchRequest)}, which always evaluates the
+ * query in full rather than serving it from the cache. The plan is null for
+ * the empty query, which lists the library by title.
+ */
+public record SearchExplanation(String query, QueryPlan plan, List<TokenCandidates> tokens, int titleCandidates,
+                                long postingsTouched, int totalHits, Map<SearchPhase, Long> phaseNanos,
+                                List<ItemExplanation> items) {
+    public SearchExplanation {
+        tokens = List.copyOf(tokens);
+        Map<SearchPhase, Long> phases = new EnumMap<>(SearchPhase.class);
+        phases.putAll(phaseNanos);
+        phaseNanos = Collections.unmodifiableMap(phases);
+        items = List.copyOf(items);
+    }
+
+    /**
+     * One free-text token, or one term named by a phrase or proximity clause,
+     * with the vocabulary keywords it matched as a substring, those it matched
+     * within a typo or two, and the postings of all of them together.
+     */
+    public record TokenCandidates(String token, int keywords, int fuzzyKeywords, long postings) {
+    }
+
+    /**
+     * A returned item's score taken apart: what each matched keyword added and
+     * the final score once the ranker's title and item bonuses were applied.
+     */
+    public record ItemExplanation(Item item, double score, boolean titleMatch, int exactMatches,
+                                  Map<String, Double> termScores) {
+        public ItemExplanation {
+            termScores = Collections.unmodifiableMap(new LinkedHashMap<>(termScores));
+        }
+    }
+}
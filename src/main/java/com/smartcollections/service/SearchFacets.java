@@ -0,0 +1,54 @@
+package com.smartcollections.service;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+
+/**
+ * Per-category, per-tag and per-file-type counts over the results of one query.
+ * Values that do not occur in the results are absent; tags are ordered by count,
+ * then name, so the most useful refinements come first. Counts from a search
+ * that hit its time budget or was cancelled are {@link #incomplete()}: they
+ * cover only the hits found before it stopped.
+ */
+public record SearchFacets(int totalHits, Map<Category, Integer> categories, Map<String, Integer> tags,
+                           Map<Item.FileType, Integer> fileTypes, boolean incomplete) {
+    public SearchFacets {
+        Map<Category, Integer> categoryCounts = new EnumMap<>(Category.class);
+        categoryCounts.putAll(categories);
+        categories = Collections.unmodifiableMap(categoryCounts);
+        Map<Item.FileType, Integer> fileTypeCounts = new EnumMap<>(Item.FileType.class);
+        fileTypeCounts.putAll(fileTypes);
+        fileTypes = Collections.unmodifiableMap(fileTypeCounts);
+        Map<String, Integer> ordered = new LinkedHashMap<>();
+        tags.entrySet().stream()
+            .sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+            .forEach(entry -> ordered.put(entry.getKey(), entry.getValue()));
+        tags = Collections.unmodifiableMap(ordered);
+    }
+
+    public SearchFacets(int totalHits, Map<Category, Integer> categories, Map<String, Integer> tags,
+                        Map<Item.FileType, Integer> fileTypes) {
+        this(totalHits, categories, tags, fileTypes, false);
+    }
+
+    SearchFacets asIncomplete() {
+        return new SearchFacets(totalHits, categories, tags, fileTypes, true);
+    }
+
+    public int categoryCount(Category category) {
+        return categories.getOrDefault(category, 0);
+    }
+
+    public int tagCount(String tag) {
+        return tags.getOrDefault(tag, 0);
+    }
+
+    public int fileTypeCount(Item.FileType fileType) {
+        return fileTypes.getOrDefault(fileType, 0);
+    }
+}
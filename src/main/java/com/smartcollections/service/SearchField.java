@@ -0,0 +1,16 @@
+package com.smartcollections.service;
+
+/**
+ * Fields an indexed keyword can come from. Postings record the fields as a bit
+ * mask so rankers can weigh a title hit differently from a tag or file name hit.
+ */
+public enum SearchField {
+    TITLE,
+    TAGS,
+    FILE_NAME,
+    CONTENT;
+
+    public int mask() {
+        return 1 << ordinal();
+    }
+}
@@ -0,0 +1,26 @@
+package com.smartcollections.service;
+
+import java.util.List;
+
+import com.smartcollections.model.Item;
+
+/**
+ * One page of ranked search results together with the total number of hits,
+ * so callers can render a screen of rows without materialising every match.
+ * An {@code incomplete} page was cut short by its time budget or cancellation:
+ * its items are genuine hits ranked among themselves, but better ones may be
+ * missing and {@code totalHits} only counts what was scored.
+ */
+public record SearchPage(List<Item> items, int totalHits, int offset, int limit, boolean incomplete) {
+    public SearchPage {
+        items = List.copyOf(items);
+    }
+
+    public SearchPage(List<Item> items, int totalHits, int offset, int limit) {
+        this(items, totalHits, offset, limit, false);
+    }
+
+    public boolean hasMore() {
+        return offset + items.size() < totalHits;
+    }
+}
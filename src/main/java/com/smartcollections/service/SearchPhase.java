@@ -0,0 +1,18 @@
+package com.smartcollections.service;
+
+/**
+ * The stages a search passes through, in order. Each is timed separately so a
+ * slow query can be traced to the stage that made it slow.
+ */
+public enum SearchPhase {
+    /** Parsing the query into free-text tokens and clauses. */
+    TOKENISE,
+    /** Finding the keywords, typo matches and titles each token reaches, and evaluating clauses. */
+    CANDIDATE_LOOKUP,
+    /** Walking the postings of every candidate keyword and accumulating scores. */
+    SCORING,
+    /** Picking the best hits in a bounded heap. */
+    RANKING,
+    /** Turning the ranked hits into the items and pages handed back to the caller. */
+    MATERIALISATION
+}
@@ -0,0 +1,50 @@
+package com.smartcollections.service;
+
+import java.time.Duration;
+
+/**
+ * Options for one search call. Start from {@link #of(String)} and narrow it with
+ * the {@code with}-style methods; the record itself is immutable.
+ */
+public record SearchRequest(String query, int offset, int limit, boolean fuzzy, Duration timeBudget,
+                            CancellationToken cancellation) {
+    public SearchRequest {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative.");
+        }
+        if (timeBudget != null && timeBudget.isNegative()) {
+            throw new IllegalArgumentException("Time budget must not be negative.");
+        }
+    }
+
+    public static SearchRequest of(String query) {
+        return new SearchRequest(query, 0, Integer.MAX_VALUE, false, null, null);
+    }
+
+    public SearchRequest page(int offset, int limit) {
+        return new SearchRequest(query, offset, limit, fuzzy, timeBudget, cancellation);
+    }
+
+    /** Also match vocabulary terms within one or two typos of each query token, at a lower weight. */
+    public SearchRequest fuzzy(boolean fuzzy) {
+        return new SearchRequest(query, offset, limit, fuzzy, timeBudget, cancellation);
+    }
+
+    /**
+     * Stop evaluating once {@code timeBudget} has passed and return the best of
+     * what was scored by then, marked {@link SearchPage#incomplete()}. Null means
+     * no limit.
+     */
+    public SearchRequest timeBudget(Duration timeBudget) {
+        return new SearchRequest(query, offset, limit, fuzzy, timeBudget, cancellation);
+    }
+
+    /** Stop evaluating, as for an exhausted time budget, once {@code cancellation} is cancelled. */
+    public SearchRequest cancellation(CancellationToken cancellation) {
+        return new SearchRequest(query, offset, limit, fuzzy, timeBudget, cancellation);
+    }
+
+    int window() {
+        return (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+    }
+}
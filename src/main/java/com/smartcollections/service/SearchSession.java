@@ -0,0 +1,107 @@
+package com.smartcollections.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.smartcollections.model.Item;
+
+/**
+ * Search-as-you-type state for one input field. Each {@link #refine(String)}
+ * remembers the keyword and title candidates it resolved, so typing
+ * "lec" -> "lect" -> "lectu" narrows the previous candidates rather than
+ * looking every token up in the full index again. Any mutation of the library
+ * invalidates the remembered candidates and the next query is evaluated in full.
+ * <p>
+ * Every refinement supersedes the one before it: starting one cancels any
+ * refinement still running on another thread, e.g. the full evaluation a UI
+ * kicked off after a time-budgeted one came back incomplete. Refinements never
+ * wait for each other; only reading and replacing the remembered candidates is
+ * guarded, and a superseded refinement does not replace them.
+ */
+public final class SearchSession {
+    private final LibraryService libraryService;
+    private final AtomicReference<CancellationToken> inFlight = new AtomicReference<>();
+    // Guarded by this.
+    private LibraryService.QueryMatches anchor;
+
+    SearchSession(LibraryService libraryService) {
+        this.libraryService = libraryService;
+    }
+
+    public List<Item> refine(String query) {
+        return new ArrayList<>(refine(SearchRequest.of(query)).items());
+    }
+
+    /**
+     * Refines to {@code request}, honouring its time budget and cancellation
+     * token as {@link LibraryService#search(SearchRequest)} does. An incomplete
+     * evaluation is not remembered, so the next refinement never narrows
+     * candidates that were only partly resolved.
+     */
+    public SearchPage refine(SearchRequest request) {
+        CancellationToken token = new CancellationToken();
+        CancellationToken superseded = inFlight.getAndSet(token);
+        if (superseded != null) {
+            superseded.cancel();
+        }
+        try {
+            return evaluate(request, token);
+        } finally {
+            inFlight.compareAndSet(token, null);
+        }
+    }
+
+    /** Cancels the refinement in flight, if any. */
+    public void cancel() {
+        CancellationToken token = inFlight.getAndSet(null);
+        if (token != null) {
+            token.cancel();
+        }
+    }
+
+    public synchronized void reset() {
+        anchor = null;
+    }
+
+    private SearchPage evaluate(SearchRequest request, CancellationToken supersession) {
+        String normalised = LibraryService.normaliseQuery(request.query());
+        if (normalised.isEmpty()) {
+            remember(null, supersession);
+            return libraryService.search(request);
+        }
+
+        // Candidates only carry over within one published index copy.
+        LibraryIndex index = libraryService.index();
+        LibraryService.QueryMatches previous;
+        synchronized (this) {
+            previous = anchor;
+        }
+        if (previous != null && previous.index().generation() != index.generation()) {
+            previous = null;
+        }
+
+        int window = request.window();
+        SearchCache.Entry cached = libraryService.cachedRanking(index, normalised, request.fuzzy(), window);
+        if (cached != null) {
+            // Keep the current anchor: its candidates still cover any query that extends it.
+            return libraryService.toPage(cached, request, false);
+        }
+
+        SearchDeadline deadline = SearchDeadline.of(request, supersession);
+        LibraryService.QueryMatches matches =
+            libraryService.matchQuery(index, normalised, previous, request.fuzzy(), deadline);
+        SearchCache.Entry ranked = libraryService.rankMatches(matches, window, deadline);
+        if (!deadline.stopped()) {
+            remember(matches, supersession);
+        }
+        return libraryService.toPage(ranked, request, deadline.stopped());
+    }
+
+    // Only the latest refinement may replace the anchor, so a superseded one finishing late cannot clobber it.
+    private synchronized void remember(LibraryService.QueryMatches matches, CancellationToken refinement) {
+        if (inFlight.get() == refinement) {
+            anchor = matches;
+        }
+    }
+}
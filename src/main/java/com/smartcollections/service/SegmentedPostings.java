@@ -0,0 +1,484 @@
+package com.smartcollections.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keyword postings kept LSM-style. New and re-indexed docs go into a small
+ * mutable buffer; once the buffer holds {@link #BUFFER_DOCS} docs or
+ * {@link #BUFFER_POSTINGS} postings it is frozen into an {@link IndexSegment}.
+ * A doc's postings always live in exactly one place, so removing or
+ * re-indexing a doc held by a segment only sets its tombstone there. Segments
+ * are folded together by {@link Merge}, run off the write path under a tiered
+ * policy: once {@link #MERGE_FACTOR} segments of a similar size pile up they
+ * become one segment of the next tier, and tombstoned docs are purged on the
+ * way.
+ * <p>
+ * {@link #snapshot()} hands readers the frozen segments as they are. The
+ * tombstones are {@link PersistentBitmap}s and the buffer is a
+ * {@link PersistentMap} of posting lists, both shared with the snapshot:
+ * afterwards the writer copies a tombstone block, or a buffered term's list,
+ * the first time it changes one. Publishing therefore costs the number of
+ * segments, not the size of the buffer or of the index.
+ */
+final class SegmentedPostings {
+    static final int BUFFER_DOCS = 1_024;
+    static final int BUFFER_POSTINGS = 65_536;
+    static final int MERGE_FACTOR = 4;
+
+    /**
+     * Told when a term gains its first live doc or loses its last one, and of
+     * every change to a live term's doc count in between.
+     */
+    interface VocabularyListener {
+        void added(String term);
+
+        void removed(String term);
+
+        void counted(String term, int docs);
+    }
+
+    private final VocabularyListener listener;
+    // Read side: what postings(term) consults.
+    private final List<View> views;
+    private PersistentMap<String, PostingList> buffer;
+    // Write side, only present on the writer's instance. Tombstones and buffer entries made under
+    // this token, and the lists in ownedLists, are not shared with any snapshot and change in place.
+    private Object edit;
+    private final Set<PostingList> ownedLists;
+    private final List<Segment> segments;
+    private DocBitmap bufferDocs;
+    private final List<Segment> docLocation;
+    private final List<String[]> docTerms;
+    private final Map<String, Integer> termDocs;
+    private int bufferPostings;
+    private int bufferDocCount;
+
+    SegmentedPostings(VocabularyListener listener) {
+        this.listener = listener;
+        views = List.of();
+        buffer = PersistentMap.empty();
+        edit = new Object();
+        ownedLists = Collections.newSetFromMap(new IdentityHashMap<>());
+        segments = new ArrayList<>();
+        bufferDocs = new DocBitmap(0);
+        docLocation = new ArrayList<>();
+        docTerms = new ArrayList<>();
+        termDocs = new HashMap<>();
+    }
+
+    private SegmentedPostings(List<View> views, PersistentMap<String, PostingList> buffer) {
+        this.listener = null;
+        this.views = views;
+        this.buffer = buffer;
+        edit = null;
+        ownedLists = null;
+        segments = null;
+        bufferDocs = null;
+        docLocation = null;
+        docTerms = null;
+        termDocs = null;
+    }
+
+    /** A read-only copy for a published index, sharing the segments, their tombstones and the buffer. */
+    SegmentedPostings snapshot() {
+        List<View> current = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            current.add(new View(segment.data, segment.deleted));
+        }
+        SegmentedPostings snapshot = new SegmentedPostings(current, buffer);
+        edit = new Object();
+        ownedLists.clear();
+        return snapshot;
+    }
+
+    /**
+     * Live postings of {@code term} across every segment and the buffer, or null
+     * when no live doc has it.
+     */
+    PostingList postings(String term) {
+        List<PostingList> lists = new ArrayList<>();
+        List<PersistentBitmap> deleted = new ArrayList<>();
+        if (segments == null) {
+            for (View view : views) {
+                collect(view.segment().postings(term), view.deleted(), lists, deleted);
+            }
+        } else {
+            for (Segment segment : segments) {
+                collect(segment.data.postings(term), segment.deleted, lists, deleted);
+            }
+        }
+        collect(buffer.get(term), null, lists, deleted);
+        if (lists.isEmpty()) {
+            return null;
+        }
+        PostingList live = PostingList.union(lists, deleted);
+        return live.isEmpty() ? null : live;
+    }
+
+    private static void collect(PostingList list, PersistentBitmap mask, List<PostingList> lists,
+                                List<PersistentBitmap> deleted) {
+        if (list != null) {
+            lists.add(list);
+            deleted.add(mask);
+        }
+    }
+
+    /**
+     * Replaces every posting of {@code doc} with {@code terms}, each carrying the
+     * field mask at the same index. Only terms the doc gains or loses change
+     * their doc count, so re-putting a doc after e.g. a tag edit leaves the rest
+     * of its vocabulary untouched.
+     */
+    void put(int doc, String[] terms, byte[] fields) {
+        String[] previous = detach(doc);
+        Set<String> dropped = previous != null ? new HashSet<>(Arrays.asList(previous)) : Set.of();
+        for (int i = 0; i < terms.length; i++) {
+            bufferList(terms[i]).add(doc, fields[i]);
+            if (previous == null || !dropped.remove(terms[i])) {
+                int docs = termDocs.merge(terms[i], 1, Integer::sum);
+                if (docs == 1) {
+                    listener.added(terms[i]);
+                }
+                listener.counted(terms[i], docs);
+            }
+        }
+        for (String term : dropped) {
+            uncount(term, 1);
+        }
+        while (docTerms.size() <= doc) {
+            docTerms.add(null);
+            docLocation.add(null);
+        }
+        docTerms.set(doc, terms);
+        bufferDocs.set(doc);
+        bufferPostings += terms.length;
+        bufferDocCount++;
+        if (bufferDocCount >= BUFFER_DOCS || bufferPostings >= BUFFER_POSTINGS) {
+            seal();
+        }
+    }
+
+    /**
+     * Writes a batch of docs, given in ascending order, each replacing its
+     * postings as {@link #put} does. Postings are gathered per term in doc order
+     * and every term's doc count moves once for the whole batch, so the
+     * vocabulary hears about each term once rather than once per doc. A batch of
+     * at least {@link #BUFFER_DOCS} docs is frozen into a segment of its own
+     * without passing through the buffer.
+     */
+    void putAll(int[] docs, String[][] terms, byte[][] fields) {
+        deleteAll(docs);
+        Map<String, PostingList> batch = new HashMap<>();
+        int postingCount = 0;
+        for (int d = 0; d < docs.length; d++) {
+            for (int i = 0; i < terms[d].length; i++) {
+                // Docs arrive in order, so every add appends.
+                batch.computeIfAbsent(terms[d][i], t -> new PostingList()).add(docs[d], fields[d][i]);
+            }
+            postingCount += terms[d].length;
+            while (docTerms.size() <= docs[d]) {
+                docTerms.add(null);
+                docLocation.add(null);
+            }
+            docTerms.set(docs[d], terms[d]);
+        }
+        for (Map.Entry<String, PostingList> entry : batch.entrySet()) {
+            int added = entry.getValue().size();
+            int total = termDocs.merge(entry.getKey(), added, Integer::sum);
+            if (total == added) {
+                listener.added(entry.getKey());
+            }
+            listener.counted(entry.getKey(), total);
+        }
+
+        if (docs.length >= BUFFER_DOCS) {
+            Segment segment = new Segment(IndexSegment.of(batch, docs));
+            for (int doc : docs) {
+                docLocation.set(doc, segment);
+            }
+            segments.add(segment);
+            return;
+        }
+        for (Map.Entry<String, PostingList> entry : batch.entrySet()) {
+            if (!buffer.containsKey(entry.getKey())) {
+                buffer = buffer.put(entry.getKey(), entry.getValue(), edit);
+                ownedLists.add(entry.getValue());
+                continue;
+            }
+            PostingList list = bufferList(entry.getKey());
+            PostingList additions = entry.getValue();
+            for (int i = 0; i < additions.size(); i++) {
+                list.add(additions.docAt(i), additions.fieldsAt(i));
+            }
+        }
+        for (int doc : docs) {
+            bufferDocs.set(doc);
+        }
+        bufferPostings += postingCount;
+        bufferDocCount += docs.length;
+        if (bufferDocCount >= BUFFER_DOCS || bufferPostings >= BUFFER_POSTINGS) {
+            seal();
+        }
+    }
+
+    void delete(int doc) {
+        String[] terms = detach(doc);
+        if (terms != null) {
+            for (String term : terms) {
+                uncount(term, 1);
+            }
+        }
+    }
+
+    /** Drops every posting of {@code docs}, moving each affected term's doc count once. */
+    void deleteAll(int[] docs) {
+        Map<String, Integer> removed = new HashMap<>();
+        for (int doc : docs) {
+            String[] terms = detach(doc);
+            if (terms != null) {
+                for (String term : terms) {
+                    removed.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+        removed.forEach(this::uncount);
+    }
+
+    // Takes the doc's postings out of its segment or the buffer and returns its terms, still counted.
+    private String[] detach(int doc) {
+        String[] terms = doc < docTerms.size() ? docTerms.set(doc, null) : null;
+        if (terms == null) {
+            return null;
+        }
+        Segment location = docLocation.set(doc, null);
+        if (location != null) {
+            location.delete(doc, edit);
+        } else {
+            for (String term : terms) {
+                PostingList list = buffer.get(term);
+                if (list != null && list.contains(doc)) {
+                    bufferList(term).remove(doc);
+                    bufferPostings--;
+                    if (buffer.get(term).isEmpty()) {
+                        buffer = buffer.remove(term, edit);
+                    }
+                }
+            }
+            bufferDocs.clear(doc);
+            bufferDocCount--;
+        }
+        return terms;
+    }
+
+    // The buffered list of term, created or copied first if a snapshot may share it.
+    private PostingList bufferList(String term) {
+        PostingList list = buffer.get(term);
+        if (list == null || !ownedLists.contains(list)) {
+            list = list == null ? new PostingList() : list.copy();
+            buffer = buffer.put(term, list, edit);
+            ownedLists.add(list);
+        }
+        return list;
+    }
+
+    private void uncount(String term, int removed) {
+        int docs = termDocs.merge(term, -removed, Integer::sum);
+        if (docs == 0) {
+            termDocs.remove(term);
+            listener.removed(term);
+        } else {
+            listener.counted(term, docs);
+        }
+    }
+
+    void clear() {
+        segments.clear();
+        buffer = PersistentMap.empty();
+        ownedLists.clear();
+        bufferDocs = new DocBitmap(0);
+        docLocation.clear();
+        docTerms.clear();
+        termDocs.clear();
+        bufferPostings = 0;
+        bufferDocCount = 0;
+    }
+
+    /** How many places a term's postings may be spread over: the segments, plus the buffer. */
+    int segmentCount() {
+        return (segments == null ? views.size() : segments.size()) + (buffer.isEmpty() ? 0 : 1);
+    }
+
+    /** Whether {@code other} reads the very same frozen segments, in the same order. */
+    boolean sharesSegments(SegmentedPostings other) {
+        return frozen().equals(other.frozen());
+    }
+
+    // IndexSegment keeps identity equality, so equal lists hold the same instances.
+    private List<IndexSegment> frozen() {
+        List<IndexSegment> frozen = new ArrayList<>();
+        if (segments == null) {
+            views.forEach(view -> frozen.add(view.segment()));
+        } else {
+            segments.forEach(segment -> frozen.add(segment.data));
+        }
+        return frozen;
+    }
+
+    boolean mergeDue() {
+        return chooseMerge() != null;
+    }
+
+    /**
+     * Plans the next merge, or returns null when none is due. The merge takes
+     * the sources' tombstones as they are now; the writer moves to a new edit
+     * token so that later deletes copy them rather than change them under it.
+     */
+    Merge planMerge() {
+        List<Segment> chosen = chooseMerge();
+        if (chosen == null) {
+            return null;
+        }
+        edit = new Object();
+        ownedLists.clear();
+        return new Merge(chosen);
+    }
+
+    // The MERGE_FACTOR oldest segments of the lowest tier that has that many, else one that is mostly tombstones.
+    private List<Segment> chooseMerge() {
+        Map<Integer, List<Segment>> tiers = new HashMap<>();
+        for (Segment segment : segments) {
+            tiers.computeIfAbsent(tier(segment.data.postingCount()), t -> new ArrayList<>()).add(segment);
+        }
+        List<Segment> chosen = null;
+        int lowest = Integer.MAX_VALUE;
+        for (Map.Entry<Integer, List<Segment>> tier : tiers.entrySet()) {
+            if (tier.getValue().size() >= MERGE_FACTOR && tier.getKey() < lowest) {
+                lowest = tier.getKey();
+                chosen = tier.getValue().subList(0, MERGE_FACTOR);
+            }
+        }
+        if (chosen == null) {
+            for (Segment segment : segments) {
+                if (segment.deletedCount * 2 > segment.data.docCount()) {
+                    chosen = List.of(segment);
+                    break;
+                }
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Swaps the merge result in for its sources. Docs deleted or re-indexed
+     * while the merge ran are tombstoned in the result. Returns false and
+     * changes nothing when a source is gone, e.g. because the index was cleared.
+     */
+    boolean commit(Merge merge) {
+        for (Segment source : merge.sources) {
+            if (!segments.contains(source)) {
+                return false;
+            }
+        }
+        Segment merged = new Segment(merge.result);
+        for (int doc : merge.result.docs()) {
+            Segment location = docLocation.get(doc);
+            if (location != null && merge.sources.contains(location)) {
+                docLocation.set(doc, merged);
+            } else {
+                merged.delete(doc, edit);
+            }
+        }
+        int position = segments.indexOf(merge.sources.get(0));
+        segments.removeAll(merge.sources);
+        segments.add(Math.min(position, segments.size()), merged);
+        return true;
+    }
+
+    private void seal() {
+        if (bufferDocCount == 0) {
+            return;
+        }
+        int[] docs = new int[bufferDocCount];
+        int count = 0;
+        for (int doc = bufferDocs.nextSetBit(0); doc >= 0; doc = bufferDocs.nextSetBit(doc + 1)) {
+            docs[count++] = doc;
+        }
+        Map<String, PostingList> lists = new HashMap<>();
+        buffer.forEach(lists::put);
+        Segment segment = new Segment(IndexSegment.of(lists, docs));
+        for (int doc : docs) {
+            docLocation.set(doc, segment);
+        }
+        segments.add(segment);
+        buffer = PersistentMap.empty();
+        ownedLists.clear();
+        bufferDocs = new DocBitmap(0);
+        bufferPostings = 0;
+        bufferDocCount = 0;
+    }
+
+    private static int tier(int postings) {
+        int tier = 0;
+        long bound = (long) BUFFER_POSTINGS * MERGE_FACTOR;
+        while (postings >= bound) {
+            tier++;
+            bound *= MERGE_FACTOR;
+        }
+        return tier;
+    }
+
+    /** A segment as readers see it; {@code deleted} belongs to an edit the writer has left, so never changes. */
+    private record View(IndexSegment segment, PersistentBitmap deleted) {
+    }
+
+    // Writer-side holder: the frozen data plus tombstones that grow as docs are removed.
+    private static final class Segment {
+        private final IndexSegment data;
+        private PersistentBitmap deleted;
+        private int deletedCount;
+
+        Segment(IndexSegment data) {
+            this.data = data;
+        }
+
+        void delete(int doc, Object edit) {
+            PersistentBitmap current = deleted != null ? deleted : PersistentBitmap.empty();
+            if (!current.get(doc)) {
+                deleted = current.set(doc, edit);
+                deletedCount++;
+            }
+        }
+    }
+
+    /**
+     * One planned merge. {@link #run()} does the work without touching the
+     * index and may be called on any thread; {@link SegmentedPostings#commit}
+     * then installs the result under the writer's lock.
+     */
+    static final class Merge {
+        private final List<Segment> sources;
+        private final List<IndexSegment> inputs = new ArrayList<>();
+        private final List<PersistentBitmap> deleted = new ArrayList<>();
+        private IndexSegment result;
+
+        private Merge(List<Segment> sources) {
+            this.sources = List.copyOf(sources);
+            for (Segment source : this.sources) {
+                inputs.add(source.data);
+                deleted.add(source.deleted != null ? source.deleted : PersistentBitmap.empty());
+            }
+        }
+
+        void run() {
+            result = IndexSegment.merge(inputs, deleted);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.smartcollections.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Trigram postings over a set of lower-cased strings. A substring probe only
+ * verifies the entries that share its rarest trigram instead of scanning every
+ * entry, while {@link String#contains} on the survivors keeps the results
+ * identical to a linear scan.
+ * <p>
+ * Texts and grams live in {@link PersistentMap}s, so a {@link #snapshot()}
+ * shares them with the writer and a later write copies only the paths to the
+ * texts and gram key sets it changes.
+ */
+final class SubstringIndex<K> {
+    private static final int GRAM_LENGTH = 3;
+    // Entries verified between two calls to a find's stop condition.
+    private static final int STOP_CHECK_INTERVAL = 1_024;
+
+    // Maps made under this token may be changed in place; null in a snapshot, which is never written.
+    private Object edit;
+    private PersistentMap<K, String> texts;
+    private PersistentMap<String, PersistentMap<K, Boolean>> grams;
+
+    SubstringIndex() {
+        edit = new Object();
+        texts = PersistentMap.empty();
+        grams = PersistentMap.empty();
+    }
+
+    private SubstringIndex(SubstringIndex<K> source) {
+        edit = null;
+        texts = source.texts;
+        grams = source.grams;
+    }
+
+    void add(K key, String text) {
+        if (key == null || text == null) {
+            return;
+        }
+        remove(key);
+        texts = texts.put(key, text, edit);
+        for (String gram : gramsOf(text)) {
+            PersistentMap<K, Boolean> keys = grams.get(gram);
+            keys = (keys != null ? keys : PersistentMap.<K, Boolean>empty()).put(key, Boolean.TRUE, edit);
+            grams = grams.put(gram, keys, edit);
+        }
+    }
+
+    void remove(K key) {
+        String text = texts.get(key);
+        if (text == null) {
+            return;
+        }
+        texts = texts.remove(key, edit);
+        for (String gram : gramsOf(text)) {
+            PersistentMap<K, Boolean> keys = grams.get(gram);
+            if (keys != null) {
+                keys = keys.remove(key, edit);
+                grams = keys.isEmpty() ? grams.remove(gram, edit) : grams.put(gram, keys, edit);
+            }
+        }
+    }
+
+    /**
+     * Returns every key whose text contains {@code needle}. Probes shorter than a
+     * trigram have no postings to narrow them down and fall back to a scan.
+     */
+    List<K> find(String needle) {
+        return find(needle, () -> false);
+    }
+
+    /**
+     * Like {@link #find(String)}, but checks {@code stop} every so often while
+     * verifying entries and, once it says yes, returns the keys found so far.
+     */
+    List<K> find(String needle, BooleanSupplier stop) {
+        List<K> matches = new ArrayList<>();
+        if (needle == null || needle.isEmpty()) {
+            return matches;
+        }
+        int[] verified = new int[1];
+        if (needle.length() < GRAM_LENGTH) {
+            texts.forEachWhile((key, text) -> {
+                if (text.contains(needle)) {
+                    matches.add(key);
+                }
+                return ++verified[0] % STOP_CHECK_INTERVAL != 0 || !stop.getAsBoolean();
+            });
+            return matches;
+        }
+
+        PersistentMap<K, Boolean> rarest = null;
+        for (int i = 0; i + GRAM_LENGTH <= needle.length(); i++) {
+            PersistentMap<K, Boolean> keys = grams.get(needle.substring(i, i + GRAM_LENGTH));
+            if (keys == null) {
+                return matches;
+            }
+            if (rarest == null || keys.size() < rarest.size()) {
+                rarest = keys;
+            }
+        }
+        rarest.forEachWhile((key, present) -> {
+            if (texts.get(key).contains(needle)) {
+                matches.add(key);
+            }
+            return ++verified[0] % STOP_CHECK_INTERVAL != 0 || !stop.getAsBoolean();
+        });
+        return matches;
+    }
+
+    String textOf(K key) {
+        return texts.get(key);
+    }
+
+    int size() {
+        return texts.size();
+    }
+
+    void forEachKey(Consumer<? super K> action) {
+        texts.forEach((key, text) -> action.accept(key));
+    }
+
+    void clear() {
+        texts = PersistentMap.empty();
+        grams = PersistentMap.empty();
+    }
+
+    /**
+     * A read-only index sharing this one's maps. This index moves to a new edit
+     * token, so nothing the snapshot can reach is changed afterwards.
+     */
+    SubstringIndex<K> snapshot() {
+        SubstringIndex<K> snapshot = new SubstringIndex<>(this);
+        edit = new Object();
+        return snapshot;
+    }
+
+    private static Set<String> gramsOf(String text) {
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            result.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return result;
+    }
+}
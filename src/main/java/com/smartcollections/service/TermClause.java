@@ -0,0 +1,29 @@
+package com.smartcollections.service;
+
+import java.util.List;
+
+/**
+ * A word used inside a boolean expression, e.g. {@code exam AND notes} or
+ * {@code -draft}. It admits every doc with a keyword containing the word, the
+ * same substring rule free-text tokens are ranked by.
+ */
+record TermClause(String word) implements QueryClause {
+    @Override
+    public DocBitmap matches(Context context) {
+        DocBitmap matches = new DocBitmap(context.capacity());
+        for (String keyword : context.keywordsContaining(word)) {
+            PostingList postings = context.postings(keyword);
+            if (postings != null) {
+                for (int i = 0; i < postings.size(); i++) {
+                    matches.set(postings.docAt(i));
+                }
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public List<String> terms() {
+        return List.of(word);
+    }
+}
@@ -0,0 +1,39 @@
+package com.smartcollections.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One canonical {@link String} per indexed term. Analysis makes a fresh string
+ * for every word of every item; interning them here means the per-doc keyword
+ * and content arrays, positions and postings of thousands of items all point
+ * at the same instance. Terms leave the dictionary when their last doc does.
+ * Writer side only.
+ */
+final class TermDictionary {
+    private final Map<String, String> terms = new HashMap<>();
+
+    String intern(String term) {
+        String canonical = terms.putIfAbsent(term, term);
+        return canonical != null ? canonical : term;
+    }
+
+    String[] intern(String[] terms) {
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = intern(terms[i]);
+        }
+        return terms;
+    }
+
+    void remove(String term) {
+        terms.remove(term);
+    }
+
+    void clear() {
+        terms.clear();
+    }
+
+    int size() {
+        return terms.size();
+    }
+}
@@ -0,0 +1,119 @@
+package com.smartcollections.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Word positions of every indexed term in one field of one document, as sorted
+ * terms with a parallel array of ascending positions. Positions count every
+ * word of the text, including the short ones that are not indexed, so "intro
+ * to java" keeps "intro" and "java" two positions apart.
+ */
+final class TermPositions {
+    private static final String[] NO_TERMS = new String[0];
+    private static final int[][] NO_POSITIONS = new int[0][];
+    static final TermPositions EMPTY = new TermPositions(NO_TERMS, NO_POSITIONS);
+
+    private final String[] terms;
+    private final int[][] positions;
+
+    private TermPositions(String[] terms, int[][] positions) {
+        this.terms = terms;
+        this.positions = positions;
+    }
+
+    /** Records positions of the terms {@code analyzer} keeps among the first {@code maxWords} words of {@code text}. */
+    static TermPositions of(String text, int maxWords, Analyzer analyzer) {
+        if (text == null || text.isBlank()) {
+            return EMPTY;
+        }
+        // Scanning stops at maxWords, so a long document is never split in full.
+        Map<String, List<Integer>> byTerm = new HashMap<>();
+        Analyzer.TokenStream stream = analyzer.stream(text);
+        while (stream.next() && stream.position() < maxWords) {
+            if (stream.kept()) {
+                byTerm.computeIfAbsent(stream.term(), w -> new ArrayList<>()).add(stream.position());
+            }
+        }
+        if (byTerm.isEmpty()) {
+            return EMPTY;
+        }
+
+        String[] terms = byTerm.keySet().toArray(String[]::new);
+        Arrays.sort(terms);
+        int[][] positions = new int[terms.length][];
+        for (int t = 0; t < terms.length; t++) {
+            positions[t] = byTerm.get(terms[t]).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new TermPositions(terms, positions);
+    }
+
+    /** Swaps the terms for their canonical instances. Only before the positions are shared. */
+    TermPositions intern(TermDictionary dictionary) {
+        dictionary.intern(terms);
+        return this;
+    }
+
+    /** Ascending positions of {@code term}, or null when the field does not contain it. */
+    int[] positions(String term) {
+        int index = Arrays.binarySearch(terms, term);
+        return index >= 0 ? positions[index] : null;
+    }
+
+    Set<String> terms() {
+        return new LinkedHashSet<>(Arrays.asList(terms));
+    }
+
+    /**
+     * True when every {@code phrase[i]} occurs at {@code offsets[i]} relative to
+     * some occurrence of {@code phrase[0]}. Candidates start from the first term's
+     * positions and each later term is checked by binary search.
+     */
+    boolean containsPhrase(String[] phrase, int[] offsets) {
+        int[][] lists = new int[phrase.length][];
+        for (int i = 0; i < phrase.length; i++) {
+            lists[i] = positions(phrase[i]);
+            if (lists[i] == null) {
+                return false;
+            }
+        }
+        for (int start : lists[0]) {
+            boolean matched = true;
+            for (int i = 1; i < phrase.length && matched; i++) {
+                matched = Arrays.binarySearch(lists[i], start + offsets[i] - offsets[0]) >= 0;
+            }
+            if (matched) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** True when {@code left} and {@code right} occur within {@code distance} words, in either order. */
+    boolean near(String left, String right, int distance) {
+        int[] a = positions(left);
+        int[] b = positions(right);
+        if (a == null || b == null) {
+            return false;
+        }
+        // Both lists are ascending, so a merge walk finds the closest pair.
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] != b[j] && Math.abs(a[i] - b[j]) <= distance) {
+                return true;
+            }
+            if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+}
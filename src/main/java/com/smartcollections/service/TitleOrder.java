@@ -0,0 +1,241 @@
+package com.smartcollections.service;
+
+import java.text.Collator;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Docs in title order, kept sorted as items come and go. Each title's
+ * {@link java.text.CollationKey} bytes are computed once when the item is
+ * indexed, with the item id breaking ties, so an add, edit or delete is a
+ * tree update and listing by title is an in-order walk rather than a sort per
+ * keystroke. Titles compare case-insensitively in the default locale's
+ * collation.
+ * <p>
+ * The tree is a treap whose nodes belong to the edit token they were made
+ * under. A {@link #snapshot()} shares them with the writer, and a later put or
+ * remove copies only the nodes on its search path.
+ */
+final class TitleOrder {
+    private final Collator collator;
+    // Nodes made under this token may be changed in place; null in a snapshot, which is never written.
+    private Object edit;
+    private Node root;
+    private int size;
+    // Key of each doc, so removal finds its tree entry without recomputing it.
+    private PersistentVector<Key> keys;
+
+    TitleOrder() {
+        collator = Collator.getInstance();
+        collator.setStrength(Collator.SECONDARY);
+        edit = new Object();
+        keys = PersistentVector.empty();
+    }
+
+    private TitleOrder(TitleOrder source) {
+        // Only the writer builds keys, so the snapshot never uses the collator.
+        collator = null;
+        edit = null;
+        root = source.root;
+        size = source.size;
+        keys = source.keys;
+    }
+
+    /**
+     * A read-only order sharing this one's nodes. This order moves to a new
+     * edit token, so nothing the snapshot can reach is changed afterwards.
+     */
+    TitleOrder snapshot() {
+        TitleOrder snapshot = new TitleOrder(this);
+        edit = new Object();
+        return snapshot;
+    }
+
+    void put(int doc, String title, String id) {
+        remove(doc);
+        Key key = new Key(collator.getCollationKey(title != null ? title : "").toByteArray(), id);
+        while (keys.size() <= doc) {
+            keys = keys.add(null, edit);
+        }
+        keys = keys.set(doc, key, edit);
+        root = insert(root, new Node(edit, key, doc, ThreadLocalRandom.current().nextInt()));
+        size++;
+    }
+
+    void remove(int doc) {
+        Key key = doc < keys.size() ? keys.get(doc) : null;
+        if (key != null) {
+            keys = keys.set(doc, null, edit);
+            root = delete(root, key);
+            size--;
+        }
+    }
+
+    void clear() {
+        root = null;
+        size = 0;
+        keys = PersistentVector.empty();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Every doc, first title first. */
+    Iterable<Integer> docs() {
+        Node start = root;
+        return () -> new InOrder(start);
+    }
+
+    /** Orders docs by their precomputed keys; every doc must be in this order. */
+    Comparator<Integer> comparator() {
+        PersistentVector<Key> current = keys;
+        return (left, right) -> current.get(left).compareTo(current.get(right));
+    }
+
+    // Nodes with a higher priority sit above lower ones, which keeps the tree balanced in expectation.
+    private Node insert(Node node, Node fresh) {
+        if (node == null) {
+            return fresh;
+        }
+        if (fresh.priority > node.priority) {
+            Node[] halves = split(node, fresh.key);
+            fresh.left = halves[0];
+            fresh.right = halves[1];
+            return fresh;
+        }
+        node = node.editable(edit);
+        if (fresh.key.compareTo(node.key) < 0) {
+            node.left = insert(node.left, fresh);
+        } else {
+            node.right = insert(node.right, fresh);
+        }
+        return node;
+    }
+
+    // Nodes below key, and the rest; keys are unique, so none equals it.
+    private Node[] split(Node node, Key key) {
+        if (node == null) {
+            return new Node[2];
+        }
+        node = node.editable(edit);
+        if (node.key.compareTo(key) < 0) {
+            Node[] halves = split(node.right, key);
+            node.right = halves[0];
+            halves[0] = node;
+            return halves;
+        }
+        Node[] halves = split(node.left, key);
+        node.left = halves[1];
+        halves[1] = node;
+        return halves;
+    }
+
+    private Node delete(Node node, Key key) {
+        int comparison = key.compareTo(node.key);
+        if (comparison == 0) {
+            return join(node.left, node.right);
+        }
+        node = node.editable(edit);
+        if (comparison < 0) {
+            node.left = delete(node.left, key);
+        } else {
+            node.right = delete(node.right, key);
+        }
+        return node;
+    }
+
+    // Every key of left sorts before every key of right.
+    private Node join(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left = left.editable(edit);
+            left.right = join(left.right, right);
+            return left;
+        }
+        right = right.editable(edit);
+        right.left = join(left, right.left);
+        return right;
+    }
+
+    private static final class Node {
+        private final Object edit;
+        private final Key key;
+        private final int doc;
+        private final int priority;
+        private Node left;
+        private Node right;
+
+        Node(Object edit, Key key, int doc, int priority) {
+            this.edit = edit;
+            this.key = key;
+            this.doc = doc;
+            this.priority = priority;
+        }
+
+        Node editable(Object edit) {
+            if (this.edit == edit) {
+                return this;
+            }
+            Node copy = new Node(edit, key, doc, priority);
+            copy.left = left;
+            copy.right = right;
+            return copy;
+        }
+    }
+
+    private static final class InOrder implements Iterator<Integer> {
+        private final Deque<Node> path = new ArrayDeque<>();
+
+        InOrder(Node root) {
+            descend(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !path.isEmpty();
+        }
+
+        @Override
+        public Integer next() {
+            Node node = path.poll();
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            descend(node.right);
+            return node.doc;
+        }
+
+        private void descend(Node node) {
+            for (; node != null; node = node.left) {
+                path.push(node);
+            }
+        }
+    }
+
+    private static final class Key implements Comparable<Key> {
+        private final byte[] collation;
+        private final String id;
+
+        Key(byte[] collation, String id) {
+            this.collation = collation;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int comparison = Arrays.compareUnsigned(collation, other.collation);
+            return comparison != 0 ? comparison : id.compareTo(other.id);
+        }
+    }
+}
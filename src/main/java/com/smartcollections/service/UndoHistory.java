@@ -0,0 +1,202 @@
+package com.smartcollections.service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+import com.smartcollections.model.Item;
+import com.smartcollections.model.Memento;
+import com.smartcollections.model.Task;
+
+/**
+ * Undo stack bounded by entry count and by an estimate of the bytes its
+ * mementos retain. Once either bound is passed the oldest entries are dropped,
+ * though the newest is always kept so the last action can be undone. Edits
+ * pushed with {@code coalesce} fold into the entry on top when it is an edit
+ * of the same item made within the coalescing window, so a burst of saves from
+ * the detail pane undoes as one step.
+ * <p>
+ * Sizes are rough: object headers and references at 64-bit JVM costs, two
+ * bytes per character. They only need to be good enough to keep a long
+ * session from growing without limit. Writers push and poll under the
+ * library's write lock; the methods are synchronized as well, so the UI can
+ * ask whether there is anything to undo without waiting for a write.
+ */
+final class UndoHistory {
+    private static final long OBJECT_BYTES = 16;
+    private static final long REFERENCE_BYTES = 8;
+    private static final long MEMENTO_BYTES = OBJECT_BYTES + 10 * REFERENCE_BYTES + 4 + 48;
+    private static final long STRING_BYTES = OBJECT_BYTES + 24;
+    private static final long SET_BYTES = 64;
+    private static final long SET_ENTRY_BYTES = 40;
+    private static final long TASK_BYTES = OBJECT_BYTES + 7 * REFERENCE_BYTES + 2 * 48;
+
+    private final Deque<Slot> entries = new ArrayDeque<>();
+    private final Duration coalesceWindow;
+    private int maxEntries;
+    private long maxBytes;
+    private long bytes;
+    // Whether the top entry was pushed by a coalescing edit and may absorb the next one.
+    private boolean topCoalescable;
+
+    UndoHistory(int maxEntries, long maxBytes, Duration coalesceWindow) {
+        this.coalesceWindow = coalesceWindow;
+        setLimits(maxEntries, maxBytes);
+    }
+
+    synchronized void setLimits(int maxEntries, long maxBytes) {
+        if (maxEntries < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("Undo history must allow at least one entry and one byte.");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    synchronized void push(Memento memento) {
+        push(memento, false);
+    }
+
+    synchronized void push(Memento memento, boolean coalesce) {
+        if (memento == null) {
+            return;
+        }
+        Slot top = entries.peek();
+        if (coalesce && topCoalescable && top != null && canCoalesce(top.memento, memento)) {
+            entries.pop();
+            bytes -= top.bytes;
+            memento = top.memento.coalesce(memento);
+        }
+        Slot slot = new Slot(memento, estimatedBytes(memento));
+        entries.push(slot);
+        bytes += slot.bytes;
+        topCoalescable = coalesce;
+        evict();
+    }
+
+    synchronized Memento poll() {
+        Slot top = entries.poll();
+        topCoalescable = false;
+        if (top == null) {
+            return null;
+        }
+        bytes -= top.bytes;
+        return top.memento;
+    }
+
+    synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+        topCoalescable = false;
+    }
+
+    /** Newest first, as a stack iterates. */
+    synchronized List<Memento> toList() {
+        List<Memento> mementos = new ArrayList<>(entries.size());
+        for (Slot slot : entries) {
+            mementos.add(slot.memento);
+        }
+        return mementos;
+    }
+
+    /** Appends {@code newestFirst} below the current entries, then trims to the bounds. */
+    synchronized void restore(List<Memento> newestFirst) {
+        for (Memento memento : newestFirst) {
+            if (memento != null) {
+                Slot slot = new Slot(memento, estimatedBytes(memento));
+                entries.addLast(slot);
+                bytes += slot.bytes;
+            }
+        }
+        evict();
+    }
+
+    private boolean canCoalesce(Memento earlier, Memento later) {
+        return earlier.getOperationType() == Memento.OperationType.EDIT
+            && later.getOperationType() == Memento.OperationType.EDIT
+            && earlier.getItemId().equals(later.getItemId())
+            && !later.getTimestamp().isAfter(earlier.getTimestamp().plus(coalesceWindow));
+    }
+
+    private void evict() {
+        while (entries.size() > 1 && (entries.size() > maxEntries || bytes > maxBytes)) {
+            bytes -= entries.removeLast().bytes;
+        }
+    }
+
+    static long estimatedBytes(Memento memento) {
+        // The id, and the title unless the edit changed it, are shared with the item; only the references count.
+        long size = MEMENTO_BYTES;
+        if (memento.captures(Memento.Field.TITLE) || memento.getOperationType() == Memento.OperationType.BATCH) {
+            size += stringBytes(memento.getTitle());
+        }
+        if (memento.captures(Memento.Field.TAGS)) size += tagBytes(memento.getTags());
+        if (memento.captures(Memento.Field.FILE_PATH)) size += stringBytes(memento.getFilePath());
+        if (memento.captures(Memento.Field.MEDIA_URL)) size += stringBytes(memento.getMediaUrl());
+        return size + payloadBytes(memento.getOperationData());
+    }
+
+    private static long payloadBytes(Object payload) {
+        if (payload instanceof LibraryService.DeletedItemSnapshot snapshot) {
+            return OBJECT_BYTES + 2 * REFERENCE_BYTES + payloadBytes(snapshot.item()) + payloadBytes(snapshot.tasks());
+        }
+        if (payload instanceof LibraryService.BatchSnapshot batch) {
+            // Added item ids are shared with the items, so only the references count.
+            return OBJECT_BYTES + 2 * REFERENCE_BYTES + SET_BYTES + batch.added().size() * REFERENCE_BYTES
+                + payloadBytes(batch.deleted());
+        }
+        if (payload instanceof LibraryService.BulkEdit bulk) {
+            long size = OBJECT_BYTES + REFERENCE_BYTES + SET_BYTES + bulk.edits().size() * REFERENCE_BYTES;
+            for (Memento edit : bulk.edits()) {
+                size += estimatedBytes(edit);
+            }
+            return size;
+        }
+        if (payload instanceof Item item) {
+            return MEMENTO_BYTES + stringBytes(item.getId()) + stringBytes(item.getTitle())
+                + tagBytes(item.getTags()) + stringBytes(item.getFilePath()) + stringBytes(item.getMediaUrl());
+        }
+        if (payload instanceof Task task) {
+            return TASK_BYTES + stringBytes(task.getId()) + stringBytes(task.getItemId())
+                + stringBytes(task.getDescription());
+        }
+        if (payload instanceof Collection<?> collection) {
+            long size = SET_BYTES + collection.size() * REFERENCE_BYTES;
+            for (Object element : collection) {
+                size += payloadBytes(element);
+            }
+            return size;
+        }
+        return payload == null ? 0 : OBJECT_BYTES;
+    }
+
+    private static long tagBytes(Collection<String> tags) {
+        long size = SET_BYTES;
+        for (String tag : tags) {
+            size += SET_ENTRY_BYTES + stringBytes(tag);
+        }
+        return size;
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : STRING_BYTES + 2L * value.length();
+    }
+
+    private record Slot(Memento memento, long bytes) {
+    }
+}
@@ -0,0 +1,370 @@
+package com.smartcollections.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Character trie over the keyword vocabulary, or over tags. Fuzzy lookups walk
+ * it with one Levenshtein DP row per depth, abandoning a branch as soon as
+ * every cell in its row exceeds the edit budget. Shared prefixes are therefore
+ * compared once and most of the vocabulary is never visited.
+ * <p>
+ * Every term carries a weight, its document frequency, and every node caches
+ * the {@link #MAX_SUGGESTIONS} heaviest terms below it, so
+ * {@link #suggest(String, int)} costs the length of the prefix. Writes only
+ * mark the path they touched; {@link #refresh()} rebuilds those nodes' lists
+ * from their children's, once per batch rather than once per term.
+ * <p>
+ * A {@link #snapshot()} shares every node with the writer's trie. Nodes belong
+ * to the edit they were made in, and a write copies each node on its path that
+ * belongs to an earlier edit before changing it, so publishing costs nothing
+ * and a write copies at most one node per character of its term.
+ */
+final class VocabularyTrie {
+    static final int MAX_SUGGESTIONS = 10;
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final String[] NO_TERMS = new String[0];
+    private static final int[] NO_WEIGHTS = new int[0];
+
+    // Nodes made under this token may be changed in place; null in a snapshot, which is never written.
+    private Object edit;
+    private Node root;
+    private int size;
+
+    VocabularyTrie() {
+        edit = new Object();
+        root = new Node(edit);
+    }
+
+    private VocabularyTrie(Node root, int size) {
+        this.edit = null;
+        this.root = root;
+        this.size = size;
+    }
+
+    /** Adds {@code term} or changes its weight. */
+    void put(String term, int weight) {
+        checkWritable();
+        Node node = root = root.editable(edit);
+        node.stale = true;
+        for (int i = 0; i < term.length(); i++) {
+            node = node.childOrCreate(term.charAt(i), edit);
+            node.stale = true;
+        }
+        if (node.term == null) {
+            size++;
+        }
+        node.term = term;
+        node.weight = weight;
+    }
+
+    void remove(String term) {
+        checkWritable();
+        Node node = find(term);
+        if (node == null || node.term == null) {
+            return;
+        }
+        root = root.editable(edit);
+        remove(root, term, 0);
+        root.stale = true;
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** The weight {@code term} was put with, or 0 when it is not in the trie. */
+    int weight(String term) {
+        Node node = find(term);
+        return node != null && node.term != null ? node.weight : 0;
+    }
+
+    // The node spelling term, whether or not a term ends there; null when no term has it as a prefix.
+    private Node find(String term) {
+        Node node = root;
+        for (int i = 0; i < term.length(); i++) {
+            int index = node.indexOf(term.charAt(i));
+            if (index < 0) {
+                return null;
+            }
+            node = node.children[index];
+        }
+        return node;
+    }
+
+    void clear() {
+        checkWritable();
+        root = new Node(edit);
+        size = 0;
+    }
+
+    /**
+     * A read-only trie sharing this one's nodes. The suggestion lists are
+     * refreshed first, so the snapshot can serve {@link #suggest} without
+     * writing, and this trie moves to a new edit so it never changes a node the
+     * snapshot can reach.
+     */
+    VocabularyTrie snapshot() {
+        checkWritable();
+        refresh();
+        VocabularyTrie snapshot = new VocabularyTrie(root, size);
+        edit = new Object();
+        return snapshot;
+    }
+
+    private void checkWritable() {
+        if (edit == null) {
+            throw new IllegalStateException("A trie snapshot is read-only.");
+        }
+    }
+
+    /**
+     * The at most {@code k} heaviest terms starting with {@code prefix}, heaviest
+     * first and alphabetical among equals. Expects {@link #refresh()} to have run
+     * since the last write, as it has on every snapshot.
+     */
+    List<String> suggest(String prefix, int k) {
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            int index = node.indexOf(prefix.charAt(i));
+            if (index < 0) {
+                return List.of();
+            }
+            node = node.children[index];
+        }
+        return Arrays.asList(node.topTerms).subList(0, Math.min(Math.max(k, 0), node.topTerms.length));
+    }
+
+    /** Rebuilds the suggestion list of every node a write has touched since the last refresh. */
+    void refresh() {
+        refresh(root);
+    }
+
+    private static void refresh(Node node) {
+        if (!node.stale) {
+            return;
+        }
+        node.stale = false;
+        for (int c = 0; c < node.childCount; c++) {
+            refresh(node.children[c]);
+        }
+        // Merge this node's own term with its children's lists, which already hold their best.
+        String[] terms = new String[MAX_SUGGESTIONS];
+        int[] weights = new int[MAX_SUGGESTIONS];
+        int count = 0;
+        if (node.term != null) {
+            terms[0] = node.term;
+            weights[0] = node.weight;
+            count = 1;
+        }
+        for (int c = 0; c < node.childCount; c++) {
+            Node child = node.children[c];
+            for (int i = 0; i < child.topTerms.length; i++) {
+                int at = count;
+                while (at > 0 && ranksBefore(child.topTerms[i], child.topWeights[i], terms[at - 1], weights[at - 1])) {
+                    at--;
+                }
+                if (at == MAX_SUGGESTIONS) {
+                    // The child's list is sorted, so nothing further down it can get in either.
+                    break;
+                }
+                int last = Math.min(count, MAX_SUGGESTIONS - 1);
+                System.arraycopy(terms, at, terms, at + 1, last - at);
+                System.arraycopy(weights, at, weights, at + 1, last - at);
+                terms[at] = child.topTerms[i];
+                weights[at] = child.topWeights[i];
+                count = Math.min(count + 1, MAX_SUGGESTIONS);
+            }
+        }
+        node.topTerms = count == 0 ? NO_TERMS : Arrays.copyOf(terms, count);
+        node.topWeights = count == 0 ? NO_WEIGHTS : Arrays.copyOf(weights, count);
+    }
+
+    private static boolean ranksBefore(String term, int weight, String other, int otherWeight) {
+        return weight != otherWeight ? weight > otherWeight : term.compareTo(other) < 0;
+    }
+
+    /**
+     * Reports every term within {@code maxEdits} insertions, deletions or
+     * substitutions of {@code word}, with its distance. The first
+     * {@code exactPrefix} characters must match exactly; a one-character prefix
+     * prunes all but one root branch and typos there are comparatively rare.
+     */
+    void fuzzy(String word, int maxEdits, int exactPrefix, MatchConsumer consumer) {
+        fuzzy(word, maxEdits, exactPrefix, () -> false, consumer);
+    }
+
+    /** Like the plain lookup, but abandons the walk at the first node where {@code stop} says yes. */
+    void fuzzy(String word, int maxEdits, int exactPrefix, BooleanSupplier stop, MatchConsumer consumer) {
+        int prefix = Math.min(exactPrefix, word.length());
+        Node start = root;
+        for (int i = 0; i < prefix; i++) {
+            int index = start.indexOf(word.charAt(i));
+            if (index < 0) {
+                return;
+            }
+            start = start.children[index];
+        }
+
+        String rest = word.substring(prefix);
+        int columns = rest.length() + 1;
+        int[][] rows = new int[rest.length() + maxEdits + 2][];
+        rows[0] = new int[columns];
+        for (int i = 0; i < columns; i++) {
+            rows[0][i] = i;
+        }
+        if (start.term != null && rest.length() <= maxEdits) {
+            consumer.accept(start.term, rest.length());
+        }
+        for (int c = 0; c < start.childCount; c++) {
+            if (!walk(start.children[c], start.labels[c], 1, rest, maxEdits, rows, stop, consumer)) {
+                return;
+            }
+        }
+    }
+
+    // Returns false once stop has said yes, so the whole walk unwinds.
+    private boolean walk(Node node, char label, int depth, String word, int maxEdits, int[][] rows,
+                         BooleanSupplier stop, MatchConsumer consumer) {
+        if (depth >= rows.length) {
+            return true;
+        }
+        if (stop.getAsBoolean()) {
+            return false;
+        }
+        int columns = word.length() + 1;
+        int[] previous = rows[depth - 1];
+        int[] current = rows[depth];
+        if (current == null) {
+            current = new int[columns];
+            rows[depth] = current;
+        }
+
+        // Cells further than maxEdits from the diagonal can never come back under budget,
+        // so only the band around it is computed and everything outside is capped.
+        int outside = maxEdits + 1;
+        int from = Math.max(1, depth - maxEdits);
+        int to = Math.min(columns - 1, depth + maxEdits);
+        current[0] = depth <= maxEdits ? depth : outside;
+        if (from > 1) {
+            current[from - 1] = outside;
+        }
+        int rowMinimum = current[0];
+        for (int i = from; i <= to; i++) {
+            int insert = current[i - 1] + 1;
+            int delete = previous[i] + 1;
+            int replace = previous[i - 1] + (word.charAt(i - 1) == label ? 0 : 1);
+            current[i] = Math.min(outside, Math.min(insert, Math.min(delete, replace)));
+            rowMinimum = Math.min(rowMinimum, current[i]);
+        }
+        if (to + 1 < columns) {
+            current[to + 1] = outside;
+        }
+
+        int distance = from <= to && to == columns - 1 ? current[columns - 1] : outside;
+        if (node.term != null && distance <= maxEdits) {
+            consumer.accept(node.term, distance);
+        }
+        if (rowMinimum <= maxEdits) {
+            for (int c = 0; c < node.childCount; c++) {
+                if (!walk(node.children[c], node.labels[c], depth + 1, word, maxEdits, rows, stop, consumer)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // The term is known to be present and node to belong to this edit; prunes nodes left without terms or children.
+    private void remove(Node node, String term, int depth) {
+        node.stale = true;
+        if (depth == term.length()) {
+            node.term = null;
+            node.weight = 0;
+            return;
+        }
+        int index = node.indexOf(term.charAt(depth));
+        Node child = node.children[index].editable(edit);
+        node.children[index] = child;
+        remove(child, term, depth + 1);
+        if (child.term == null && child.childCount == 0) {
+            node.removeChildAt(index);
+        }
+    }
+
+    @FunctionalInterface
+    interface MatchConsumer {
+        void accept(String term, int distance);
+    }
+
+    private static final class Node {
+        private final Object edit;
+        private char[] labels = NO_LABELS;
+        private Node[] children = NO_CHILDREN;
+        private int childCount;
+        private String term;
+        private int weight;
+        // Heaviest terms in this subtree, best first; replaced on refresh, never modified, so copies share them.
+        private String[] topTerms = NO_TERMS;
+        private int[] topWeights = NO_WEIGHTS;
+        private boolean stale;
+
+        Node(Object edit) {
+            this.edit = edit;
+        }
+
+        // This node if it belongs to edit, else a copy that does; children stay shared until written.
+        Node editable(Object edit) {
+            if (this.edit == edit) {
+                return this;
+            }
+            Node copy = new Node(edit);
+            copy.labels = Arrays.copyOf(labels, childCount);
+            copy.children = Arrays.copyOf(children, childCount);
+            copy.childCount = childCount;
+            copy.term = term;
+            copy.weight = weight;
+            copy.topTerms = topTerms;
+            copy.topWeights = topWeights;
+            copy.stale = stale;
+            return copy;
+        }
+
+        int indexOf(char label) {
+            return Arrays.binarySearch(labels, 0, childCount, label);
+        }
+
+        // The child under label, made editable in place, or a new one; this node must belong to edit.
+        Node childOrCreate(char label, Object edit) {
+            int index = indexOf(label);
+            if (index >= 0) {
+                Node child = children[index].editable(edit);
+                children[index] = child;
+                return child;
+            }
+            int insertAt = -index - 1;
+            if (childCount == labels.length) {
+                int capacity = Math.max(2, childCount * 2);
+                labels = Arrays.copyOf(labels, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(labels, insertAt, labels, insertAt + 1, childCount - insertAt);
+            System.arraycopy(children, insertAt, children, insertAt + 1, childCount - insertAt);
+            Node child = new Node(edit);
+            labels[insertAt] = label;
+            children[insertAt] = child;
+            childCount++;
+            return child;
+        }
+
+        void removeChildAt(int index) {
+            System.arraycopy(labels, index + 1, labels, index, childCount - index - 1);
+            System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+            childCount--;
+            children[childCount] = null;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.smartcollections.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Times {@link Item#tokenise(String)} against the regex split it replaced on
+ * generated file-name titles and prints the median nanoseconds per title.
+ * Wall-clock numbers depend on the machine, so this is run by hand rather
+ * than by the test suite:
+ * {@code java -cp target/classes:target/test-classes com.smartcollections.model.TokenizerBenchmark}.
+ */
+public final class TokenizerBenchmark {
+    private static final int ROUNDS = 40;
+
+    private TokenizerBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        List<String> titles = TokenizerTest.fileNameTitles(count);
+        long split = medianNanosPerTitle(titles, true);
+        long scanned = medianNanosPerTitle(titles, false);
+        System.out.printf("regex split: %d ns/title%ntokenise:    %d ns/title%n", split, scanned);
+    }
+
+    private static long medianNanosPerTitle(List<String> titles, boolean regex) {
+        long[] nanos = new long[ROUNDS];
+        int sink = 0;
+        for (int round = 0; round < ROUNDS * 2; round++) {
+            long start = System.nanoTime();
+            for (String title : titles) {
+                sink += (regex ? TokenizerTest.regexTokenise(title) : Item.tokenise(title)).size();
+            }
+            long elapsed = (System.nanoTime() - start) / titles.size();
+            // The first half warms up the JIT.
+            if (round >= ROUNDS) {
+                nanos[round - ROUNDS] = elapsed;
+            }
+        }
+        if (sink == 0) {
+            throw new IllegalStateException("No tokens were produced");
+        }
+        Arrays.sort(nanos);
+        return nanos[ROUNDS / 2];
+    }
+}
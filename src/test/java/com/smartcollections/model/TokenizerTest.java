@@ -0,0 +1,52 @@
+package com.smartcollections.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class TokenizerTest {
+
+    @Test
+    void asciiTitlesTokeniseAsTheRegexSplitDid() {
+        for (String title : fileNameTitles(1_000)) {
+            assertEquals(regexTokenise(title), Item.tokenise(title), title);
+        }
+    }
+
+    @Test
+    void accentedArabicAndHanWordsAreKept() {
+        assertEquals(Set.of("café", "résumé"), Item.tokenise("Café Résumé"));
+        assertEquals(Set.of("مقدمة"), Item.tokenise("مقدمة"));
+        assertEquals(Set.of("物理"), Item.tokenise("物理"));
+        assertEquals(List.of("lecture", "02", "physics"), Arrays.asList(Item.words("Lecture-02_PHYSICS")));
+    }
+
+    // Item.tokenise as it was before the scanner.
+    static Set<String> regexTokenise(String value) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String part : value.toLowerCase(Locale.ROOT).split("[^a-z0-9]+")) {
+            if (part.length() > 2) {
+                tokens.add(part);
+            }
+        }
+        return tokens;
+    }
+
+    static List<String> fileNameTitles(int count) {
+        String[] subjects = {"Thermodynamics", "linear_algebra", "Organic-Chemistry", "MACRO econ", "genetics"};
+        String[] kinds = {"Lecture", "tutorial", "Exam-Paper", "notes", "Lab_Report"};
+        List<String> titles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            titles.add(kinds[i % kinds.length] + "_" + (i % 24 + 1) + " - " + subjects[i % subjects.length]
+                + " (week " + i % 12 + ") v" + i % 3 + ".pdf");
+        }
+        return titles;
+    }
+}
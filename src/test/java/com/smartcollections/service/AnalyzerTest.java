@@ -0,0 +1,106 @@
+package com.smartcollections.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+
+class AnalyzerTest {
+
+    @Test
+    void stemsTheCasesItsJavadocPromises() {
+        String[][] cases = {
+            {"studies", "study"},
+            {"classes", "class"},
+            {"matches", "match"},
+            {"lectures", "lecture"},
+            {"boxes", "box"},
+            {"wishes", "wish"},
+            {"notes", "note"},
+            {"class", "class"},
+            {"campus", "campus"},
+            {"analysis", "analysis"},
+            {"bus", "bus"},
+            {"lecture", "lecture"},
+        };
+        for (String[] c : cases) {
+            assertEquals(c[1], stem(c[0]), c[0]);
+        }
+    }
+
+    @Test
+    void stemmingTwiceChangesNothingMore() {
+        for (String word : List.of("studies", "classes", "matches", "lectures", "boxes", "buzzes", "notes",
+                "class", "campus", "analysis", "series", "days", "toys")) {
+            String once = stem(word);
+            assertEquals(once, stem(once), word);
+        }
+    }
+
+    @Test
+    void foldsAccentedLatinLetters() {
+        assertEquals("cafe", fold("café"));
+        assertEquals("naive", fold("naïve"));
+        assertEquals("angstrom", fold("ångström"));
+        // Combining accents are dropped as well.
+        assertEquals("cafe", fold("cafe\u0301"));
+        // Letters without a single base letter stay as they are.
+        assertEquals("straße", fold("straße"));
+    }
+
+    @Test
+    void termsDropStopWordsButKeepTheirPositions() {
+        Analyzer analyzer = Analyzer.standard();
+        assertEquals(Set.of("history", "science"), analyzer.terms("The History of Science"));
+        assertEquals(List.of("history", "science"), List.copyOf(analyzer.terms("the history of the science")));
+        assertTrue(analyzer.isStopWord("the"));
+        assertFalse(analyzer.isStopWord("history"));
+
+        List<Integer> positions = new ArrayList<>();
+        Analyzer.TokenStream stream = analyzer.stream("History of the Sciences");
+        while (stream.next()) {
+            if (stream.kept()) {
+                positions.add(stream.position());
+            }
+        }
+        assertEquals(List.of(0, 3), positions);
+        // Without stop words "the" is a term; "of" is still too short to index.
+        assertEquals(List.of("the", "history"), List.copyOf(Analyzer.simple().terms("of the history")));
+    }
+
+    @Test
+    void probeNeverDropsATypedStopWord() {
+        Analyzer analyzer = Analyzer.standard();
+        for (String stopWord : List.of("the", "this", "there", "is", "and", "with")) {
+            assertEquals(stopWord, analyzer.probe(stopWord), stopWord);
+        }
+        assertEquals("lecture", analyzer.probe("lectures"));
+        assertEquals("cafe", analyzer.asciiFolding(true).probe("cafés"));
+
+        LibraryService service = new LibraryService();
+        service.addItem(new Item("Theory of computation", Category.LECTURE_NOTES, null));
+        service.addItem(new Item("Linear algebra", Category.LECTURE_NOTES, null));
+        // A user typing "theory" has typed "the" first, and should already see it.
+        assertEquals(Set.of("Theory of computation"),
+            service.search("the").stream().map(Item::getTitle).collect(Collectors.toSet()));
+    }
+
+    private static String stem(String word) {
+        char[] chars = word.toCharArray();
+        return new String(chars, 0, Analyzer.stem(chars, chars.length));
+    }
+
+    private static String fold(String word) {
+        char[] chars = word.toCharArray();
+        return new String(chars, 0, Analyzer.fold(chars, chars.length));
+    }
+}
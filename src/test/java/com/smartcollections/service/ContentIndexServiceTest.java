@@ -0,0 +1,64 @@
+package com.smartcollections.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+
+class ContentIndexServiceTest {
+
+    @Test
+    void workersApplyTheTextAndOnlyPostARefresh() throws Exception {
+        LibraryService service = new LibraryService();
+        Path folder = Files.createTempDirectory("content-index");
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Path file = Files.writeString(folder.resolve("notes" + i + ".txt"), "placeholder");
+            Item item = new Item("Notes " + i, Category.LECTURE_NOTES, file.toString());
+            service.addItem(item);
+            items.add(item);
+        }
+        DocumentTextExtractor extractor = new DocumentTextExtractor() {
+            @Override
+            public Optional<String> extract(Path file) {
+                return Optional.of("mitochondria " + file.getFileName());
+            }
+        };
+        AtomicInteger refreshes = new AtomicInteger();
+        AtomicInteger postedByOthers = new AtomicInteger();
+        // Stands in for the FX thread, which should be handed nothing but the refresh.
+        Executor fx = task -> {
+            if (!Thread.currentThread().getName().startsWith("content-indexer-")) {
+                postedByOthers.incrementAndGet();
+            }
+            task.run();
+        };
+
+        try (ContentIndexService indexer =
+                 new ContentIndexService(service, extractor, fx, refreshes::incrementAndGet, 2)) {
+            indexer.scheduleAll(items);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            // The refresh is posted just after the batch publishes, so wait for both.
+            while ((service.search("mitochondria").size() < items.size() || refreshes.get() == 0)
+                   && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+
+        assertEquals(items.size(), service.search("mitochondria").size());
+        assertTrue(refreshes.get() >= 1 && refreshes.get() <= items.size());
+        assertEquals(0, postedByOthers.get());
+    }
+}
@@ -0,0 +1,34 @@
+package com.smartcollections.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.smartcollections.model.Item;
+
+class FileImportServiceTest {
+
+    @Test
+    void folderImportCarriesOnlyTheItemsItAdded() throws Exception {
+        LibraryService service = new LibraryService();
+        FileImportService importer = new FileImportService(service);
+        Path folder = Files.createTempDirectory("folder-import");
+        Path existing = Files.writeString(folder.resolve("existing.txt"), "already imported");
+        Files.writeString(folder.resolve("week1.md"), "notes");
+        Files.writeString(folder.resolve("week2.txt"), "notes");
+        Files.writeString(folder.resolve("ignored.xyz"), "unsupported");
+        importer.importFile(existing);
+
+        FileImportService.ImportResult result = importer.importFromDirectory(folder);
+
+        assertEquals(2, result.importedFiles);
+        assertEquals(1, result.skippedFiles);
+        assertEquals(List.of("week1", "week2"),
+            result.importedItems.stream().map(Item::getTitle).sorted().toList());
+        assertEquals(3, service.getAllItems().size());
+    }
+}
@@ -0,0 +1,161 @@
+package com.smartcollections.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+
+class LibraryIndexSnapshotTest {
+
+    @Test
+    void snapshotIsUnchangedByLaterEdits() {
+        LibraryIndex index = new LibraryIndex();
+        Item kept = item("Organic chemistry notes", "chemistry");
+        Item edited = item("Linear algebra exam", "maths");
+        index.add(kept);
+        index.add(edited);
+        LibraryIndex before = index.snapshot();
+
+        index.removeFromIndex(edited);
+        edited.setTitle("Calculus exam");
+        edited.removeTag("maths");
+        edited.addTag("calculus");
+        index.indexItem(edited);
+        index.remove(kept);
+        index.add(item("Physics lab report", "physics"));
+        LibraryIndex after = index.snapshot();
+
+        assertEquals(List.of(kept, edited), before.items());
+        assertEquals(1, before.postings("algebra").size());
+        assertNull(before.postings("calculus"));
+        assertEquals(1, before.tagFrequency("maths"));
+        assertEquals(1, before.attributes().tagged("chemistry").cardinality());
+        assertEquals(List.of("algebra"), before.suggestKeywords("alg", 5));
+
+        assertEquals(List.of("Calculus exam", "Physics lab report"), titles(after.items()));
+        assertNull(after.postings("algebra"));
+        assertEquals(1, after.postings("calculus").size());
+        assertEquals(0, after.tagFrequency("maths"));
+        assertEquals(0, after.attributes().tagged("chemistry").cardinality());
+        assertEquals(2, after.itemCount());
+    }
+
+    @Test
+    void clearLeavesSnapshotsIntact() {
+        LibraryIndex index = new LibraryIndex();
+        index.add(item("Genetics essay", "biology"));
+        LibraryIndex before = index.snapshot();
+
+        index.clear();
+
+        assertEquals(1, before.itemCount());
+        assertEquals(1, before.postings("essay").size());
+        assertEquals(0, index.snapshot().itemCount());
+    }
+
+    @Test
+    void itemsKeepTheirOrderAcrossRemovals() {
+        LibraryIndex index = new LibraryIndex();
+        List<Item> expected = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Item item = item("Item " + i, "tag" + i % 7);
+            index.add(item);
+            expected.add(item);
+        }
+        // Enough removals to close up the empty slots at least once.
+        for (int i = 0; i < 300; i += 2) {
+            index.remove(expected.get(i));
+        }
+        expected.removeIf(item -> Integer.parseInt(item.getTitle().substring(5)) % 2 == 0);
+        Item late = item("Late item", "late");
+        index.add(late);
+        expected.add(late);
+
+        assertEquals(expected, index.snapshot().items());
+        assertEquals(expected.size(), index.itemCount());
+        assertFalse(index.snapshot().attributes().tagged("tag0").get(0));
+    }
+
+    @Test
+    void publishingAMergeSwapsOnlyThePostings() {
+        LibraryIndex index = new LibraryIndex();
+        for (int i = 0; index.segmentCount() < SegmentedPostings.MERGE_FACTOR + 1; i++) {
+            index.add(item("Seminar " + i, "week" + i % 12));
+        }
+        LibraryIndex published = index.snapshot();
+        int segments = published.segmentCount();
+        int seminars = published.postings("seminar").size();
+
+        SegmentedPostings.Merge merge = index.planMerge();
+        merge.run();
+        assertTrue(index.commitMerge(merge));
+        LibraryIndex merged = index.withPostingsOf(published);
+
+        assertTrue(merged.segmentCount() < segments);
+        assertEquals(seminars, merged.postings("seminar").size());
+        assertEquals(published.generation(), merged.generation());
+        assertSame(published.attributes(), merged.attributes());
+        assertEquals(published.items(), merged.items());
+        assertEquals(segments, published.segmentCount());
+    }
+
+    /**
+     * Editing one item and publishing a snapshot copies only the paths to what
+     * the edit touches; every other doc's entries and the frozen postings stay
+     * the same objects in both snapshots.
+     */
+    @Test
+    void oneEditSharesEverythingItDidNotTouch() {
+        LibraryIndex index = new LibraryIndex();
+        List<Item> items = new ArrayList<>();
+        // Each batch of BUFFER_DOCS items is frozen into a segment of its own.
+        for (int batch = 0; batch < 3; batch++) {
+            List<Item> added = new ArrayList<>();
+            for (int i = 0; i < SegmentedPostings.BUFFER_DOCS; i++) {
+                int n = items.size() + i;
+                added.add(item("Lecture " + n + " on topic " + n % 97, "course" + n % 31));
+            }
+            index.addAll(added);
+            items.addAll(added);
+        }
+        LibraryIndex before = index.snapshot();
+        assertEquals(3, before.segmentCount());
+        int edited = 40;
+        int untouched = 2_000;
+        Item item = before.item(edited);
+
+        index.removeFromIndex(item);
+        item.setTitle("Revised lecture");
+        index.indexItem(item);
+        LibraryIndex after = index.snapshot();
+
+        assertFalse(after.sharesDoc(before, edited));
+        assertTrue(after.sharesDoc(before, 0));
+        assertTrue(after.sharesDoc(before, untouched));
+        assertTrue(after.sharesDoc(before, items.size() - 1));
+        assertSame(before.docTerms(untouched), after.docTerms(untouched));
+        assertSame(before.positions(untouched, SearchField.TITLE), after.positions(untouched, SearchField.TITLE));
+        assertTrue(after.sharesSegments(before));
+        assertEquals(1, after.postings("revised").size());
+        assertNull(before.postings("revised"));
+    }
+
+    private static Item item(String title, String tag) {
+        Item item = new Item(title, Category.LECTURE_NOTES, null);
+        item.addTag(tag);
+        return item;
+    }
+
+    private static List<String> titles(List<Item> items) {
+        return items.stream().map(Item::getTitle).toList();
+    }
+}
@@ -0,0 +1,70 @@
+package com.smartcollections.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+
+class LibraryServiceBatchTest {
+
+    @Test
+    void serviceDeletesInsideABatchJoinIt() {
+        LibraryService service = new LibraryService();
+        Item existing = new Item("Existing notes", Category.LECTURE_NOTES, null);
+        service.addItemSilently(existing);
+        Item dropped = new Item("Dropped draft", Category.LECTURE_NOTES, null);
+        Item kept = new Item("Kept draft", Category.LECTURE_NOTES, null);
+
+        service.batch(writer -> {
+            writer.add(dropped);
+            writer.add(kept);
+            service.deleteItem(dropped);
+            service.deleteItem(existing);
+            // The draft added and deleted in the same batch cancels out.
+            assertEquals(2, writer.size());
+        });
+
+        assertEquals(Set.of("Kept draft"), titles(service.getAllItems()));
+        assertEquals(List.of(), service.search("dropped"));
+        assertEquals(List.of(), service.search("existing"));
+
+        assertTrue(service.undo());
+        assertEquals(Set.of("Existing notes"), titles(service.getAllItems()));
+        assertFalse(service.hasUndo());
+    }
+
+    @Test
+    void undoReportsOnlyTheItemsItPutBack() {
+        LibraryService service = new LibraryService();
+        Item untouched = new Item("Untouched notes", Category.LECTURE_NOTES, null);
+        Item deleted = new Item("Deleted essay", Category.LECTURE_NOTES, null);
+        Item batched = new Item("Batched essay", Category.LECTURE_NOTES, null);
+        service.addItem(untouched);
+        service.addItem(deleted);
+        service.addItem(batched);
+        service.deleteItem(deleted);
+        service.batch(writer -> writer.delete(batched));
+
+        List<Item> restored = new ArrayList<>();
+        assertTrue(service.undo(restored::add));
+        assertEquals(Set.of("Batched essay"), titles(restored));
+
+        restored.clear();
+        assertTrue(service.undo(restored::add));
+        assertEquals(Set.of("Deleted essay"), titles(restored));
+        assertEquals(3, service.getAllItems().size());
+    }
+
+    private static Set<String> titles(List<Item> items) {
+        return items.stream().map(Item::getTitle).collect(Collectors.toSet());
+    }
+}
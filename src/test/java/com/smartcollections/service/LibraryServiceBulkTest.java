@@ -0,0 +1,133 @@
+package com.smartcollections.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+
+class LibraryServiceBulkTest {
+
+    @Test
+    void eachBulkEditIsOneUndoStep() {
+        LibraryService service = new LibraryService();
+        List<Item> items = List.of(item("Optics notes", "physics"), item("Waves notes", "physics"),
+            item("Lenses notes", "physics"));
+        items.forEach(service::addItem);
+
+        int steps = undoSteps(service);
+        assertEquals(3, service.addTag(items, "revision"));
+        assertEquals(++steps, undoSteps(service));
+        assertEquals(2, service.removeTag(items.subList(0, 2), "revision"));
+        assertEquals(++steps, undoSteps(service));
+        assertEquals(3, service.renameTag("physics", "optics"));
+        assertEquals(++steps, undoSteps(service));
+        assertEquals(3, service.recategorise(items, Category.TUTORIAL));
+        assertEquals(++steps, undoSteps(service));
+
+        // Nothing changes, so nothing is recorded.
+        assertEquals(0, service.recategorise(items, Category.TUTORIAL));
+        assertEquals(0, service.removeTag(items, "absent"));
+        assertEquals(steps, undoSteps(service));
+    }
+
+    @Test
+    void undoRestoresTagsCategoriesCountsAndResults() {
+        LibraryService service = new LibraryService();
+        Item optics = item("Optics notes", "physics");
+        Item waves = item("Waves notes", "physics");
+        service.addItem(optics);
+        service.addItem(waves);
+
+        service.addTag(List.of(optics, waves), "revision");
+        assertEquals(2, service.getTagFrequency().get("revision"));
+        assertEquals(Set.of("Optics notes", "Waves notes"), titles(service.search("tag:revision")));
+        assertEquals(2, service.facets("notes").tagCount("revision"));
+
+        service.recategorise(List.of(optics), Category.TUTORIAL);
+        assertEquals(Set.of("Optics notes"), titles(service.search("category:tutorial")));
+        assertEquals(1, service.facets("notes").categoryCount(Category.TUTORIAL));
+
+        assertTrue(service.undo());
+        assertEquals(Category.LECTURE_NOTES, optics.getCategory());
+        assertEquals(Set.of(), titles(service.search("category:tutorial")));
+        assertEquals(0, service.facets("notes").categoryCount(Category.TUTORIAL));
+        assertEquals(2, service.facets("notes").categoryCount(Category.LECTURE_NOTES));
+
+        assertTrue(service.undo());
+        assertEquals(Set.of("physics"), optics.getTags());
+        assertEquals(Set.of("physics"), waves.getTags());
+        assertEquals(0, service.getTagFrequency().getOrDefault("revision", 0));
+        assertEquals(2, service.getTagFrequency().get("physics"));
+        assertEquals(Set.of(), titles(service.search("tag:revision")));
+        assertEquals(0, service.facets("notes").tagCount("revision"));
+    }
+
+    @Test
+    void renamingOntoAnExistingTagMergesTheCounts() {
+        LibraryService service = new LibraryService();
+        Item old = item("Old only", "lab");
+        Item both = item("Both tags", "lab", "practical", "week1");
+        Item target = item("Target only", "practical");
+        service.addItem(old);
+        service.addItem(both);
+        service.addItem(target);
+
+        assertEquals(2, service.renameTag("lab", "practical"));
+
+        assertEquals(3, service.getTagFrequency().get("practical"));
+        assertEquals(0, service.getTagFrequency().getOrDefault("lab", 0));
+        assertEquals(List.of("practical", "week1"), List.copyOf(both.getTags()));
+        assertEquals(Set.of("Old only", "Both tags", "Target only"), titles(service.search("tag:practical")));
+        assertEquals(3, service.facets("").tagCount("practical"));
+
+        assertTrue(service.undo());
+        assertEquals(2, service.getTagFrequency().get("lab"));
+        assertEquals(2, service.getTagFrequency().get("practical"));
+        assertEquals(List.of("lab", "practical", "week1"), List.copyOf(both.getTags()));
+        assertEquals(Set.of("Both tags", "Target only"), titles(service.search("tag:practical")));
+    }
+
+    @Test
+    void deletingSeveralItemsUndoesAsOneStep() {
+        LibraryService service = new LibraryService();
+        Item kept = item("Kept notes", "physics");
+        Item first = item("First draft", "physics");
+        Item second = item("Second draft", "physics");
+        List.of(kept, first, second).forEach(service::addItem);
+        int steps = undoSteps(service);
+
+        assertEquals(2, service.deleteItems(List.of(first, second)));
+        assertEquals(steps + 1, undoSteps(service));
+        assertEquals(Set.of("Kept notes"), titles(service.getAllItems()));
+        assertEquals(1, service.getTagFrequency().get("physics"));
+
+        assertTrue(service.undo());
+        assertEquals(steps, undoSteps(service));
+        assertEquals(Set.of("Kept notes", "First draft", "Second draft"), titles(service.getAllItems()));
+        assertEquals(Set.of("First draft", "Second draft"), titles(service.search("draft")));
+        assertEquals(3, service.getTagFrequency().get("physics"));
+    }
+
+    private static int undoSteps(LibraryService service) {
+        return service.createSnapshot().undoHistory().size();
+    }
+
+    private static Item item(String title, String... tags) {
+        Item item = new Item(title, Category.LECTURE_NOTES, null);
+        for (String tag : tags) {
+            item.addTag(tag);
+        }
+        return item;
+    }
+
+    private static Set<String> titles(List<Item> items) {
+        return items.stream().map(Item::getTitle).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,54 @@
+package com.smartcollections.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+import com.smartcollections.model.Task;
+
+class LibraryServiceLockingTest {
+
+    @Test
+    void uiStateIsReadableWhileABatchHoldsTheWriteLock() throws Exception {
+        LibraryService service = new LibraryService();
+        Item item = new Item("Thermodynamics notes", Category.LECTURE_NOTES, null);
+        service.addItem(item);
+        service.addTask(new Task(item.getId(), "Revise", LocalDateTime.now().plusDays(1), Task.Priority.HIGH));
+
+        CountDownLatch inBatch = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> batch = CompletableFuture.runAsync(() -> service.batch(writer -> {
+            inBatch.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(inBatch.await(5, TimeUnit.SECONDS));
+        try {
+            CompletableFuture<List<Item>> reads = CompletableFuture.supplyAsync(() -> {
+                service.markAsViewed(item);
+                assertTrue(service.hasUndo());
+                assertEquals(1, service.getAllTasks().size());
+                assertTrue(service.peekNextTask().isPresent());
+                assertEquals(1, service.createSnapshot().items().size());
+                return service.getRecentlyViewed();
+            });
+
+            assertEquals(List.of(item), reads.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+        batch.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,129 @@
+package com.smartcollections.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class PersistentStructuresTest {
+
+    @Test
+    void vectorWritesUnderANewTokenLeaveTheOldVectorAlone() {
+        Object edit = new Object();
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        for (int i = 0; i < 5000; i++) {
+            vector = vector.add(i, edit);
+        }
+        PersistentVector<Integer> before = vector;
+
+        Object next = new Object();
+        PersistentVector<Integer> after = vector.set(1234, -1, next).add(5000, next);
+
+        assertEquals(5000, before.size());
+        assertEquals(1234, before.get(1234));
+        assertEquals(5001, after.size());
+        assertEquals(-1, after.get(1234));
+        assertEquals(4999, after.get(4999));
+        assertEquals(5000, after.get(5000));
+        assertThrows(IndexOutOfBoundsException.class, () -> before.get(5000));
+    }
+
+    @Test
+    void vectorChangesInPlaceForItsOwnToken() {
+        Object edit = new Object();
+        PersistentVector<String> vector = PersistentVector.<String>empty().add("a", edit);
+
+        assertSame(vector, vector.set(0, "b", edit));
+        assertEquals("b", vector.get(0));
+        assertThrows(IllegalArgumentException.class, () -> PersistentVector.<String>empty().add("a", null));
+    }
+
+    @Test
+    void mapMatchesAHashMapThroughPutsAndRemoves() {
+        Object edit = new Object();
+        PersistentMap<String, Integer> map = PersistentMap.empty();
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            map = map.put("key" + i, i, edit);
+            expected.put("key" + i, i);
+        }
+        for (int i = 0; i < 3000; i += 3) {
+            map = map.remove("key" + i, edit);
+            expected.remove("key" + i);
+        }
+
+        Map<String, Integer> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertEquals(expected, actual);
+        assertEquals(expected.size(), map.size());
+        assertNull(map.get("key0"));
+        assertEquals(1, map.get("key1"));
+    }
+
+    @Test
+    void mapKeepsCollidingKeysApart() {
+        // "Aa" and "BB" share a hash code.
+        Object edit = new Object();
+        PersistentMap<String, String> map = PersistentMap.<String, String>empty()
+            .put("Aa", "first", edit)
+            .put("BB", "second", edit);
+        PersistentMap<String, String> before = map;
+
+        PersistentMap<String, String> after = map.remove("Aa", new Object());
+
+        assertEquals("first", before.get("Aa"));
+        assertEquals("second", before.get("BB"));
+        assertNull(after.get("Aa"));
+        assertEquals("second", after.get("BB"));
+        assertEquals(1, after.size());
+    }
+
+    @Test
+    void mapSnapshotsSurviveLaterWrites() {
+        Object edit = new Object();
+        PersistentMap<Integer, String> map = PersistentMap.empty();
+        for (int i = 0; i < 1000; i++) {
+            map = map.put(i, "v" + i, edit);
+        }
+        PersistentMap<Integer, String> before = map;
+
+        Object next = new Object();
+        PersistentMap<Integer, String> after = map.put(7, "changed", next).remove(8, next).put(1000, "new", next);
+
+        assertEquals("v7", before.get(7));
+        assertEquals("v8", before.get(8));
+        assertFalse(before.containsKey(1000));
+        assertEquals(1000, before.size());
+        assertEquals("changed", after.get(7));
+        assertFalse(after.containsKey(8));
+        assertEquals("new", after.get(1000));
+        assertEquals(1000, after.size());
+    }
+
+    @Test
+    void bitmapCopiesOnlyUnderANewToken() {
+        Object edit = new Object();
+        PersistentBitmap bitmap = PersistentBitmap.empty().set(3, edit).set(2000, edit);
+        PersistentBitmap before = bitmap;
+
+        PersistentBitmap after = bitmap.clear(3, new Object());
+
+        assertTrue(before.get(3));
+        assertEquals(2, before.cardinality());
+        assertFalse(after.get(3));
+        assertTrue(after.get(2000));
+        assertEquals(1, after.cardinality());
+
+        DocBitmap flat = before.toDocBitmap();
+        assertTrue(flat.get(3));
+        assertTrue(flat.get(2000));
+        assertEquals(1, after.andCardinality(flat));
+    }
+}
@@ -0,0 +1,76 @@
+package com.smartcollections.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+
+class PhraseProximityTest {
+
+    @Test
+    void phrasesKeepTheGapLeftByAStopWord() {
+        LibraryService service = library("History of science", "History of modern science", "Science of history");
+
+        assertEquals(Set.of("History of science"), titles(service, "\"history of science\""));
+        // "of" is not indexed but still counts, so the two words are not adjacent.
+        assertEquals(Set.of(), titles(service, "\"history science\""));
+        assertEquals(Set.of("Science of history"), titles(service, "\"science of history\""));
+    }
+
+    @Test
+    void nearMatchesInEitherOrder() {
+        LibraryService service = library("Quantum notes on field theory", "Field theory and quantum",
+            "Quantum mechanics lecture with worked examples on field");
+
+        Set<String> both = Set.of("Quantum notes on field theory", "Field theory and quantum");
+        assertEquals(both, titles(service, "quantum NEAR/3 field"));
+        assertEquals(both, titles(service, "field NEAR/3 quantum"));
+        assertEquals(Set.of(), titles(service, "quantum NEAR/2 field"));
+
+        TermPositions positions = TermPositions.of("field theory and quantum", 100, Analyzer.standard());
+        assertTrue(positions.near("quantum", "field", 3));
+        assertTrue(positions.near("field", "quantum", 3));
+        assertFalse(positions.near("field", "quantum", 2));
+    }
+
+    @Test
+    void phrasesPastThePositionLimitAreNotMatched() {
+        Item item = new Item("Physics reading", Category.LECTURE_NOTES, "reading.txt");
+        LibraryService service = new LibraryService();
+        service.addItem(item);
+        StringBuilder text = new StringBuilder("quantum entanglement");
+        for (int i = 0; i < ContentIndexService.MAX_CONTENT_POSITIONS; i++) {
+            text.append(" lorem");
+        }
+        text.append(" dark matter");
+        Analyzer analyzer = service.getAnalyzer(SearchField.CONTENT);
+        TermPositions positions = TermPositions.of(text.toString(), ContentIndexService.MAX_CONTENT_POSITIONS, analyzer);
+        assertTrue(service.updateContent(item.getId(), new LibraryService.ContentStamp("reading.txt", 1, 1),
+            analyzer.terms(text.toString()), positions));
+
+        assertEquals(Set.of("Physics reading"), titles(service, "\"quantum entanglement\""));
+        // Past the limit the words are still indexed, only their positions are not.
+        assertEquals(Set.of("Physics reading"), titles(service, "dark matter"));
+        assertEquals(Set.of(), titles(service, "\"dark matter\""));
+        assertEquals(Set.of(), titles(service, "dark NEAR/1 matter"));
+    }
+
+    private static LibraryService library(String... titles) {
+        LibraryService service = new LibraryService();
+        for (String title : titles) {
+            service.addItem(new Item(title, Category.LECTURE_NOTES, null));
+        }
+        return service;
+    }
+
+    private static Set<String> titles(LibraryService service, String query) {
+        return service.search(query).stream().map(Item::getTitle).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,127 @@
+package com.smartcollections.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+
+class QueryParserTest {
+
+    @Test
+    void andBindsTighterThanOrUnlessParenthesised() {
+        assertEquals(List.of("OR(exam, AND(quiz, draft))"), clauses("exam OR quiz AND draft"));
+        assertEquals(List.of("AND(OR(exam, quiz), draft)"), clauses("(exam OR quiz) AND draft"));
+        assertEquals(List.of("AND(exam, OR(quiz, draft))"), clauses("exam AND (quiz OR draft)"));
+
+        LibraryService service = library();
+        assertEquals(Set.of("Calculus exam", "Calculus quiz draft"), titles(service, "exam OR quiz AND draft"));
+        assertEquals(Set.of("Calculus quiz draft"), titles(service, "(exam OR quiz) AND draft"));
+    }
+
+    @Test
+    void minusAndNotExcludeTheirOperand() {
+        assertEquals(List.of("NOT(draft)"), clauses("-draft"));
+        assertEquals(List.of("NOT(draft)"), clauses("NOT draft"));
+        assertEquals("calculus", parse("calculus -draft").freeText());
+        // A hyphen inside a word is not an operator.
+        assertTrue(parse("x-ray").isPlain());
+
+        LibraryService service = library();
+        assertEquals(Set.of("Calculus exam", "Calculus quiz"), titles(service, "calculus -draft"));
+        assertEquals(Set.of("Calculus exam", "Calculus quiz"), titles(service, "calculus NOT draft"));
+    }
+
+    @Test
+    void quotedTagValuesKeepTheirSpaces() {
+        assertEquals(List.of("tag:linear algebra"), clauses("tag:\"linear algebra\""));
+
+        LibraryService service = library();
+        assertEquals(Set.of("Matrix notes"), titles(service, "tag:\"linear algebra\""));
+    }
+
+    @Test
+    void ratingComparisonsAndUnknownCategories() {
+        assertEquals(List.of("rating:4..5"), clauses("rating>=4"));
+        assertEquals(List.of("rating:1..0"), clauses("rating<1"));
+        assertEquals(List.of("category:LECTURE_NOTES"), clauses("category:lecturenotes"));
+        assertEquals(List.of("category:nonsense"), clauses("category:nonsense"));
+
+        LibraryService service = library();
+        assertEquals(Set.of("Calculus exam", "Matrix notes"), titles(service, "rating>=4"));
+        assertEquals(Set.of(), titles(service, "rating<1"));
+        assertEquals(Set.of(), titles(service, "category:nonsense"));
+        assertEquals(Set.of(), titles(service, "calculus category:nonsense"));
+    }
+
+    @Test
+    void danglingOperatorsWhileTypingAreIgnored() {
+        for (String typing : List.of("exam AND", "exam OR", "exam AND NOT", "(exam", "exam)", "tag:")) {
+            QueryParser.ParsedQuery parsed = parse(typing);
+            assertTrue(parsed.isPlain(), typing);
+            assertEquals(typing.equals("tag:") ? "" : "exam", parsed.freeText(), typing);
+        }
+        assertEquals(Set.of("Calculus exam"), titles(library(), "exam AND"));
+    }
+
+    @Test
+    void lowerCaseOperatorWordsStayPlainText() {
+        assertEquals("pride and prejudice", QueryParser.normalise("Pride and Prejudice"));
+        assertEquals("exam AND quiz", QueryParser.normalise("Exam AND Quiz"));
+
+        QueryParser.ParsedQuery parsed = parse("pride and prejudice");
+        assertTrue(parsed.isPlain());
+        assertEquals("pride and prejudice", parsed.freeText());
+        assertEquals(List.of("pride", "prejudice"), Arrays.asList(parsed.tokens()));
+    }
+
+    private static QueryParser.ParsedQuery parse(String query) {
+        return QueryParser.parse(QueryParser.normalise(query), Analyzer.standard());
+    }
+
+    private static List<String> clauses(String query) {
+        return parse(query).clauses().stream().map(QueryParserTest::describe).toList();
+    }
+
+    private static String describe(QueryClause clause) {
+        if (clause instanceof BooleanClause bool) {
+            return bool.operator() + bool.operands().stream()
+                .map(QueryParserTest::describe)
+                .collect(Collectors.joining(", ", "(", ")"));
+        }
+        if (clause instanceof FieldClause field) {
+            return field.description();
+        }
+        if (clause instanceof TermClause term) {
+            return term.word();
+        }
+        return clause.toString();
+    }
+
+    private static LibraryService library() {
+        LibraryService service = new LibraryService();
+        service.addItem(item("Calculus exam", Category.ASSIGNMENT, 5, "maths"));
+        service.addItem(item("Calculus quiz", Category.ASSIGNMENT, 3, "maths"));
+        service.addItem(item("Calculus quiz draft", Category.ASSIGNMENT, 2, "maths"));
+        service.addItem(item("Matrix notes", Category.LECTURE_NOTES, 4, "linear algebra"));
+        return service;
+    }
+
+    private static Item item(String title, Category category, int rating, String tag) {
+        Item item = new Item(title, category, null);
+        item.setRating(rating);
+        item.addTag(tag);
+        return item;
+    }
+
+    private static Set<String> titles(LibraryService service, String query) {
+        return service.search(query).stream().map(Item::getTitle).collect(Collectors.toSet());
+    }
+}
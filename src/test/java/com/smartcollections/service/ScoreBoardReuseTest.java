@@ -0,0 +1,56 @@
+package com.smartcollections.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+
+class ScoreBoardReuseTest {
+
+    @Test
+    void reusedScoreBoardsCarryNothingOverBetweenQueries() {
+        LibraryService service = libraryOf(400);
+        LibraryService fresh = libraryOf(400);
+
+        // Broad queries leave scores and title marks in most slots before the narrow one runs.
+        for (int round = 0; round < 20; round++) {
+            service.search("lecture");
+            service.explain("notes");
+            service.facets("lecture notes");
+        }
+
+        assertExplainedAlike(fresh.explain("thermodynamics"), service.explain("thermodynamics"));
+        assertEquals(titles(fresh.search("thermodynamics")), titles(service.search("thermodynamics")));
+        assertEquals(fresh.facets("thermodynamics").totalHits(), service.facets("thermodynamics").totalHits());
+    }
+
+    private static void assertExplainedAlike(SearchExplanation expected, SearchExplanation actual) {
+        assertEquals(expected.totalHits(), actual.totalHits());
+        List<SearchExplanation.ItemExplanation> want = expected.items();
+        List<SearchExplanation.ItemExplanation> got = actual.items();
+        assertEquals(want.size(), got.size());
+        for (int i = 0; i < want.size(); i++) {
+            assertEquals(want.get(i).item().getTitle(), got.get(i).item().getTitle());
+            assertEquals(want.get(i).score(), got.get(i).score(), 1e-9);
+            assertEquals(want.get(i).titleMatch(), got.get(i).titleMatch());
+            assertEquals(want.get(i).exactMatches(), got.get(i).exactMatches());
+        }
+    }
+
+    private static List<String> titles(List<Item> items) {
+        return items.stream().map(Item::getTitle).toList();
+    }
+
+    private static LibraryService libraryOf(int size) {
+        LibraryService service = new LibraryService();
+        for (int i = 0; i < size; i++) {
+            String subject = i % 25 == 0 ? "thermodynamics" : "topic " + i % 13;
+            service.addItemSilently(new Item("Lecture notes " + i + " on " + subject, Category.LECTURE_NOTES, null));
+        }
+        return service;
+    }
+}
@@ -0,0 +1,58 @@
+package com.smartcollections.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+
+class SearchFacetsTest {
+
+    @Test
+    void countsAreCachedUntilTheIndexChanges() {
+        LibraryService service = new LibraryService();
+        service.addItem(item("Cell biology lecture", Category.LECTURE_NOTES, "biology"));
+        service.addItem(item("Cell division tutorial", Category.TUTORIAL, "biology"));
+
+        SearchFacets first = service.facets("cell");
+        assertSame(first, service.facets("cell"));
+        assertEquals(2, first.totalHits());
+        assertEquals(2, first.tagCount("biology"));
+
+        service.addItem(item("Cell membrane notes", Category.LECTURE_NOTES, "chemistry"));
+        SearchFacets after = service.facets("cell");
+        assertNotSame(first, after);
+        assertEquals(3, after.totalHits());
+        assertEquals(2, after.categoryCount(Category.LECTURE_NOTES));
+    }
+
+    @Test
+    void cancelledCountsAreIncompleteAndNotCached() {
+        LibraryService service = new LibraryService();
+        for (int i = 0; i < 50; i++) {
+            service.addItem(item("Organic chemistry lab " + i, Category.LECTURE_NOTES, "chemistry"));
+        }
+        CancellationToken cancelled = new CancellationToken();
+        cancelled.cancel();
+
+        SearchFacets partial =
+            service.facets(SearchRequest.of("organic chemistry").cancellation(cancelled));
+        SearchFacets full = service.facets(SearchRequest.of("organic chemistry"));
+
+        assertTrue(partial.incomplete());
+        assertFalse(full.incomplete());
+        assertEquals(50, full.totalHits());
+        assertSame(full, service.facets("organic chemistry"));
+    }
+
+    private static Item item(String title, Category category, String tag) {
+        Item item = new Item(title, category, null);
+        item.addTag(tag);
+        return item;
+    }
+}
@@ -0,0 +1,73 @@
+package com.smartcollections.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+
+class SearchSessionTest {
+
+    @Test
+    void aNewRefinementDoesNotWaitForTheOneItSupersedes() throws Exception {
+        LibraryService service = new LibraryService();
+        for (int i = 0; i < 50; i++) {
+            service.addItem(new Item("Lecture notes " + i, Category.LECTURE_NOTES, null));
+        }
+        CountDownLatch scoring = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean first = new AtomicBoolean(true);
+        Ranker frequency = new FrequencyRanker();
+        // Holds the first refinement inside its evaluation until the test lets it go.
+        service.setRanker(statistics -> {
+            if (first.getAndSet(false)) {
+                scoring.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return frequency.prepare(statistics);
+        });
+        SearchSession session = service.openSearchSession();
+
+        CompletableFuture<SearchPage> background =
+            CompletableFuture.supplyAsync(() -> session.refine(SearchRequest.of("lecture")));
+        assertTrue(scoring.await(5, TimeUnit.SECONDS));
+        try {
+            CompletableFuture<SearchPage> typed = CompletableFuture.supplyAsync(
+                () -> session.refine(SearchRequest.of("lecture notes").timeBudget(Duration.ofMillis(15))));
+
+            assertEquals(50, typed.get(5, TimeUnit.SECONDS).totalHits());
+        } finally {
+            release.countDown();
+        }
+        background.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void cancelledScansStopPartWay() {
+        LibraryIndex index = new LibraryIndex();
+        for (int i = 0; i < 5_000; i++) {
+            index.add(new Item("Seminar week" + i, Category.LECTURE_NOTES, null));
+        }
+        LibraryIndex published = index.snapshot();
+
+        // One-letter probes have no trigram to narrow them and scan everything.
+        assertEquals(5_001, published.keywordsContaining("e", () -> false).size());
+        assertTrue(published.keywordsContaining("e", () -> true).size() < 5_001);
+        assertTrue(published.titlesContaining("e", () -> true).size() < 5_000);
+        StringBuilder found = new StringBuilder();
+        published.fuzzy("seminor", 1, 1, () -> true, (term, distance) -> found.append(term));
+        assertEquals("", found.toString());
+    }
+}
@@ -0,0 +1,154 @@
+package com.smartcollections.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.smartcollections.model.Category;
+import com.smartcollections.model.Item;
+import com.smartcollections.model.Memento;
+
+class UndoHistoryTest {
+    private static final Duration WINDOW = Duration.ofMinutes(1);
+
+    @Test
+    void evictsTheOldestEntriesBeyondTheDepth() {
+        UndoHistory history = new UndoHistory(3, Long.MAX_VALUE, WINDOW);
+        List<Memento> pushed = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Memento memento = Memento.added(new Item("Item " + i, Category.OTHER, null));
+            pushed.add(memento);
+            history.push(memento);
+        }
+
+        assertEquals(3, history.size());
+        assertSame(pushed.get(4), history.poll());
+        assertSame(pushed.get(3), history.poll());
+        assertSame(pushed.get(2), history.poll());
+        assertNull(history.poll());
+        assertEquals(0, history.bytes());
+    }
+
+    @Test
+    void evictsTheOldestEntriesBeyondTheByteBudgetButKeepsTheNewest() {
+        Memento small = Memento.added(new Item("Small", Category.OTHER, null));
+        long budget = 3 * UndoHistory.estimatedBytes(small);
+        UndoHistory history = new UndoHistory(100, budget, WINDOW);
+        for (int i = 0; i < 10; i++) {
+            history.push(Memento.added(new Item("Small", Category.OTHER, null)));
+            assertTrue(history.bytes() <= budget);
+        }
+        assertEquals(3, history.size());
+
+        Item large = new Item("Large", Category.OTHER, null);
+        for (int i = 0; i < 200; i++) {
+            large.addTag("tag number " + i);
+        }
+        Memento deleted = Memento.deleted(large, new LibraryService.DeletedItemSnapshot(large.copy(), List.of()));
+        assertTrue(UndoHistory.estimatedBytes(deleted) > budget);
+        history.push(deleted);
+
+        assertEquals(1, history.size());
+        assertSame(deleted, history.poll());
+    }
+
+    @Test
+    void editsOfOneItemWithinTheWindowCoalesce() {
+        UndoHistory history = new UndoHistory(10, Long.MAX_VALUE, WINDOW);
+        // New items start at a rating of 3.
+        Item item = new Item("Draft", Category.OTHER, null);
+        Item other = new Item("Other", Category.OTHER, null);
+
+        history.push(edit(item, () -> item.setTitle("Second draft")), true);
+        history.push(edit(item, () -> item.setRating(5)), true);
+        assertEquals(1, history.size());
+
+        // Neither a different item nor a push that does not ask to coalesce folds in.
+        history.push(edit(other, () -> other.setTitle("Renamed")), true);
+        history.push(edit(other, () -> other.setRating(2)), false);
+        history.push(edit(other, () -> other.setRating(4)), true);
+        assertEquals(4, history.size());
+        history.poll();
+        history.poll();
+        history.poll();
+
+        Memento coalesced = history.poll();
+        assertEquals(Set.of(Memento.Field.TITLE, Memento.Field.RATING), coalesced.getCapturedFields());
+        item.restoreFromMemento(coalesced);
+        assertEquals("Draft", item.getTitle());
+        assertEquals(3, item.getRating());
+    }
+
+    @Test
+    void editsOutsideTheWindowStaySeparate() throws InterruptedException {
+        UndoHistory history = new UndoHistory(10, Long.MAX_VALUE, Duration.ZERO);
+        Item item = new Item("Draft", Category.OTHER, null);
+
+        history.push(edit(item, () -> item.setTitle("Second draft")), true);
+        Thread.sleep(5);
+        history.push(edit(item, () -> item.setTitle("Third draft")), true);
+
+        assertEquals(2, history.size());
+    }
+
+    @Test
+    void deltaMementosRestoreOnlyTheirCapturedFields() {
+        Item item = new Item("Thermodynamics", Category.LECTURE_NOTES, "/notes/thermo.txt");
+        item.addTag("physics");
+        Memento retitled = edit(item, () -> item.setTitle("Thermodynamics II"));
+        assertEquals(Set.of(Memento.Field.TITLE), retitled.getCapturedFields());
+
+        item.setCategory(Category.TUTORIAL);
+        item.addTag("exam");
+        item.setRating(5);
+        item.restoreFromMemento(retitled);
+
+        assertEquals("Thermodynamics", item.getTitle());
+        assertEquals(Category.TUTORIAL, item.getCategory());
+        assertEquals(Set.of("physics", "exam"), item.getTags());
+        assertEquals(5, item.getRating());
+        assertEquals("/notes/thermo.txt", item.getFilePath());
+    }
+
+    @Test
+    void mementosSavedBeforeDeltasRestoreEveryField() throws ReflectiveOperationException {
+        Item item = new Item("Thermodynamics", Category.LECTURE_NOTES, "/notes/thermo.txt");
+        item.addTag("physics");
+        item.setRating(3);
+        Memento legacy = new Memento(item.copy());
+        // Mementos serialized before deltas existed load without a field set.
+        java.lang.reflect.Field captured = Memento.class.getDeclaredField("capturedFields");
+        captured.setAccessible(true);
+        captured.set(legacy, null);
+
+        item.setTitle("Renamed");
+        item.setCategory(Category.TUTORIAL);
+        item.addTag("exam");
+        item.setRating(5);
+        item.setFilePath("/notes/other.txt");
+        item.restoreFromMemento(legacy);
+
+        assertTrue(legacy.captures(Memento.Field.MEDIA_URL));
+        assertEquals(Set.of(Memento.Field.values()), legacy.getCapturedFields());
+        assertEquals("Thermodynamics", item.getTitle());
+        assertEquals(Category.LECTURE_NOTES, item.getCategory());
+        assertEquals(Set.of("physics"), item.getTags());
+        assertEquals(3, item.getRating());
+        assertEquals("/notes/thermo.txt", item.getFilePath());
+        assertTrue(UndoHistory.estimatedBytes(legacy) > UndoHistory.estimatedBytes(Memento.added(item)));
+    }
+
+    private static Memento edit(Item item, Runnable change) {
+        Item before = item.copy();
+        change.run();
+        return Memento.edited(before, item);
+    }
+}
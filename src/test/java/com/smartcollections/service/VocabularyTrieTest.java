@@ -0,0 +1,82 @@
+package com.smartcollections.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class VocabularyTrieTest {
+
+    @Test
+    void suggestsHeaviestCompletionsFirst() {
+        VocabularyTrie trie = new VocabularyTrie();
+        trie.put("lecture", 3);
+        trie.put("lemma", 5);
+        trie.put("level", 3);
+        trie.put("notes", 9);
+
+        VocabularyTrie snapshot = trie.snapshot();
+
+        assertEquals(List.of("lemma", "lecture", "level"), snapshot.suggest("le", 5));
+        assertEquals(List.of("lemma"), snapshot.suggest("le", 1));
+        assertEquals(List.of(), snapshot.suggest("x", 5));
+    }
+
+    @Test
+    void snapshotIsUnchangedByLaterWrites() {
+        VocabularyTrie trie = new VocabularyTrie();
+        trie.put("exam", 2);
+        trie.put("example", 1);
+        VocabularyTrie before = trie.snapshot();
+
+        trie.put("exam", 7);
+        trie.put("exact", 4);
+        trie.remove("example");
+        VocabularyTrie after = trie.snapshot();
+
+        assertEquals(List.of("exam", "example"), before.suggest("ex", 5));
+        assertEquals(2, before.weight("exam"));
+        assertEquals(1, before.weight("example"));
+        assertEquals(2, before.size());
+
+        assertEquals(List.of("exam", "exact"), after.suggest("ex", 5));
+        assertEquals(7, after.weight("exam"));
+        assertEquals(0, after.weight("example"));
+        assertEquals(2, after.size());
+    }
+
+    @Test
+    void clearLeavesSnapshotsIntact() {
+        VocabularyTrie trie = new VocabularyTrie();
+        trie.put("biology", 1);
+        VocabularyTrie before = trie.snapshot();
+
+        trie.clear();
+
+        assertEquals(List.of("biology"), before.suggest("bio", 5));
+        assertEquals(List.of(), trie.snapshot().suggest("bio", 5));
+    }
+
+    @Test
+    void fuzzyLookupsSeeTheirOwnSnapshot() {
+        VocabularyTrie trie = new VocabularyTrie();
+        trie.put("chemistry", 1);
+        VocabularyTrie before = trie.snapshot();
+        trie.remove("chemistry");
+        trie.put("chemist", 1);
+
+        StringBuilder found = new StringBuilder();
+        before.fuzzy("chemistri", 1, 1, (term, distance) -> found.append(term));
+        assertEquals("chemistry", found.toString());
+    }
+
+    @Test
+    void snapshotsAreReadOnly() {
+        VocabularyTrie snapshot = new VocabularyTrie().snapshot();
+
+        assertThrows(IllegalStateException.class, () -> snapshot.put("term", 1));
+        assertThrows(IllegalStateException.class, () -> snapshot.remove("term"));
+    }
+}